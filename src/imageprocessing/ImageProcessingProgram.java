@@ -4,13 +4,19 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 import imageprocessing.controller.GraphicalController;
 import imageprocessing.controller.ImageProcessingController;
 import imageprocessing.controller.ImageProcessingControllerImpl;
+import imageprocessing.model.ConcurrentImageProcessingModel;
 import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.RasterImageProcessingModel;
 import imageprocessing.model.SimpleImageProcessingModel;
+import imageprocessing.model.TiledImageProcessingModel;
 import imageprocessing.view.IGraphicalView;
 import imageprocessing.view.ImageProcessingGraphicalView;
 import imageprocessing.view.ImageProcessingView;
@@ -28,7 +34,11 @@ public class ImageProcessingProgram {
    */
   public static void main(String[] args) {
     Readable input = new InputStreamReader(System.in);
-    ImageProcessingModel model = new SimpleImageProcessingModel();
+
+    List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+    boolean budgeted = indexOfIgnoreCase(arguments, "-budget") != -1;
+    ImageProcessingModel model = createModel(arguments);
+    args = arguments.toArray(new String[0]);
 
     if (args.length == 0) {
       IGraphicalView guiView = new ImageProcessingGraphicalView(model);
@@ -61,9 +71,102 @@ public class ImageProcessingProgram {
 
       controller.start();
 
+      if (budgeted && model instanceof RasterImageProcessingModel) {
+        System.out.println("Memory: " + ((RasterImageProcessingModel) model).getMemoryStats());
+      }
+
+    }
 
+  }
+
+  /**
+   * Creates the model selected by the command line arguments, and removes the arguments that
+   * select it from the list, so only the ones that select the mode are left. Any of them may
+   * appear anywhere. Without any, the program runs on the SimpleImageProcessingModel, which
+   * accepts images with any max value. "-raster" selects the RasterImageProcessingModel, as do
+   * "-threads N", "-lazy" and "-budget MB", which only it (or the tiled and concurrent models)
+   * supports; it keeps 8 bits per channel, so it cannot load files with a max value above 255.
+   * "-tiled", "-paged" and "-concurrent" select the other models. Invalid numbers end the program.
+   *
+   * @param arguments The command line arguments, which the model arguments are removed from.
+   * @return The model.
+   */
+  public static ImageProcessingModel createModel(List<String> arguments) {
+    //"-threads N" spreads operations over N threads.
+    int parallelism = 1;
+    int threadsIndex = indexOfIgnoreCase(arguments, "-threads");
+    if (threadsIndex != -1) {
+      try {
+        parallelism = Integer.parseInt(arguments.get(threadsIndex + 1));
+        if (parallelism < 1) {
+          throw new NumberFormatException();
+        }
+      } catch (IndexOutOfBoundsException | NumberFormatException e) {
+        System.out.println("The number of threads must be a positive integer, exiting now");
+        System.exit(0);
+      }
+      arguments.remove(threadsIndex + 1);
+      arguments.remove(threadsIndex);
     }
 
+    //"-budget MB" limits the megabytes of pixels the library keeps in memory, spilling the rest.
+    long budget = 0;
+    int budgetIndex = indexOfIgnoreCase(arguments, "-budget");
+    if (budgetIndex != -1) {
+      try {
+        budget = Long.parseLong(arguments.get(budgetIndex + 1));
+        if (budget < 1) {
+          throw new NumberFormatException();
+        }
+      } catch (IndexOutOfBoundsException | NumberFormatException e) {
+        System.out.println("The memory budget must be a positive number of megabytes, exiting "
+                + "now");
+        System.exit(0);
+      }
+      arguments.remove(budgetIndex + 1);
+      arguments.remove(budgetIndex);
+    }
+
+    boolean raster = removeFlag(arguments, "-raster");
+    boolean lazy = removeFlag(arguments, "-lazy");
+    boolean tiled = removeFlag(arguments, "-tiled");
+    boolean paged = removeFlag(arguments, "-paged");
+    boolean concurrent = removeFlag(arguments, "-concurrent");
+
+    if (paged) {
+      //2048 resident 256x256 tiles take 512 MB of heap.
+      return new TiledImageProcessingModel(parallelism, 256, 2048, null);
+    } else if (tiled) {
+      return new TiledImageProcessingModel(parallelism);
+    } else if (concurrent) {
+      return new ConcurrentImageProcessingModel(parallelism);
+    } else if (raster || lazy || budget > 0 || threadsIndex != -1) {
+      RasterImageProcessingModel rasterModel = new RasterImageProcessingModel(parallelism, lazy);
+      if (budget > 0) {
+        rasterModel.setMemoryBudget(budget << 20, null);
+      }
+      return rasterModel;
+    }
+    return new SimpleImageProcessingModel();
+  }
+
+  //Removes an argument, ignoring case, and returns whether it was present.
+  private static boolean removeFlag(List<String> arguments, String flag) {
+    int index = indexOfIgnoreCase(arguments, flag);
+    if (index != -1) {
+      arguments.remove(index);
+    }
+    return index != -1;
+  }
+
+  //Finds the index of an argument, ignoring case, or -1 if it is not present.
+  private static int indexOfIgnoreCase(List<String> arguments, String argument) {
+    for (int i = 0; i < arguments.size(); i++) {
+      if (arguments.get(i).equalsIgnoreCase(argument)) {
+        return i;
+      }
+    }
+    return -1;
   }
 
   /**
@@ -54,6 +54,45 @@ public interface Features {
   void updateDisplay() throws IllegalStateException;
 
 
+  /**
+   * Starts loading a file into the model on a background thread, like loadFileIntoModel. The view
+   * shows progress while it runs, then shows the loaded image, or why loading failed.
+   *
+   * @param path The path to the image.
+   * @param imageName The name of the image.
+   */
+  void loadInBackground(String path, String imageName);
+
+
+  /**
+   * Starts saving the current image on a background thread, like saveImage. The view shows
+   * progress while it runs, then shows whether saving succeeded.
+   *
+   * @param path Where to save the image.
+   * @throws IllegalArgumentException If there is no loaded image.
+   */
+  void saveInBackground(String path) throws IllegalArgumentException;
+
+
+  /**
+   * Starts running the selected option on a background thread, like processSelectedOption. The
+   * view shows progress while it runs, then shows the new image, or why the option failed. The
+   * image that is shown stays the current image until the option finishes.
+   *
+   * @param option The selected option.
+   * @param value The user inputted value if applicable.
+   * @throws IllegalArgumentException If there is no loaded image to operate on.
+   */
+  void processInBackground(String option, int value) throws IllegalArgumentException;
+
+
+  /**
+   * Cancels the task that is running in the background, if any. Nothing the task did is shown and
+   * the current image stays the same.
+   */
+  void cancelBackgroundTask();
+
+
   /**
    * Exits the program.
    */
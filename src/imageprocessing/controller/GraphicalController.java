@@ -1,22 +1,48 @@
 package imageprocessing.controller;
 
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
 import imageprocessing.controller.commands.SimpleLoadCommand;
 import imageprocessing.controller.commands.SimpleSaveCommand;
 import imageprocessing.controller.commands.UserCommand;
+import imageprocessing.model.CancellationToken;
 import imageprocessing.model.FlipDirection;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.model.ImageProcessingModelState.PixelProperty;
 import imageprocessing.view.IGraphicalView;
+import imageprocessing.view.ImageDisplay;
 
 /**
  * Represents a controller for the GUI version of the image processing program.
+ *
+ * <p>Loads, saves and operations started from the view run on a background thread (see
+ * BackgroundTask), one at a time, so the window stays responsive. The background thread also
+ * builds the image and histogram to show, so the event dispatch thread only receives the finished
+ * display. A task can be cancelled: operations of the model and loads stop at the next band of
+ * rows or tile, saves stop at the next row, and an operation writes to a second name, so the
+ * current image is never left half done. The progress is shown until the task has actually
+ * stopped.</p>
  */
 public class GraphicalController implements Features {
   private final ImageProcessingModel model;
   private final IGraphicalView view;
   private String currentImage;
 
+  //Runs one background task at a time, so a cancelled task that has not stopped yet is always
+  // done before the next one starts.
+  private final ExecutorService executor;
+
+  //The task that is running in the background, or null if there is none. Only used on the event
+  // dispatch thread.
+  private BackgroundTask task;
+
 
   /**
    * Creates a new Graphical controller with a given model and graphical view.
@@ -35,6 +61,12 @@ public class GraphicalController implements Features {
     this.view = view;
     this.model = model;
     this.currentImage = "";
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Image processing tasks");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.task = null;
   }
 
   @Override
@@ -50,47 +82,53 @@ public class GraphicalController implements Features {
       throw new IllegalArgumentException("No image is loaded");
     }
 
+    this.apply(option, value, this.currentImage, this.currentImage);
+  }
+
+  //Runs an option on one image and stores the result under a new name.
+  private void apply(String option, int value, String imageName, String newName)
+          throws IllegalArgumentException {
     switch (option) {
       case "brighten":
-        this.model.brighten(value, this.currentImage, this.currentImage);
+        this.model.brighten(value, imageName, newName);
         break;
       case "red-grayscale":
-        this.model.grayscale(PixelProperty.Red, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Red, imageName, newName);
         break;
       case "green-grayscale":
-        this.model.grayscale(PixelProperty.Green, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Green, imageName, newName);
         break;
       case "blue-grayscale":
-        this.model.grayscale(PixelProperty.Blue, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Blue, imageName, newName);
         break;
       case "value-grayscale":
-        this.model.grayscale(PixelProperty.Value, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Value, imageName, newName);
         break;
       case "intensity-grayscale":
-        this.model.grayscale(PixelProperty.Intensity, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Intensity, imageName, newName);
         break;
       case "luma-grayscale":
-        this.model.grayscale(PixelProperty.Luma, this.currentImage, this.currentImage);
+        this.model.grayscale(PixelProperty.Luma, imageName, newName);
         break;
       case "horizontal-flip":
-        this.model.flip(FlipDirection.Horizontal, this.currentImage, this.currentImage);
+        this.model.flip(FlipDirection.Horizontal, imageName, newName);
         break;
       case "vertical-flip":
-        this.model.flip(FlipDirection.Vertical, this.currentImage, this.currentImage);
+        this.model.flip(FlipDirection.Vertical, imageName, newName);
         break;
       case "blur":
-        this.model.applyFilter(Utils.blurKernel, this.currentImage, this.currentImage);
+        this.model.applyFilter(Utils.blurKernel, imageName, newName);
         break;
       case "sharpen":
-        this.model.applyFilter(Utils.sharpenKernel, this.currentImage, this.currentImage);
+        this.model.applyFilter(Utils.sharpenKernel, imageName, newName);
         break;
       case "sepia-tone":
         this.model.colorTransformation(Utils.sepiaToneTransformation,
-                this.currentImage, this.currentImage);
+                imageName, newName);
         break;
       case "color-transform-luma_grayscale":
         this.model.colorTransformation(Utils.lumaTransformation,
-                this.currentImage, this.currentImage);
+                imageName, newName);
         break;
       default:
         throw new IllegalArgumentException("Unrecognized command");
@@ -99,10 +137,17 @@ public class GraphicalController implements Features {
 
   @Override
   public void loadFileIntoModel(String path, String imageName) throws IllegalArgumentException {
+    this.load(path, imageName);
+    this.currentImage = imageName;
+  }
+
+  //Loads a file into the model without changing the current image.
+  private void load(String path, String imageName) throws IllegalArgumentException {
     UserCommand command = new SimpleLoadCommand(path, imageName);
     try {
       command.doCommand(this.model);
-      this.currentImage = imageName;
+    } catch (CancellationException e) {
+      throw e;
     } catch (IllegalStateException e) {
       throw new IllegalArgumentException(e.getMessage());
     }
@@ -115,9 +160,16 @@ public class GraphicalController implements Features {
       throw new IllegalArgumentException("There is no loaded image");
     }
 
-    UserCommand command = new SimpleSaveCommand(path, this.currentImage);
+    this.save(path, this.currentImage);
+  }
+
+  //Saves an image of the model.
+  private void save(String path, String imageName) throws IllegalArgumentException {
+    UserCommand command = new SimpleSaveCommand(path, imageName);
     try {
       command.doCommand(this.model);
+    } catch (CancellationException e) {
+      throw e;
     } catch (IllegalStateException e) {
       throw new IllegalArgumentException(e.getMessage());
     }
@@ -134,8 +186,141 @@ public class GraphicalController implements Features {
     this.view.refresh();
   }
 
+  @Override
+  public void loadInBackground(String path, String imageName) {
+    this.runInBackground(new BackgroundTask("Loading " + imageName, "Loading error",
+        () -> this.load(path, imageName), imageName, null));
+  }
+
+  @Override
+  public void saveInBackground(String path) throws IllegalArgumentException {
+    if (this.currentImage.equals("")) {
+      throw new IllegalArgumentException("There is no loaded image");
+    }
+
+    String imageName = this.currentImage;
+    this.runInBackground(new BackgroundTask("Saving", "Saving error",
+        () -> this.save(path, imageName), null, "The image was saved successfully!"));
+  }
+
+  @Override
+  public void processInBackground(String option, int value) throws IllegalArgumentException {
+    if (this.currentImage.equals("")) {
+      throw new IllegalArgumentException("No image is loaded");
+    }
+
+    String imageName = this.currentImage;
+    String newName = otherName(imageName);
+    this.runInBackground(new BackgroundTask("Running " + option, "Command error",
+        () -> this.apply(option, value, imageName, newName), newName, null));
+  }
+
+  //Only the token is cancelled, so the worker is done (and hides the progress) once the work has
+  // actually stopped, rather than as soon as the button is pressed.
+  @Override
+  public void cancelBackgroundTask() {
+    if (this.task != null) {
+      this.task.token.cancel();
+    }
+  }
+
   @Override
   public void exitProgram() {
     System.exit(0);
   }
+
+  //Gets the name an operation on an image writes to. Operations alternate between two names, so
+  // the image being shown is only replaced by the one after it.
+  private static String otherName(String imageName) {
+    return imageName.endsWith("~") ? imageName.substring(0, imageName.length() - 1)
+            : imageName + "~";
+  }
+
+  //Shows the progress of a task and starts it on the background thread.
+  private void runInBackground(BackgroundTask task) {
+    this.task = task;
+    this.view.showProgress(task.message);
+    this.executor.execute(task);
+  }
+
+  /**
+   * Represents a load, save or operation that runs on the background thread, along with building
+   * the display of the image it produces. Once it is done, the event dispatch thread makes that
+   * image the current image and shows it, or shows why the task failed. A task that was cancelled
+   * changes nothing.
+   */
+  private final class BackgroundTask extends SwingWorker<ImageDisplay, Void> {
+    private final String message;
+    private final String errorTitle;
+    private final Runnable work;
+    private final String resultName;
+    private final String successMessage;
+    private final CancellationToken token;
+
+    //The buffer the view no longer shows, which the display is written into if it fits.
+    private final BufferedImage buffer;
+
+    /**
+     * Creates a task. Tasks are created on the event dispatch thread, so a task that shows an
+     * image takes the spare buffer of the view here, and the view keeps painting its other one.
+     *
+     * @param message        What the task is doing.
+     * @param errorTitle     The title of the window that shows why the task failed.
+     * @param work           The work to run on the background thread.
+     * @param resultName     The image that becomes the current image, or null to keep it.
+     * @param successMessage The message to show once the task is done, or null for none.
+     */
+    private BackgroundTask(String message, String errorTitle, Runnable work, String resultName,
+                           String successMessage) {
+      this.message = message;
+      this.errorTitle = errorTitle;
+      this.work = work;
+      this.resultName = resultName;
+      this.successMessage = successMessage;
+      this.token = new CancellationToken();
+      this.buffer = resultName == null ? null : GraphicalController.this.view.takeSpareBuffer();
+    }
+
+    @Override
+    protected ImageDisplay doInBackground() {
+      return this.token.run(() -> {
+        this.work.run();
+        return this.resultName == null ? null
+                : ImageDisplay.of(GraphicalController.this.model, this.resultName, this.buffer);
+      });
+    }
+
+    @Override
+    protected void done() {
+      if (GraphicalController.this.task == this) {
+        GraphicalController.this.task = null;
+        GraphicalController.this.view.hideProgress();
+      }
+
+      ImageDisplay display;
+      try {
+        display = this.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof CancellationException) {
+          return;
+        }
+        GraphicalController.this.view.showMessageWindow(this.errorTitle,
+                "The command failed for the following reason:\n" + e.getCause().getMessage(),
+                JOptionPane.ERROR_MESSAGE);
+        return;
+      }
+
+      if (this.resultName != null) {
+        GraphicalController.this.currentImage = this.resultName;
+        GraphicalController.this.view.showDisplay(display);
+      }
+      if (this.successMessage != null) {
+        GraphicalController.this.view.showMessageWindow("Success!", this.successMessage,
+                JOptionPane.INFORMATION_MESSAGE);
+      }
+    }
+  }
 }
@@ -81,6 +81,11 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
           transmitMessage("Please wait, your image is being saved \n");
           command = new SimpleSaveCommand(readFromInput(scanner), readFromInput(scanner));
           break;
+        case "save-binary":
+          //First input: path, second input: imageName
+          transmitMessage("Please wait, your image is being saved \n");
+          command = new SimpleSaveCommand(readFromInput(scanner), readFromInput(scanner), true);
+          break;
         case "brighten":
           //First input: amount, second input: imageName, third input: new name
           this.model.brighten(readIntFromInput(scanner),
@@ -96,6 +101,12 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
           this.model.flip(FlipDirection.Horizontal, readFromInput(scanner),
                   readFromInput(scanner));
           break;
+        case "crop":
+          //Inputs: row, col, width, height, imageName, newName
+          this.model.crop(readIntFromInput(scanner), readIntFromInput(scanner),
+                  readIntFromInput(scanner), readIntFromInput(scanner),
+                  readFromInput(scanner), readFromInput(scanner));
+          break;
         case "red-component":
           //First input: imageName, second input: newName
           this.model.grayscale(PixelProperty.Red, readFromInput(scanner),
@@ -145,6 +156,10 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
           model.colorTransformation(Utils.lumaTransformation,
                   readFromInput(scanner), readFromInput(scanner));
           break;
+        case "stats":
+          //First input: imageName. The model caches the statistics, so this is cheap to repeat.
+          transmitMessage(this.model.getStats(readFromInput(scanner)) + "\n");
+          break;
         case "menu":
           this.displayMenu();
           break;
@@ -172,6 +187,8 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
             " and refer it to henceforth in the program by the given image name.\n\n");
     this.transmitMessage("save [image-path] [image-name]: Save the image with the given name to " +
             "the specified path which should include the name of the file.\n\n");
+    this.transmitMessage("save-binary [image-path] [image-name]: Same as save, but .ppm files " +
+            "are saved in the binary (P6) format.\n\n");
     this.transmitMessage("red-component [image-name] [dest-image-name]: Create a greyscale image " +
             "with the red-component of the image with the given name,\n  and refer to it " +
             "henceforth in the program by the given destination name. This command can also be " +
@@ -183,6 +200,9 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
     this.transmitMessage("vertical-flip [image-name] [dest-image-name]: Flip an image " +
             "vertically to create a new image, referred to henceforth " +
             "by the given destination name.\n\n");
+    this.transmitMessage("crop [row] [col] [width] [height] [image-name] [dest-image-name]: " +
+            "Crop an image to the rectangle with the given top left corner and size,\n  " +
+            "referred to henceforth by the given destination name.\n\n");
     this.transmitMessage("brighten [increment] [image-name] [dest-image-name]: brighten the image" +
             " by the given increment to create a new image,\n  referred to henceforth by" +
             " the given destination name. The increment may be positive (brightening)" +
@@ -196,6 +216,9 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
     this.transmitMessage("color-transform-{linear system type} [image-name] [dest-image-name]:" +
             " Performs a color transformation on an image using a linear system.\nSupported linear"
             + " systems are luma_grayscale (e.g. color-transform-luma_grayscale)\n\n");
+    this.transmitMessage("stats [image-name]: Display the size, max value, the min, max and mean"
+            + " of each color channel,\n  and a hash of the contents of the image with the given"
+            + " name\n\n");
     this.transmitMessage("\n");
   }
 
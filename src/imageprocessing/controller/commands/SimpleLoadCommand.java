@@ -7,6 +7,7 @@ import java.util.Map;
 import imageprocessing.controller.commands.load.ILoadFile;
 import imageprocessing.controller.commands.load.LoadConventional;
 import imageprocessing.controller.commands.load.LoadImagePPM;
+import imageprocessing.controller.commands.load.LoadMappedImage;
 import imageprocessing.model.ImageProcessingModel;
 
 /**
@@ -34,11 +35,14 @@ public class SimpleLoadCommand implements UserCommand {
 
   // Initializes the map.
   private void populateLoadCommands() {
-    this.loadCommands.put(".ppm", new LoadImagePPM());
+    //Binary .ppm/.pgm files and uncompressed .bmp files are memory mapped, anything else is
+    // decoded by the fallback.
+    this.loadCommands.put(".ppm", new LoadMappedImage(new LoadImagePPM()));
+    this.loadCommands.put(".pgm", new LoadMappedImage(new LoadImagePPM()));
     this.loadCommands.put(".jpg", new LoadConventional());
     this.loadCommands.put(".jpeg", new LoadConventional());
     this.loadCommands.put(".png", new LoadConventional());
-    this.loadCommands.put(".bmp", new LoadConventional());
+    this.loadCommands.put(".bmp", new LoadMappedImage(new LoadConventional()));
   }
 
   @Override
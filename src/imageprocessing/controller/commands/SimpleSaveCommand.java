@@ -6,6 +6,7 @@ import java.util.Map;
 
 import imageprocessing.controller.commands.save.ISaveFile;
 import imageprocessing.controller.commands.save.SaveConventional;
+import imageprocessing.controller.commands.save.SaveImagePGM;
 import imageprocessing.controller.commands.save.SaveImagePPM;
 import imageprocessing.model.ImageProcessingModel;
 
@@ -15,6 +16,7 @@ import imageprocessing.model.ImageProcessingModel;
 public class SimpleSaveCommand implements UserCommand {
   private String path;
   private String imageName;
+  private final boolean binary;
   private final Map<String, ISaveFile> saveCommands;
 
   /**
@@ -24,15 +26,29 @@ public class SimpleSaveCommand implements UserCommand {
    * @param imageName the name of the image to be saved.
    */
   public SimpleSaveCommand(String path, String imageName) {
+    this(path, imageName, false);
+  }
+
+  /**
+   * Save command constructor that can choose binary .ppm files (P6) instead of text ones (P3).
+   * .pgm files are always binary (P5).
+   *
+   * @param path      the path name to save the image to.
+   * @param imageName the name of the image to be saved.
+   * @param binary    whether .ppm files should be saved as binary.
+   */
+  public SimpleSaveCommand(String path, String imageName, boolean binary) {
     this.path = path;
     this.imageName = imageName;
+    this.binary = binary;
     this.saveCommands = new HashMap<String, ISaveFile>();
     this.populateSaveCommands();
   }
 
   // Initializes the map.
   private void populateSaveCommands() {
-    this.saveCommands.put(".ppm", new SaveImagePPM());
+    this.saveCommands.put(".ppm", new SaveImagePPM(this.binary));
+    this.saveCommands.put(".pgm", new SaveImagePGM());
     this.saveCommands.put(".jpg", new SaveConventional());
     this.saveCommands.put(".jpeg", new SaveConventional());
     this.saveCommands.put(".png", new SaveConventional());
@@ -1,18 +1,25 @@
 package imageprocessing.controller.commands.load;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
+import imageprocessing.model.CancellationToken;
 import imageprocessing.model.ImageProcessingModel;
-import imageprocessing.model.Pixel;
 
 /**
  * Represents a function object that loads a .jpg, .jpeg, .png, or .bmp file into the image
- * processing program.
+ * processing program. The image types ImageIO usually decodes to (3 or 4 byte BGR and int RGB) are
+ * converted by reading their data buffers directly. Any other type is read through getRGB, a row
+ * at a time. Every loaded pixel is fully opaque. ImageIO cannot stop part way, so a cancelled load
+ * (see CancellationToken) stops once the file is decoded, before the image is stored.
  */
 public class LoadConventional implements ILoadFile {
 
@@ -29,31 +36,88 @@ public class LoadConventional implements ILoadFile {
 
     BufferedImage image;
 
-    try {
-      image = ImageIO.read(new FileInputStream(path));
+    try (FileInputStream in = new FileInputStream(path)) {
+      image = ImageIO.read(in);
     } catch (IOException e) {
       throw new IllegalStateException("The specified file was not found");
     }
 
+    if (image == null) {
+      throw new IllegalStateException("Failed to read from the file");
+    }
 
-    Pixel[][] pixelGrid = new Pixel[image.getHeight()][image.getWidth()];
-    for (int i = 0; i < image.getHeight(); i++) {
-      for (int j = 0; j < image.getWidth(); j++) {
-        Color color = new Color(image.getRGB(j, i));
-        int red = color.getRed();
-        int green = color.getGreen();
-        int blue = color.getBlue();
-        int alpha = color.getAlpha();
-        int max = 255;
-
-        pixelGrid[i][j] = new Pixel(red, green, blue, max, alpha);
-      }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+
+    if (!readBytes(image, pixels) && !readInts(image, pixels)) {
+      image.getRGB(0, 0, width, height, pixels, 0, width);
     }
 
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] |= 0xFF000000;
+    }
+
+    CancellationToken.checkCurrent();
     try {
-      model.addImageToLibrary(imageName, pixelGrid);
+      model.transferImageToLibrary(imageName, width, height, 255, pixels);
     } catch (IllegalArgumentException e) {
       throw new IllegalStateException("Model unable to load image");
     }
   }
+
+  //Copies the pixels of a TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR image straight from its byte data
+  // buffer, returns false if the image is stored any other way.
+  private static boolean readBytes(BufferedImage image, int[] pixels) {
+    int type = image.getType();
+    Raster raster = image.getRaster();
+    if ((type != BufferedImage.TYPE_3BYTE_BGR && type != BufferedImage.TYPE_4BYTE_ABGR)
+            || !(raster.getDataBuffer() instanceof DataBufferByte)
+            || !(raster.getSampleModel() instanceof ComponentSampleModel)
+            || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return false;
+    }
+
+    ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+    DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+    byte[] data = buffer.getData();
+    int[] bandOffsets = sampleModel.getBandOffsets();
+    int pixelStride = sampleModel.getPixelStride();
+    int scanlineStride = sampleModel.getScanlineStride();
+    int width = image.getWidth();
+
+    for (int i = 0; i < image.getHeight(); i++) {
+      int k = buffer.getOffset() + i * scanlineStride;
+      int start = i * width;
+      for (int j = 0; j < width; j++, k += pixelStride) {
+        pixels[start + j] = ((data[k + bandOffsets[0]] & 0xFF) << 16)
+                | ((data[k + bandOffsets[1]] & 0xFF) << 8) | (data[k + bandOffsets[2]] & 0xFF);
+      }
+    }
+    return true;
+  }
+
+  //Copies the pixels of a TYPE_INT_RGB or TYPE_INT_ARGB image straight from its int data buffer,
+  // returns false if the image is stored any other way.
+  private static boolean readInts(BufferedImage image, int[] pixels) {
+    int type = image.getType();
+    Raster raster = image.getRaster();
+    if ((type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+            || !(raster.getDataBuffer() instanceof DataBufferInt)
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return false;
+    }
+
+    SinglePixelPackedSampleModel sampleModel =
+            (SinglePixelPackedSampleModel) raster.getSampleModel();
+    DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+    int width = image.getWidth();
+
+    for (int i = 0; i < image.getHeight(); i++) {
+      System.arraycopy(buffer.getData(), buffer.getOffset() + i * sampleModel.getScanlineStride(),
+              pixels, i * width, width);
+    }
+    return true;
+  }
 }
@@ -1,14 +1,26 @@
 package imageprocessing.controller.commands.load;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+import imageprocessing.model.CancellationToken;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.model.Pixel;
 
 /**
  * Represents a function object that loads a PPM extension image into the Image Processing Model.
+ * The format is chosen by the magic number at the start of the file: text (P3) or binary (P6)
+ * color, and text (P2) or binary (P5) gray, which is how .pgm files are stored. The file is
+ * tokenized straight from its bytes (see PnmReader) and decoded into one array of packed pixels.
+ * A cancelled load (see CancellationToken) stops between rows, before the image is stored.
+ *
+ * <p>Packed pixels hold 8 bits per channel, so a file with a max value above 255 (up to 65535,
+ * with two bytes per sample in binary files) is decoded into a grid of Pixels instead, as is a
+ * text file with a sample above 255. Models that cannot store such values reject the image. As
+ * the original loader did, samples above the max value of the file are kept as they are.</p>
  */
 public class LoadImagePPM implements ILoadFile {
   /**
@@ -21,56 +33,129 @@ public class LoadImagePPM implements ILoadFile {
   @Override
   public void loadFile(ImageProcessingModel model, String path, String imageName)
           throws IllegalStateException {
-    try {
-      Scanner scanner;
-      try {
-        scanner = new Scanner(new FileInputStream(path));
-      } catch (FileNotFoundException e) {
-        throw new IllegalArgumentException("The specified file was not found");
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      PnmReader reader = new PnmReader(channel);
+
+      String magic = reader.readMagic();
+      if (!magic.equals("P3") && !magic.equals("P6") && !magic.equals("P2")
+              && !magic.equals("P5")) {
+        throw new IllegalArgumentException("Invalid .ppm file");
       }
 
-      StringBuilder builder = new StringBuilder();
-      while (scanner.hasNextLine()) {
-        String s = scanner.nextLine();
-        if (s.charAt(0) != '#') {
-          builder.append(s).append(System.lineSeparator());
+      int width = reader.readInt();
+      int height = reader.readInt();
+      int maxValue = reader.readInt();
+
+      if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Invalid .ppm file");
+      }
+      boolean binary = magic.equals("P6") || magic.equals("P5");
+      int samples = magic.equals("P3") || magic.equals("P6") ? 3 : 1;
+      if (binary && maxValue > 65535) {
+        throw new IllegalArgumentException("Invalid .ppm file");
+      }
+
+      Pixel[][] grid = null;
+      int[] pixels = null;
+      if (maxValue > 255) {
+        grid = new Pixel[height][width];
+        readGrid(reader, grid, 0, binary, samples, maxValue);
+      } else {
+        pixels = new int[width * height];
+        if (binary) {
+          readBinary(reader, pixels, width, maxValue, samples);
+        } else {
+          grid = readAscii(reader, pixels, width, maxValue, samples);
         }
       }
 
-      scanner = new Scanner(builder.toString());
+      if (grid != null) {
+        model.addImageToLibrary(imageName, grid);
+      } else {
+        model.transferImageToLibrary(imageName, width, height, maxValue, pixels);
+      }
+    } catch (NoSuchFileException e) {
+      throw new IllegalStateException("The specified file was not found");
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read from the file");
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+  }
 
-      String token;
+  //Reads the text samples of a P3 (3 samples per pixel) or P2 (1 gray sample per pixel) file.
+  // The alpha of a .ppm pixel is its max value, as with every other loaded image. A sample above
+  // 255 does not fit in a packed pixel, so from the first one on the image is read into a grid of
+  // Pixels instead, which is returned. Returns null if every sample fit.
+  private static Pixel[][] readAscii(PnmReader reader, int[] pixels, int width, int maxValue,
+                                     int samples) throws IOException, IllegalArgumentException {
+    int alpha = maxValue << 24;
 
-      token = scanner.next();
+    for (int i = 0; i < pixels.length; i++) {
+      if (i % width == 0) {
+        CancellationToken.checkCurrent();
+      }
+      int r = reader.readInt();
+      int g = samples == 3 ? reader.readInt() : r;
+      int b = samples == 3 ? reader.readInt() : r;
 
-      if (!token.equals("P3")) {
-        throw new IllegalArgumentException("Invalid .ppm file");
+      if ((r | g | b) > 255) {
+        Pixel[][] grid = new Pixel[pixels.length / width][width];
+        for (int k = 0; k < i; k++) {
+          int argb = pixels[k];
+          grid[k / width][k % width] = new Pixel((argb >> 16) & 0xFF, (argb >> 8) & 0xFF,
+                  argb & 0xFF, maxValue, maxValue);
+        }
+        grid[i / width][i % width] = new Pixel(r, g, b, maxValue, maxValue);
+        readGrid(reader, grid, i + 1, false, samples, maxValue);
+        return grid;
       }
+      pixels[i] = alpha | (r << 16) | (g << 8) | b;
+    }
+    return null;
+  }
 
-      int width = scanner.nextInt();
-      //System.out.println("Width of image: "+width);
-      int height = scanner.nextInt();
-      //System.out.println("Height of image: "+height);
-      int maxValue = scanner.nextInt();
-      //System.out.println("Maximum value of a color in this file (usually 255): "+maxValue);
+  //Reads the one byte samples of a P6 (3 samples per pixel) or P5 (1 gray sample per pixel) file,
+  // one row at a time.
+  private static void readBinary(PnmReader reader, int[] pixels, int width, int maxValue,
+                                 int samples) throws IOException, IllegalArgumentException {
+    int alpha = maxValue << 24;
+    byte[] row = new byte[width * samples];
 
-      Pixel[][] pixelGrid =
-              new Pixel[height][width];
+    for (int start = 0; start < pixels.length; start += width) {
+      CancellationToken.checkCurrent();
+      reader.readBytes(row, 0, row.length);
 
-      for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-          int r = scanner.nextInt();
-          int g = scanner.nextInt();
-          int b = scanner.nextInt();
+      for (int j = 0, k = 0; j < width; j++, k += samples) {
+        int r = row[k] & 0xFF;
+        int g = samples == 3 ? row[k + 1] & 0xFF : r;
+        int b = samples == 3 ? row[k + 2] & 0xFF : r;
+        pixels[start + j] = alpha | (r << 16) | (g << 8) | b;
+      }
+    }
+  }
 
-          pixelGrid[i][j] = new Pixel(r, g, b, maxValue, maxValue);
+  //Reads the samples of the pixels from the given index (in row major order) on into a grid of
+  // Pixels. Text samples are read as usual, and binary samples are two bytes each, most
+  // significant first.
+  private static void readGrid(PnmReader reader, Pixel[][] grid, int start, boolean binary,
+                               int samples, int maxValue)
+          throws IOException, IllegalArgumentException {
+    int width = grid[0].length;
+    int total = grid.length * width;
+    int[] values = new int[samples];
 
-        }
+    for (int i = start; i < total; i++) {
+      if (i % width == 0) {
+        CancellationToken.checkCurrent();
       }
-
-      model.addImageToLibrary(imageName, pixelGrid);
-    } catch (IllegalArgumentException e) {
-      throw new IllegalStateException(e.getMessage());
+      for (int c = 0; c < samples; c++) {
+        values[c] = binary ? (reader.readByte() << 8) | reader.readByte() : reader.readInt();
+      }
+      int r = values[0];
+      int g = samples == 3 ? values[1] : r;
+      int b = samples == 3 ? values[2] : r;
+      grid[i / width][i % width] = new Pixel(r, g, b, maxValue, maxValue);
     }
   }
 }
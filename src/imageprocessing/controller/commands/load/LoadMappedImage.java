@@ -0,0 +1,202 @@
+package imageprocessing.controller.commands.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.PixelSource;
+
+/**
+ * Represents a function object that loads uncompressed images whose pixel data is one block at a
+ * fixed offset in the file: binary .ppm/.pgm files (P6 and P5) and 24 or 32 bit uncompressed .bmp
+ * files. Instead of decoding the file through a stream, the pixel data is memory mapped with
+ * FileChannel.map a large window at a time and every row is copied out of the mapping with one
+ * bulk transfer, so the operating system pages the file in as it is read. Any other file (e.g. a
+ * text .ppm, a .ppm with two bytes per sample, a compressed .bmp, or a file with the wrong
+ * extension) is handed to a fallback loader.
+ *
+ * <p>The pixels are streamed into the model a band of rows at a time (see
+ * ImageProcessingModel.streamImageToLibrary), so a model that keeps images out of core can load
+ * files larger than the heap.</p>
+ */
+public class LoadMappedImage implements ILoadFile {
+  //The most bytes of a file that are mapped at once.
+  private static final long WINDOW_SIZE = 1 << 28;
+
+  //The size of the .bmp file header plus the smallest supported info header.
+  private static final int BMP_HEADER_SIZE = 54;
+
+  private final ILoadFile fallback;
+
+  /**
+   * Creates a loader that hands every file it cannot map to the given loader.
+   *
+   * @param fallback The loader for files that cannot be mapped.
+   * @throws IllegalArgumentException If the fallback is null.
+   */
+  public LoadMappedImage(ILoadFile fallback) throws IllegalArgumentException {
+    if (fallback == null) {
+      throw new IllegalArgumentException("The fallback loader cannot be null");
+    }
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void loadFile(ImageProcessingModel model, String path, String imageName)
+          throws IllegalStateException {
+    boolean loaded;
+
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(BMP_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      int count = 0;
+      while (header.hasRemaining() && count >= 0) {
+        count = channel.read(header);
+      }
+      header.flip();
+
+      if (header.remaining() >= 2 && header.get(0) == 'P'
+              && (header.get(1) == '6' || header.get(1) == '5')) {
+        loaded = this.loadPnm(channel, model, imageName);
+      } else if (header.remaining() == BMP_HEADER_SIZE && header.get(0) == 'B'
+              && header.get(1) == 'M') {
+        loaded = this.loadBmp(channel, header, model, imageName);
+      } else {
+        loaded = false;
+      }
+    } catch (NoSuchFileException e) {
+      throw new IllegalStateException("The specified file was not found");
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read from the file");
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+
+    if (!loaded) {
+      this.fallback.loadFile(model, path, imageName);
+    }
+  }
+
+  //Loads a P6 or P5 file. The header is parsed as text, after which the samples are one byte each.
+  // Returns false if the max value is above 255, which makes the samples two bytes each.
+  private boolean loadPnm(FileChannel channel, ImageProcessingModel model, String imageName)
+          throws IOException, IllegalArgumentException {
+    channel.position(0);
+    PnmReader reader = new PnmReader(channel);
+
+    int samples = reader.readMagic().equals("P6") ? 3 : 1;
+    int width = reader.readInt();
+    int height = reader.readInt();
+    int maxValue = reader.readInt();
+
+    if (width <= 0 || height <= 0 || (long) width * samples > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid .ppm file");
+    }
+    if (maxValue > 255) {
+      return false;
+    }
+
+    int rowBytes = width * samples;
+    long offset = reader.getOffset();
+    if (offset + (long) rowBytes * height > channel.size()) {
+      throw new IllegalArgumentException("Invalid .ppm file");
+    }
+
+    int alpha = maxValue << 24;
+
+    model.streamImageToLibrary(imageName, width, height, maxValue, (fromRow, toRow, pixels) ->
+        this.readRows(channel, offset, rowBytes, rowBytes, fromRow, toRow, (i, row) -> {
+          int start = (i - fromRow) * width;
+          for (int j = 0, k = 0; j < width; j++, k += samples) {
+            int r = row[k] & 0xFF;
+            int g = samples == 3 ? row[k + 1] & 0xFF : r;
+            int b = samples == 3 ? row[k + 2] & 0xFF : r;
+            pixels[start + j] = alpha | (r << 16) | (g << 8) | b;
+          }
+        }));
+    return true;
+  }
+
+  //Loads an uncompressed 24 or 32 bit .bmp file, returns false if the file uses any other
+  // format. As with LoadConventional, every pixel is fully opaque.
+  private boolean loadBmp(FileChannel channel, ByteBuffer header, ImageProcessingModel model,
+                          String imageName) throws IOException, IllegalArgumentException {
+    long dataOffset = header.getInt(10) & 0xFFFFFFFFL;
+    int infoSize = header.getInt(14);
+    int width = header.getInt(18);
+    int fileHeight = header.getInt(22);
+    int bitCount = header.getShort(28);
+    int compression = header.getInt(30);
+
+    if (infoSize < 40 || width <= 0 || fileHeight == 0 || fileHeight == Integer.MIN_VALUE
+            || (bitCount != 24 && bitCount != 32) || compression != 0) {
+      return false;
+    }
+
+    //Rows are stored bottom to top unless the height is negative, and are padded to 4 bytes.
+    boolean topDown = fileHeight < 0;
+    int height = Math.abs(fileHeight);
+    int bytesPerPixel = bitCount / 8;
+    long stride = ((long) bitCount * width + 31) / 32 * 4;
+
+    if (stride > Integer.MAX_VALUE || dataOffset + stride * height > channel.size()) {
+      return false;
+    }
+
+    //A band of image rows is the band of file rows that ends at the same distance from the bottom.
+    PixelSource source = (fromRow, toRow, pixels) -> {
+      int first = topDown ? fromRow : height - toRow;
+      int last = topDown ? toRow : height - fromRow;
+      this.readRows(channel, dataOffset, width * bytesPerPixel, (int) stride, first, last,
+          (i, row) -> {
+            int start = ((topDown ? i : height - 1 - i) - fromRow) * width;
+            for (int j = 0, k = 0; j < width; j++, k += bytesPerPixel) {
+              pixels[start + j] = 0xFF000000 | ((row[k + 2] & 0xFF) << 16)
+                      | ((row[k + 1] & 0xFF) << 8) | (row[k] & 0xFF);
+            }
+          });
+    };
+
+    try {
+      model.streamImageToLibrary(imageName, width, height, 255, source);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Model unable to load image");
+    }
+    return true;
+  }
+
+  //Maps the file rows from fromRow (inclusive) to toRow (exclusive) of a block of pixel data one
+  // window at a time and passes every row, in file order, to the decoder.
+  private void readRows(FileChannel channel, long offset, int rowBytes, int stride, int fromRow,
+                        int toRow, RowDecoder decoder)
+          throws IllegalStateException, IllegalArgumentException {
+    int rowsPerWindow = (int) Math.max(1, Math.min(toRow - fromRow, WINDOW_SIZE / stride));
+    byte[] row = new byte[rowBytes];
+
+    try {
+      for (int first = fromRow; first < toRow; first += rowsPerWindow) {
+        int rows = Math.min(rowsPerWindow, toRow - first);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                offset + (long) first * stride, (long) (rows - 1) * stride + rowBytes);
+
+        for (int i = 0; i < rows; i++) {
+          window.position(i * stride);
+          window.get(row);
+          decoder.decode(first + i, row);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read from the file");
+    }
+  }
+
+  //Decodes one row of pixel data.
+  private interface RowDecoder {
+    void decode(int fileRow, byte[] row) throws IllegalArgumentException;
+  }
+}
@@ -0,0 +1,173 @@
+package imageprocessing.controller.commands.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the tokens of a .ppm style (netpbm) file straight from the bytes of a channel. Integers
+ * are parsed digit by digit from a large reused buffer, so no Strings or regular expressions are
+ * involved. Comments (from a # to the end of the line) may appear anywhere whitespace may. The
+ * raw bytes of binary files can be read from the same buffer.
+ */
+final class PnmReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final byte[] bytes;
+  private final ByteBuffer buffer;
+  private int position;
+  private int limit;
+  private long consumed;
+
+  /**
+   * Creates a reader over the given channel. The caller is responsible for closing the channel.
+   *
+   * @param channel The channel to read from.
+   */
+  PnmReader(ReadableByteChannel channel) {
+    this.channel = channel;
+    this.bytes = new byte[BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(this.bytes);
+    this.position = 0;
+    this.limit = 0;
+    this.consumed = 0;
+  }
+
+  /**
+   * Reads the two character magic number at the start of the file, e.g. "P3".
+   *
+   * @return The magic number.
+   * @throws IOException              If reading from the channel fails.
+   * @throws IllegalArgumentException If the file does not start with a magic number.
+   */
+  String readMagic() throws IOException, IllegalArgumentException {
+    int p = this.read();
+    int digit = this.read();
+    if (p != 'P' || digit < '0' || digit > '9') {
+      throw new IllegalArgumentException("Invalid .ppm file");
+    }
+    return "P" + (char) digit;
+  }
+
+  /**
+   * Reads the next non-negative decimal integer, skipping whitespace and comments before it. The
+   * single character that ends the integer is consumed (unless it starts a comment, in which case
+   * the whole comment is).
+   *
+   * @return The integer.
+   * @throws IOException              If reading from the channel fails.
+   * @throws IllegalArgumentException If the next token is not an integer or the file ended.
+   */
+  int readInt() throws IOException, IllegalArgumentException {
+    int c = this.read();
+    while (true) {
+      if (c == '#') {
+        c = this.skipComment();
+      } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B) {
+        c = this.read();
+      } else {
+        break;
+      }
+    }
+
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException("Invalid .ppm file");
+    }
+
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      if (value > 100_000_000) {
+        throw new IllegalArgumentException("Invalid .ppm file");
+      }
+      c = this.read();
+    }
+
+    if (c == '#') {
+      this.skipComment();
+    }
+    return value;
+  }
+
+  /**
+   * Reads the next raw byte, for the binary part of a file.
+   *
+   * @return The byte as a value from 0 to 255.
+   * @throws IOException              If reading from the channel fails.
+   * @throws IllegalArgumentException If the file ended.
+   */
+  int readByte() throws IOException, IllegalArgumentException {
+    int c = this.read();
+    if (c < 0) {
+      throw new IllegalArgumentException("Invalid .ppm file");
+    }
+    return c;
+  }
+
+  /**
+   * Reads the next length raw bytes into dest, for the binary part of a file.
+   *
+   * @param dest   The array to read into.
+   * @param offset The index in dest of the first byte.
+   * @param length The number of bytes to read.
+   * @throws IOException              If reading from the channel fails.
+   * @throws IllegalArgumentException If the file ended before length bytes were read.
+   */
+  void readBytes(byte[] dest, int offset, int length) throws IOException,
+          IllegalArgumentException {
+    while (length > 0) {
+      if (this.position == this.limit && !this.fill()) {
+        throw new IllegalArgumentException("Invalid .ppm file");
+      }
+      int count = Math.min(length, this.limit - this.position);
+      System.arraycopy(this.bytes, this.position, dest, offset, count);
+      this.position += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Returns the offset in the channel of the next byte this reader will return, e.g. the start of
+   * the binary data once the header has been read.
+   *
+   * @return The offset.
+   */
+  long getOffset() {
+    return this.consumed - (this.limit - this.position);
+  }
+
+  //Skips the rest of a comment and returns the character after it.
+  private int skipComment() throws IOException {
+    int c = this.read();
+    while (c != '\n' && c != '\r' && c != -1) {
+      c = this.read();
+    }
+    return c;
+  }
+
+  //Returns the next byte (0 to 255), or -1 at the end of the channel.
+  private int read() throws IOException {
+    if (this.position == this.limit && !this.fill()) {
+      return -1;
+    }
+    return this.bytes[this.position++] & 0xFF;
+  }
+
+  //Refills the buffer, returns false at the end of the channel.
+  private boolean fill() throws IOException {
+    this.buffer.clear();
+    int count = 0;
+    while (count == 0) {
+      count = this.channel.read(this.buffer);
+    }
+    if (count < 0) {
+      return false;
+    }
+    this.position = 0;
+    this.limit = count;
+    this.consumed += count;
+    return true;
+  }
+}
@@ -0,0 +1,182 @@
+package imageprocessing.controller.commands.save;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the contents of a .ppm style (netpbm) file through a large reused byte buffer that is
+ * flushed to a channel in big chunks. Integers are formatted with a lookup table of the decimal
+ * digits of every value from 0 to 255 instead of Integer.toString, so writing an image does not
+ * allocate anything per value.
+ */
+final class PnmWriter {
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  //The decimal digits of every 8 bit value.
+  private static final byte[][] DIGITS = new byte[256][];
+
+  static {
+    for (int i = 0; i < DIGITS.length; i++) {
+      DIGITS[i] = Integer.toString(i).getBytes();
+    }
+  }
+
+  private final WritableByteChannel channel;
+  private final byte[] bytes;
+  private final ByteBuffer buffer;
+  private int position;
+
+  /**
+   * Creates a writer over the given channel. The caller is responsible for calling flush and for
+   * closing the channel.
+   *
+   * @param channel The channel to write to.
+   */
+  PnmWriter(WritableByteChannel channel) {
+    this.channel = channel;
+    this.bytes = new byte[BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(this.bytes);
+    this.position = 0;
+  }
+
+  /**
+   * Writes the bytes of a String, for the header.
+   *
+   * @param text The text to write.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeText(String text) throws IOException {
+    this.writeBytes(text.getBytes());
+  }
+
+  /**
+   * Writes raw bytes.
+   *
+   * @param data The bytes to write.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeBytes(byte[] data) throws IOException {
+    this.writeBytes(data, 0, data.length);
+  }
+
+  /**
+   * Writes length raw bytes of data, starting at offset.
+   *
+   * @param data   The bytes to write.
+   * @param offset The index of the first byte to write.
+   * @param length The number of bytes to write.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeBytes(byte[] data, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (this.position == this.bytes.length) {
+        this.flush();
+      }
+      int count = Math.min(length, this.bytes.length - this.position);
+      System.arraycopy(data, offset, this.bytes, this.position, count);
+      this.position += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Writes a single raw byte.
+   *
+   * @param value The byte, from 0 to 255.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeByte(int value) throws IOException {
+    if (this.position == this.bytes.length) {
+      this.flush();
+    }
+    this.bytes[this.position++] = (byte) value;
+  }
+
+  /**
+   * Writes a non-negative integer in decimal.
+   *
+   * @param value The integer.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeInt(int value) throws IOException {
+    //An int has at most 10 digits.
+    if (this.position > this.bytes.length - 10) {
+      this.flush();
+    }
+
+    if (value >= 0 && value < DIGITS.length) {
+      byte[] digits = DIGITS[value];
+      for (byte digit : digits) {
+        this.bytes[this.position++] = digit;
+      }
+    } else {
+      int length = 1;
+      for (int rest = value / 10; rest > 0; rest /= 10) {
+        length++;
+      }
+      for (int i = this.position + length - 1; i >= this.position; i--) {
+        this.bytes[i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+      this.position += length;
+    }
+  }
+
+  /**
+   * Creates a table with the decimal digits of every value from 0 to 255, each followed by the
+   * given separator, for use with writeEntry.
+   *
+   * @param separator The bytes to follow every value.
+   * @return The table.
+   */
+  static byte[][] entryTable(byte[] separator) {
+    byte[][] table = new byte[DIGITS.length][];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = new byte[DIGITS[i].length + separator.length];
+      System.arraycopy(DIGITS[i], 0, table[i], 0, DIGITS[i].length);
+      System.arraycopy(separator, 0, table[i], DIGITS[i].length, separator.length);
+    }
+    return table;
+  }
+
+  /**
+   * Writes a value followed by a separator, using a table made by entryTable when the value is
+   * within 0 and 255.
+   *
+   * @param value     The value to write.
+   * @param table     The table of entries.
+   * @param separator The separator the table was made with.
+   * @throws IOException If writing to the channel fails.
+   */
+  void writeEntry(int value, byte[][] table, byte[] separator) throws IOException {
+    if (value < 0 || value >= table.length) {
+      this.writeInt(value);
+      this.writeBytes(separator);
+      return;
+    }
+
+    byte[] entry = table[value];
+    if (this.position > this.bytes.length - entry.length) {
+      this.flush();
+    }
+    for (byte b : entry) {
+      this.bytes[this.position++] = b;
+    }
+  }
+
+  /**
+   * Writes everything buffered so far to the channel.
+   *
+   * @throws IOException If writing to the channel fails.
+   */
+  void flush() throws IOException {
+    this.buffer.clear();
+    this.buffer.limit(this.position);
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.position = 0;
+  }
+}
@@ -1,17 +1,21 @@
 package imageprocessing.controller.commands.save;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Map;
 
 import javax.imageio.ImageIO;
 
+import imageprocessing.model.CancellationToken;
+import imageprocessing.model.ImageHandle;
 import imageprocessing.model.ImageProcessingModel;
-import imageprocessing.model.ImageProcessingModelState.PixelProperty;
 
 /**
- * Represents a function that saves an image as a .jpg, .jpeg, .png, or .bmp file.
+ * Represents a function that saves an image as a .jpg, .jpeg, .png, or .bmp file. The pixels are
+ * copied into the data buffer of the BufferedImage in bulk rather than set one at a time. The
+ * encoder cannot stop part way, so a cancelled save (see CancellationToken) stops before the file
+ * is opened.
  */
 public class SaveConventional implements ISaveFile {
 
@@ -29,44 +33,34 @@ public class SaveConventional implements ISaveFile {
     int height;
     int width;
     BufferedImage image;
-    try {
-      height = model.getHeight(imageName);
-      width = model.getWidth(imageName);
-
-      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-      for (int i = 0; i < height; i++) {
-        for (int j = 0; j < width; j++) {
-          Map<PixelProperty, Integer> properties =
-                  model.getPixelInfo(imageName, i, j);
+    ImageHandle source;
 
-          int red = properties.get(PixelProperty.Red);
-          int green = properties.get(PixelProperty.Green);
-          int blue = properties.get(PixelProperty.Blue);
-          int alpha = properties.get(PixelProperty.Alpha);
+    if (biType != BufferedImage.TYPE_INT_ARGB && biType != BufferedImage.TYPE_INT_RGB) {
+      throw new IllegalStateException("Unrecognized buffered image type");
+    }
 
-          int rgb;
+    try {
+      source = model.getImage(imageName);
+      height = source.getHeight();
+      width = source.getWidth();
 
-          if (biType == BufferedImage.TYPE_INT_ARGB) {
-            rgb = (alpha << 24) | (red << 16) | (green << 8) | blue;
-          } else if (biType == BufferedImage.TYPE_INT_RGB) {
-            rgb = (red << 16) | (green << 8) | blue;
-          } else {
-            throw new IllegalStateException("Unrecognized buffered image type");
-          }
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 
-          image.setRGB(j, i, rgb);
-        }
+      //The model's packed pixels have the same layout as a TYPE_INT_RGB image, so they are
+      // copied straight into its data buffer. Only the alpha byte has to be cleared.
+      int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      source.getPixels(0, 0, width, height, data, 0, width);
+      for (int i = 0; i < data.length; i++) {
+        data[i] &= 0xFFFFFF;
       }
     } catch (IllegalArgumentException e) {
       throw new IllegalStateException(e.getMessage());
     }
 
+    CancellationToken.checkCurrent();
 
-    try {
-      FileOutputStream toBeWritten = new FileOutputStream(path);
+    try (FileOutputStream toBeWritten = new FileOutputStream(path)) {
       ImageIO.write(image, extension.toUpperCase(), toBeWritten);
-      toBeWritten.close();
     } catch (IOException e) {
       throw new IllegalStateException("File not able to be written");
     }
@@ -0,0 +1,89 @@
+package imageprocessing.controller.commands.save;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+
+import imageprocessing.model.CancellationToken;
+import imageprocessing.model.ImageHandle;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents functionality to save a binary (P5) .pgm file, which stores one gray byte per
+ * pixel. Gray images are saved exactly; the luma of every pixel is saved for color images. Like
+ * SaveImagePPM, a cancelled save stops between rows and deletes the part of the file it wrote.
+ */
+public class SaveImagePGM implements ISaveFile {
+
+  /**
+   * Empty constructor, purposed solely to override default constructor.
+   */
+  public SaveImagePGM() {
+    // empty constructor. We only need to support saveFile.
+  }
+
+  @Override
+  public void saveFile(ImageProcessingModel model, String path, String imageName, String extension,
+                       int biType)
+          throws IllegalStateException {
+    try {
+      ImageHandle image = model.getImage(imageName);
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int maxValue = image.getMaxValue();
+      if (maxValue > 255) {
+        throw new IllegalArgumentException("Binary .pgm files support a max value of at most 255");
+      }
+
+      FileChannel channel;
+      try {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("The Specified file was not found");
+      }
+
+      try (FileChannel out = channel) {
+        PnmWriter writer = new PnmWriter(out);
+        writer.writeText("P5\n" + width + " " + height + "\n" + maxValue + "\n");
+
+        int[] row = new int[width];
+        int[] lumas = new int[width];
+        byte[] bytes = new byte[width];
+        for (int i = 0; i < height; i++) {
+          CancellationToken.checkCurrent();
+          image.getPixels(i, 0, width, 1, row, 0, width);
+          boolean lumasRead = false;
+
+          for (int j = 0; j < width; j++) {
+            int r = (row[j] >> 16) & 0xFF;
+            int g = (row[j] >> 8) & 0xFF;
+            int b = row[j] & 0xFF;
+            if (r != g || g != b) {
+              //Only rows with color pixels need the luma, so gray images are saved unchanged.
+              if (!lumasRead) {
+                image.getChannel(PixelProperty.Luma, i, 0, width, 1, lumas, 0, width);
+                lumasRead = true;
+              }
+              r = lumas[j];
+            }
+            bytes[j] = (byte) r;
+          }
+          writer.writeBytes(bytes);
+        }
+
+        writer.flush();
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Failed to write to output");
+      } catch (CancellationException e) {
+        SaveImagePPM.deletePartialFile(path);
+        throw e;
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+  }
+}
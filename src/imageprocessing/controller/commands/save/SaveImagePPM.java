@@ -1,24 +1,40 @@
 package imageprocessing.controller.commands.save;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
 
+import imageprocessing.model.CancellationToken;
+import imageprocessing.model.ImageHandle;
 import imageprocessing.model.ImageProcessingModel;
-import imageprocessing.model.ImageProcessingModelState;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
 
 /**
- * Represents functionality to save a .ppm file.
+ * Represents functionality to save a .ppm file, either as text (P3) or as binary (P6) with one
+ * byte per channel. Values are formatted into a large buffer (see PnmWriter) that is written to a
+ * FileChannel in big chunks. A save that is cancelled (see CancellationToken) stops between rows
+ * and deletes the part of the file it wrote.
  */
 public class SaveImagePPM implements ISaveFile {
+  private final boolean binary;
 
   /**
-   * Empty constructor, purposed solely to override default constructor.
+   * Creates a saver that writes text (P3) .ppm files.
    */
   public SaveImagePPM() {
-    // empty constructor. We only need to support saveFile.
+    this(false);
+  }
+
+  /**
+   * Creates a saver that writes either text (P3) or binary (P6) .ppm files.
+   *
+   * @param binary Whether to write binary (P6) files.
+   */
+  public SaveImagePPM(boolean binary) {
+    this.binary = binary;
   }
 
   @Override
@@ -26,45 +42,102 @@ public class SaveImagePPM implements ISaveFile {
                        int biType)
           throws IllegalStateException {
     try {
-      File output = new File(path);
-      FileOutputStream out;
+      ImageHandle image = model.getImage(imageName);
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int maxValue = image.getMaxValue();
+      if (this.binary && maxValue > 255) {
+        throw new IllegalArgumentException("Binary .ppm files support a max value of at most 255");
+      }
+
+      FileChannel channel;
       try {
-        out = new FileOutputStream(output);
-      } catch (FileNotFoundException e) {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      } catch (IOException e) {
         throw new IllegalArgumentException("The Specified file was not found");
       }
 
-      try {
-        out.write(("P3" + System.lineSeparator()).getBytes());
-        out.write((model.getWidth(imageName) + " " + model.getHeight(imageName)).getBytes());
-        out.write(System.lineSeparator().getBytes());
-        out.write(Integer.toString(model.getPixelInfo(imageName, 0, 0)
-                .get(ImageProcessingModelState.PixelProperty.MaxValue)).getBytes());
-        out.write(System.lineSeparator().getBytes());
-
-        for (int i = 0; i < model.getHeight(imageName); i++) {
-          for (int j = 0; j < model.getWidth(imageName); j++) {
-            Map<ImageProcessingModelState.PixelProperty, Integer> colorVals =
-                    model.getPixelInfo(imageName, i, j);
-
-            out.write(Integer.toString(colorVals.get(ImageProcessingModelState.PixelProperty.Red))
-                    .getBytes());
-            out.write(System.lineSeparator().getBytes());
-            out.write(Integer.toString(colorVals.get(ImageProcessingModelState.PixelProperty.Green))
-                    .getBytes());
-            out.write(System.lineSeparator().getBytes());
-            out.write(Integer.toString(colorVals.get(ImageProcessingModelState.PixelProperty.Blue))
-                    .getBytes());
-            out.write(System.lineSeparator().getBytes());
-          }
+      try (FileChannel out = channel) {
+        PnmWriter writer = new PnmWriter(out);
+        if (this.binary) {
+          this.writeBinary(writer, image, width, height, maxValue);
+        } else {
+          this.writeText(writer, image, width, height, maxValue);
         }
-
-        out.close();
+        writer.flush();
       } catch (IOException e) {
         throw new IllegalArgumentException("Failed to write to output");
+      } catch (CancellationException e) {
+        deletePartialFile(path);
+        throw e;
       }
     } catch (IllegalArgumentException e) {
       throw new IllegalStateException(e.getMessage());
     }
   }
+
+  //Writes a P3 file, with every value on its own line.
+  private void writeText(PnmWriter writer, ImageHandle image, int width, int height,
+                         int maxValue) throws IOException {
+    byte[] lineSeparator = System.lineSeparator().getBytes();
+    byte[][] entries = PnmWriter.entryTable(lineSeparator);
+
+    writer.writeText("P3");
+    writer.writeBytes(lineSeparator);
+    writer.writeInt(width);
+    writer.writeText(" ");
+    writer.writeInt(height);
+    writer.writeBytes(lineSeparator);
+    writer.writeInt(maxValue);
+    writer.writeBytes(lineSeparator);
+
+    //Read the channels one row at a time so values above 255 are written unchanged.
+    int[] reds = new int[width];
+    int[] greens = new int[width];
+    int[] blues = new int[width];
+    for (int i = 0; i < height; i++) {
+      CancellationToken.checkCurrent();
+      image.getChannel(PixelProperty.Red, i, 0, width, 1, reds, 0, width);
+      image.getChannel(PixelProperty.Green, i, 0, width, 1, greens, 0, width);
+      image.getChannel(PixelProperty.Blue, i, 0, width, 1, blues, 0, width);
+
+      for (int j = 0; j < width; j++) {
+        writer.writeEntry(reds[j], entries, lineSeparator);
+        writer.writeEntry(greens[j], entries, lineSeparator);
+        writer.writeEntry(blues[j], entries, lineSeparator);
+      }
+    }
+  }
+
+  //Writes a P6 file, whose header is followed by exactly one whitespace character and then three
+  // bytes per pixel.
+  private void writeBinary(PnmWriter writer, ImageHandle image, int width, int height,
+                           int maxValue) throws IOException {
+    writer.writeText("P6\n" + width + " " + height + "\n" + maxValue + "\n");
+
+    int[] row = new int[width];
+    byte[] bytes = new byte[width * 3];
+    for (int i = 0; i < height; i++) {
+      CancellationToken.checkCurrent();
+      image.getPixels(i, 0, width, 1, row, 0, width);
+
+      for (int j = 0, k = 0; j < width; j++, k += 3) {
+        bytes[k] = (byte) (row[j] >> 16);
+        bytes[k + 1] = (byte) (row[j] >> 8);
+        bytes[k + 2] = (byte) row[j];
+      }
+      writer.writeBytes(bytes);
+    }
+  }
+
+  //Deletes the part of a file that was written before the save was cancelled. The save is
+  // cancelled either way, so a failure to delete it is ignored.
+  static void deletePartialFile(String path) {
+    try {
+      Files.deleteIfExists(Paths.get(path));
+    } catch (IOException e) {
+      // the cancellation is what gets reported
+    }
+  }
 }
@@ -0,0 +1,228 @@
+package imageprocessing.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents an affine color operation: a 3x4 matrix whose rows give the new red, green and blue
+ * values as a weighted sum of the old ones plus an offset. The result is rounded and clamped
+ * between 0 and a max value, and alpha is kept. A color transformation is an affine operation
+ * without offsets, and brightening is one with the identity matrix.
+ *
+ * <p>Two affine operations can be composed into one (by multiplying their matrices) when that
+ * gives exactly the same result as running them one after the other. That is the case when the
+ * first one only produces whole numbers (so it does not round) and never leaves the range it is
+ * clamped to for the pixels it is given (so it does not clamp). The composed sum can still differ
+ * from the step by step sum in its last bits, so a pixel whose composed value is very close to
+ * halfway between two integers is redone step by step, which keeps the results identical.</p>
+ */
+final class AffineColorOp implements PointOp {
+  //How close to a rounding tie a composed value has to be to be redone step by step. The two sums
+  // differ by far less than this.
+  private static final double TIE_GUARD = 1e-7;
+
+  //Row c holds the weights of red, green and blue and the offset for channel c.
+  private final double[][] matrix;
+  private final int clampMax;
+
+  //The operations this one was composed from, in order, or empty if it was not composed.
+  private final AffineColorOp[] steps;
+
+  //Creates an operation from a 3x4 matrix that is not shared with anything else.
+  private AffineColorOp(double[][] matrix, int clampMax, AffineColorOp[] steps) {
+    this.matrix = matrix;
+    this.clampMax = clampMax;
+    this.steps = steps;
+  }
+
+  /**
+   * Creates the operation for a color transformation, clamped between 0 and 255.
+   *
+   * @param transformation The 3x3 transformation matrix.
+   * @return The operation.
+   * @throws IllegalArgumentException If the matrix is not 3x3.
+   */
+  static AffineColorOp transformation(double[][] transformation) throws IllegalArgumentException {
+    if (transformation == null || transformation.length != 3) {
+      throw new IllegalArgumentException("Invalid transformation matrix");
+    }
+
+    double[][] matrix = new double[3][4];
+    for (int c = 0; c < 3; c++) {
+      if (transformation[c] == null || transformation[c].length != 3) {
+        throw new IllegalArgumentException("Invalid transformation matrix");
+      }
+      System.arraycopy(transformation[c], 0, matrix[c], 0, 3);
+    }
+    return new AffineColorOp(matrix, 255, new AffineColorOp[0]);
+  }
+
+  /**
+   * Creates the operation that adds an amount to every channel, clamped between 0 and the max
+   * value, which is what brightening does.
+   *
+   * @param amount   The amount to add.
+   * @param maxValue The max value of the image.
+   * @return The operation.
+   */
+  static AffineColorOp offset(int amount, int maxValue) {
+    double[][] matrix = new double[3][4];
+    for (int c = 0; c < 3; c++) {
+      matrix[c][c] = 1;
+      matrix[c][3] = amount;
+    }
+    return new AffineColorOp(matrix, maxValue, new AffineColorOp[0]);
+  }
+
+  /**
+   * Checks whether every weight and offset is a whole number, in which case every result is a
+   * whole number before clamping. A composed operation is integral if every step is.
+   *
+   * @return Whether the operation is integral.
+   */
+  boolean isIntegral() {
+    for (AffineColorOp step : this.steps) {
+      if (!step.isIntegral()) {
+        return false;
+      }
+    }
+    for (double[] row : this.matrix) {
+      for (double value : row) {
+        if (value != Math.rint(value) || Math.abs(value) > (1 << 20)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether any pixel whose channels are within the given bounds could need clamping.
+   *
+   * @param low  The smallest possible red, green and blue values.
+   * @param high The largest possible red, green and blue values.
+   * @return Whether clamping is possible.
+   */
+  boolean mayClamp(int[] low, int[] high) {
+    double[][] bounds = this.unclampedBounds(low, high);
+    for (int c = 0; c < 3; c++) {
+      if (Math.round(bounds[0][c]) < 0 || Math.round(bounds[1][c]) > this.clampMax) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Narrows the given channel bounds to the bounds of the results of this operation.
+   *
+   * @param low  The smallest possible red, green and blue values, replaced by the new ones.
+   * @param high The largest possible red, green and blue values, replaced by the new ones.
+   */
+  void applyToBounds(int[] low, int[] high) {
+    double[][] bounds = this.unclampedBounds(low, high);
+    for (int c = 0; c < 3; c++) {
+      low[c] = this.roundAndClamp(bounds[0][c]);
+      high[c] = this.roundAndClamp(bounds[1][c]);
+    }
+  }
+
+  //Computes the smallest and largest unrounded result of every channel with interval arithmetic.
+  private double[][] unclampedBounds(int[] low, int[] high) {
+    double[][] bounds = new double[2][3];
+    for (int c = 0; c < 3; c++) {
+      double min = this.matrix[c][3];
+      double max = this.matrix[c][3];
+      for (int k = 0; k < 3; k++) {
+        double a = this.matrix[c][k] * low[k];
+        double b = this.matrix[c][k] * high[k];
+        min += Math.min(a, b);
+        max += Math.max(a, b);
+      }
+      bounds[0][c] = min;
+      bounds[1][c] = max;
+    }
+    return bounds;
+  }
+
+  /**
+   * Composes this operation with one that runs on its results. The caller must make sure this
+   * operation is integral and never clamps for the pixels it will be given.
+   *
+   * @param next The operation that runs second.
+   * @return The composed operation.
+   */
+  AffineColorOp then(AffineColorOp next) {
+    double[][] composed = new double[3][4];
+    for (int c = 0; c < 3; c++) {
+      for (int k = 0; k < 4; k++) {
+        double sum = k == 3 ? next.matrix[c][3] : 0;
+        for (int m = 0; m < 3; m++) {
+          sum += next.matrix[c][m] * this.matrix[m][k];
+        }
+        composed[c][k] = sum;
+      }
+    }
+
+    List<AffineColorOp> steps = new ArrayList<AffineColorOp>();
+    steps.addAll(this.steps.length == 0 ? Arrays.asList(this) : Arrays.asList(this.steps));
+    steps.addAll(next.steps.length == 0 ? Arrays.asList(next) : Arrays.asList(next.steps));
+    return new AffineColorOp(composed, next.clampMax, steps.toArray(new AffineColorOp[0]));
+  }
+
+  @Override
+  public void apply(int[] in, int[] out, int from, int to) {
+    double[] m0 = this.matrix[0];
+    double[] m1 = this.matrix[1];
+    double[] m2 = this.matrix[2];
+    boolean composed = this.steps.length > 0;
+
+    for (int i = from; i < to; i++) {
+      int argb = in[i];
+      int red = PackedRaster.red(argb);
+      int green = PackedRaster.green(argb);
+      int blue = PackedRaster.blue(argb);
+
+      double newRed = red * m0[0] + green * m0[1] + blue * m0[2] + m0[3];
+      double newGreen = red * m1[0] + green * m1[1] + blue * m1[2] + m1[3];
+      double newBlue = red * m2[0] + green * m2[1] + blue * m2[2] + m2[3];
+
+      if (composed && (nearTie(newRed) || nearTie(newGreen) || nearTie(newBlue))) {
+        out[i] = this.applyStepByStep(argb);
+      } else {
+        out[i] = (argb & 0xFF000000) | (this.roundAndClamp(newRed) << 16)
+                | (this.roundAndClamp(newGreen) << 8) | this.roundAndClamp(newBlue);
+      }
+    }
+  }
+
+  /**
+   * Applies the operations this one was composed from to a single pixel, one after the other.
+   *
+   * @param argb The packed pixel.
+   * @return The new packed pixel.
+   */
+  int applyStepByStep(int argb) {
+    int[] pixel = new int[]{argb};
+    if (this.steps.length == 0) {
+      this.apply(pixel, pixel, 0, 1);
+    }
+    for (AffineColorOp step : this.steps) {
+      step.apply(pixel, pixel, 0, 1);
+    }
+    return pixel[0];
+  }
+
+  //Checks whether a value is so close to halfway between two integers that the step by step sum
+  // could round the other way.
+  private static boolean nearTie(double value) {
+    return Math.abs(value - Math.floor(value) - 0.5) < TIE_GUARD;
+  }
+
+  //Rounds a value and clamps it between 0 and the max value.
+  private int roundAndClamp(double value) {
+    long result = Math.round(value);
+    return (int) (result < 0 ? 0 : Math.min(this.clampMax, result));
+  }
+}
@@ -0,0 +1,126 @@
+package imageprocessing.model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an operation over the rows of an image, either on the calling thread or split into bands
+ * of rows on a ForkJoinPool. Every band writes only its own rows of the output and every output
+ * pixel is computed the same way no matter how the rows are split, so the result is identical to
+ * running serially.
+ *
+ * <p>When the calling thread runs work through a CancellationToken, the token is checked before
+ * every band, and a serial run is split into bands too so it can stop part way.</p>
+ */
+final class BandScheduler {
+
+  /**
+   * Represents the part of an operation that computes a band of rows of the output.
+   */
+  interface Band {
+    /**
+     * Computes the output rows from fromRow (inclusive) to toRow (exclusive).
+     *
+     * @param fromRow The first row.
+     * @param toRow   One past the last row.
+     */
+    void run(int fromRow, int toRow);
+  }
+
+  //Bands smaller than this many pixels are not worth handing to another thread.
+  private static final int MIN_BAND_PIXELS = 1 << 14;
+
+  //How many bands each thread gets, so that uneven bands still balance out.
+  private static final int BANDS_PER_THREAD = 4;
+
+  //Null when running serially.
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a scheduler that runs bands on the given pool, or serially if the pool is null.
+   *
+   * @param pool The pool to use, or null.
+   */
+  BandScheduler(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Gets the number of threads operations are split across.
+   *
+   * @return The parallelism, 1 when running serially.
+   */
+  int getParallelism() {
+    return this.pool == null ? 1 : this.pool.getParallelism();
+  }
+
+  /**
+   * Runs the band over every row of an image of the given size, and returns when every row is
+   * done. Exceptions thrown by the band are rethrown.
+   *
+   * @param width  The width of the image.
+   * @param height The height of the image.
+   * @param band   The band to run.
+   * @throws CancellationException If the token of the calling thread is cancelled.
+   */
+  void run(int width, int height, Band band) throws CancellationException {
+    int bandRows = Math.max(
+            (height + this.getParallelism() * BANDS_PER_THREAD - 1)
+                    / (this.getParallelism() * BANDS_PER_THREAD),
+            (MIN_BAND_PIXELS + width - 1) / Math.max(1, width));
+
+    //The token is looked up here because the bands may run on other threads.
+    CancellationToken token = CancellationToken.current();
+    if (token == null) {
+      if (this.pool == null || bandRows >= height) {
+        band.run(0, height);
+      } else {
+        this.pool.invoke(new BandTask(band, 0, height, bandRows));
+      }
+      return;
+    }
+
+    Band checked = (fromRow, toRow) -> {
+      token.check();
+      band.run(fromRow, toRow);
+    };
+    if (this.pool == null || bandRows >= height) {
+      for (int row = 0; row < height; row += bandRows) {
+        checked.run(row, Math.min(height, row + bandRows));
+      }
+    } else {
+      this.pool.invoke(new BandTask(checked, 0, height, bandRows));
+    }
+  }
+
+  /**
+   * Splits a range of rows in half until it is at most one band, then runs it.
+   */
+  private static final class BandTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Band band;
+    private final int fromRow;
+    private final int toRow;
+    private final int bandRows;
+
+    private BandTask(Band band, int fromRow, int toRow, int bandRows) {
+      this.band = band;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.bandRows = bandRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.toRow - this.fromRow <= this.bandRows) {
+        this.band.run(this.fromRow, this.toRow);
+      } else {
+        int middle = (this.fromRow + this.toRow) >>> 1;
+        invokeAll(new BandTask(this.band, this.fromRow, middle, this.bandRows),
+                new BandTask(this.band, middle, this.toRow, this.bandRows));
+      }
+    }
+  }
+}
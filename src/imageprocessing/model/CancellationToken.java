@@ -0,0 +1,100 @@
+package imageprocessing.model;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Lets operations of a model that run on one thread be cancelled from another. Work that is run
+ * through a token (see run) checks it before every band of rows, including the bands an image is
+ * streamed into a model in, and the tiled model checks it before every tile, so a cancelled
+ * operation stops soon after the token is cancelled. It then throws a CancellationException, and
+ * the image it was computing is not stored. Work that is not run through a token is never
+ * cancelled.
+ *
+ * <p>Cancelling does not interrupt the thread, because interrupting a thread that is using a
+ * FileChannel closes the channel, which would break the scratch and spill files of the
+ * models.</p>
+ */
+public final class CancellationToken {
+  //The token of the work running on each thread, if any.
+  private static final ThreadLocal<CancellationToken> CURRENT =
+          new ThreadLocal<CancellationToken>();
+
+  private volatile boolean cancelled;
+
+  /**
+   * Creates a token that is not cancelled.
+   */
+  public CancellationToken() {
+    this.cancelled = false;
+  }
+
+  /**
+   * Cancels the work that is run through this token. It can be called from any thread.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Checks whether this token was cancelled.
+   *
+   * @return Whether it was cancelled.
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Runs work on the calling thread, and makes every operation of a model that it runs check this
+   * token.
+   *
+   * @param work The work to run.
+   * @param <T>  The type of the result of the work.
+   * @return The result of the work.
+   * @throws CancellationException If the token is cancelled while an operation is running.
+   */
+  public <T> T run(Supplier<T> work) throws CancellationException {
+    CancellationToken previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return work.get();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Throws a CancellationException if the work running on the calling thread was run through a
+   * token that was cancelled. Loads and saves, which do not run through a model, call this to
+   * stop between rows.
+   *
+   * @throws CancellationException If the token of the calling thread was cancelled.
+   */
+  public static void checkCurrent() throws CancellationException {
+    CancellationToken token = CURRENT.get();
+    if (token != null) {
+      token.check();
+    }
+  }
+
+  /**
+   * Gets the token of the work running on the calling thread.
+   *
+   * @return The token, or null if the work was not run through one.
+   */
+  static CancellationToken current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Throws a CancellationException if this token was cancelled.
+   *
+   * @throws CancellationException If it was cancelled.
+   */
+  void check() throws CancellationException {
+    if (this.cancelled) {
+      throw new CancellationException("The operation was cancelled");
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package imageprocessing.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Represents an implementation for an image processing model that can be used by any number of
+ * threads at once, e.g. a GUI that keeps reading images while operations run in the background.
+ * Every image is an immutable snapshot: a PackedRaster that is never changed once it is
+ * published, stored in a ConcurrentHashMap under its lower case name. An operation reads the
+ * current snapshot of its source, computes a new raster without holding any lock, and publishes
+ * it by replacing the entry of the new name. Readers never wait for writers or for each other,
+ * and every call sees either the whole old image or the whole new one. If several threads write
+ * the same name at once, the last one to finish wins.
+ *
+ * <p>The results are exactly the same as with the SimpleImageProcessingModel, and channel and
+ * max values must be between 0 and 255. Since snapshots never change, a flip is a view of its
+ * source, which takes constant time and memory, and the histograms and statistics of a snapshot
+ * are cached with it and computed at most once.</p>
+ */
+public class ConcurrentImageProcessingModel implements ImageProcessingModel {
+
+  private final ConcurrentMap<String, Snapshot> imageCollection;
+  private final BandScheduler scheduler;
+
+  /**
+   * Default constructor: Creates a model that runs every operation on the thread that calls it.
+   * The image collection is initialized.
+   */
+  public ConcurrentImageProcessingModel() {
+    this.imageCollection = new ConcurrentHashMap<String, Snapshot>();
+    this.scheduler = new BandScheduler(null);
+  }
+
+  /**
+   * Creates a model that splits every operation into bands of rows and runs them on a new
+   * ForkJoinPool with the given parallelism, which is shared by all threads that use the model.
+   * A parallelism of 1 runs every operation on the thread that calls it.
+   *
+   * @param parallelism The number of threads to use.
+   * @throws IllegalArgumentException If the parallelism is less than 1.
+   */
+  public ConcurrentImageProcessingModel(int parallelism) throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    this.imageCollection = new ConcurrentHashMap<String, Snapshot>();
+    this.scheduler = new BandScheduler(parallelism == 1 ? null : new ForkJoinPool(parallelism));
+  }
+
+  @Override
+  public void addImageToLibrary(String imageName, Pixel[][] imgGrid)
+          throws IllegalArgumentException {
+
+    if (imageName == null || imageName.equals("") || imgGrid == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    this.publish(imageName, PackedRaster.fromGrid(imgGrid));
+  }
+
+  @Override
+  public void addImageToLibrary(String imageName, int width, int height, int maxValue,
+                                int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    int[] copy = new int[width * height];
+    System.arraycopy(pixels, 0, copy, 0, copy.length);
+    this.publish(imageName, new PackedRaster(width, height, maxValue, copy));
+  }
+
+  //Uses the array as the pixels of the image, unless it is longer than the image.
+  @Override
+  public void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                                     int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    if (pixels.length != width * height) {
+      this.addImageToLibrary(imageName, width, height, maxValue, pixels);
+      return;
+    }
+    this.publish(imageName, new PackedRaster(width, height, maxValue, pixels));
+  }
+
+  //Every image is one array, so the whole image is read into it at once.
+  @Override
+  public void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                                   PixelSource source) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, source);
+
+    int[] pixels = PackedRaster.readAll(width, height, source);
+    this.publish(imageName, new PackedRaster(width, height, maxValue, pixels));
+  }
+
+  @Override
+  public int getWidth(String imageName) throws IllegalArgumentException {
+    return this.getRaster(imageName).width;
+  }
+
+  @Override
+  public int getHeight(String imageName) throws IllegalArgumentException {
+    return this.getRaster(imageName).height;
+  }
+
+  @Override
+  public void flip(FlipDirection flip, String imageName, String newName)
+          throws IllegalArgumentException {
+    this.apply(this.getSnapshot(imageName), PointOperation.flip(flip), newName,
+            StatsCache.SAME);
+  }
+
+  @Override
+  public void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException {
+    Snapshot source = this.getSnapshot(imageName);
+    PackedRaster.checkCrop(source.raster.width, source.raster.height, row, col, width, height);
+    this.apply(source, new CropOperation(row, col, width, height), newName, null);
+  }
+
+  @Override
+  public void brighten(int amount, String imageName, String newName)
+          throws IllegalArgumentException {
+    Snapshot source = this.getSnapshot(imageName);
+    int max = source.raster.maxValue;
+    this.apply(source, PointOperation.of(LookupTable.brighten(amount, max)), newName,
+            StatsCache.brighten(amount, max));
+  }
+
+  @Override
+  public void grayscale(PixelProperty component, String imageName, String newName)
+          throws IllegalArgumentException {
+    Snapshot source = this.getSnapshot(imageName);
+    int max = source.raster.maxValue;
+    this.apply(source, PointOperation.of((in, out, from, to) ->
+            LookupTable.applyGrayscale(component, max, in, out, from, to)), newName,
+            StatsCache.grayscale(component));
+  }
+
+  @Override
+  public void applyFilter(double[][] kernel, String imageName, String newName)
+          throws IllegalArgumentException {
+    this.apply(this.getSnapshot(imageName), new FilterOperation(kernel), newName, null);
+  }
+
+  @Override
+  public void colorTransformation(double[][] transformation, String imageName, String newName)
+          throws IllegalArgumentException {
+    this.apply(this.getSnapshot(imageName),
+            PointOperation.of(AffineColorOp.transformation(transformation)), newName, null);
+  }
+
+  //The handle reads the snapshot that is current now, which never changes.
+  @Override
+  public ImageHandle getImage(String imageName) throws IllegalArgumentException {
+    return new RasterHandle(this.getRaster(imageName));
+  }
+
+  @Override
+  public Map<PixelProperty, Integer> getPixelInfo(String imageName, int row, int col)
+          throws IllegalArgumentException {
+    return this.getImage(imageName).getPixelInfo(row, col);
+  }
+
+  @Override
+  public int getMaxValue(String imageName) throws IllegalArgumentException {
+    return this.getImage(imageName).getMaxValue();
+  }
+
+  @Override
+  public void getPixels(String imageName, int row, int col, int width, int height,
+                        int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    this.getImage(imageName).getPixels(row, col, width, height, dest, offset, scanline);
+  }
+
+  @Override
+  public void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                         int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    this.getImage(imageName).getChannel(property, row, col, width, height, dest, offset,
+            scanline);
+  }
+
+  @Override
+  public long[] getHistogram(String imageName, PixelProperty property)
+          throws IllegalArgumentException {
+    Snapshot snapshot = this.getSnapshot(imageName);
+    return snapshot.stats.getHistogram(property,
+            p -> Histogram.count(snapshot.raster, p, this.scheduler));
+  }
+
+  @Override
+  public ImageStats getStats(String imageName) throws IllegalArgumentException {
+    Snapshot snapshot = this.getSnapshot(imageName);
+    return snapshot.stats.getStats(() -> new RasterHandle(snapshot.raster), this.scheduler,
+            p -> Histogram.count(snapshot.raster, p, this.scheduler));
+  }
+
+  //Gets the current snapshot of an image, throws an IllegalArgumentException if it does not
+  // exist.
+  private Snapshot getSnapshot(String imageName) throws IllegalArgumentException {
+    Snapshot snapshot = imageName == null ? null
+            : this.imageCollection.get(imageName.toLowerCase());
+    if (snapshot == null) {
+      throw new IllegalArgumentException("Model does not contain this image");
+    }
+    return snapshot;
+  }
+
+  //Gets the pixels of the current snapshot of an image.
+  private PackedRaster getRaster(String imageName) throws IllegalArgumentException {
+    return this.getSnapshot(imageName).raster;
+  }
+
+  //Runs an operation on a snapshot and publishes the result under the new name. The result is a
+  // view of the snapshot when it covers the whole array of the snapshot (i.e. a flip), so it
+  // never keeps more pixels alive than it shows. The histograms of the result are derived from
+  // those of the snapshot unless the derivation is null.
+  private void apply(Snapshot source, Operation operation, String newName,
+                     StatsCache.Derivation derivation) throws IllegalArgumentException {
+    if (newName == null || newName.equals("")) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    PackedRaster result = operation.view(source.raster);
+    if (result == null || (long) result.width * result.height != result.pixels.length) {
+      result = operation.apply(source.raster, this.scheduler, false);
+    }
+
+    Snapshot snapshot = new Snapshot(result);
+    if (derivation != null) {
+      snapshot.stats.deriveFrom(source.stats, derivation);
+    }
+    this.imageCollection.put(newName.toLowerCase(), snapshot);
+  }
+
+  //Publishes a raster under a name, replacing the snapshot that was there. The raster must never
+  // be changed afterwards.
+  private void publish(String imageName, PackedRaster raster) {
+    this.imageCollection.put(imageName.toLowerCase(), new Snapshot(raster));
+  }
+
+  /**
+   * Represents a published image: its pixels and the cache of their histograms and statistics,
+   * which is replaced together with them.
+   */
+  private static final class Snapshot {
+    private final PackedRaster raster;
+    private final StatsCache stats;
+
+    private Snapshot(PackedRaster raster) {
+      this.raster = raster;
+      this.stats = new StatsCache();
+    }
+  }
+}
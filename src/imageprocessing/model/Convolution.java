@@ -0,0 +1,264 @@
+package imageprocessing.model;
+
+/**
+ * Represents a filter kernel that has been prepared for use on packed rasters. Pixels outside the
+ * image are ignored, like in the SimpleImageProcessingModel.
+ *
+ * <p>When the kernel is separable (it is the outer product of a column and a row vector, as
+ * blur kernels are), the filter is applied as a horizontal pass followed by a vertical pass,
+ * which costs O(k) per pixel instead of O(k^2). The two passes add the same terms in a different
+ * order, so their sum can differ from the direct sum in the last few bits. Rounding only
+ * magnifies such a difference when the sum is within a hair of .5, so those (rare) values are
+ * recomputed with the direct 2D sum. The result is therefore identical to the direct filter.
+ */
+final class Convolution {
+
+  //How far (relative to the largest kernel entry) a kernel may be from the outer product of its
+  // factors and still be treated as separable.
+  static final double SEPARABLE_TOLERANCE = 1e-9;
+
+  private final double[][] kernel;
+  private final int size;
+  private final int offset;
+
+  //The factors of a separable kernel, kernel[i][j] ~ column[i] * row[j]. Null otherwise.
+  private final double[] column;
+  private final double[] row;
+
+  //How close to .5 a separable sum must be for it to be recomputed with the direct sum.
+  private final double guard;
+
+  /**
+   * Prepares a kernel, detecting whether it is separable.
+   *
+   * @param kernel The kernel, which must be an odd square matrix.
+   * @throws IllegalArgumentException If the kernel is not an odd square matrix.
+   */
+  Convolution(double[][] kernel) throws IllegalArgumentException {
+    if (kernel == null || kernel.length % 2 == 0 || kernel[0] == null
+            || kernel[0].length % 2 == 0) {
+      throw new IllegalArgumentException("Kernel must be an odd square matrix");
+    }
+    for (double[] kernelRow : kernel) {
+      if (kernelRow == null || kernelRow.length != kernel.length) {
+        throw new IllegalArgumentException("Kernel must be an odd square matrix");
+      }
+    }
+
+    this.size = kernel.length;
+    this.offset = this.size / 2;
+    this.kernel = new double[this.size][];
+    for (int i = 0; i < this.size; i++) {
+      this.kernel[i] = kernel[i].clone();
+    }
+
+    //Factor the kernel around its largest entry: the column through the pivot, and the row
+    // through the pivot divided by the pivot.
+    int pivotRow = 0;
+    int pivotCol = 0;
+    double maxAbs = 0.0;
+    for (int i = 0; i < this.size; i++) {
+      for (int j = 0; j < this.size; j++) {
+        if (Math.abs(this.kernel[i][j]) > maxAbs) {
+          maxAbs = Math.abs(this.kernel[i][j]);
+          pivotRow = i;
+          pivotCol = j;
+        }
+      }
+    }
+
+    double[] column = new double[this.size];
+    double[] row = new double[this.size];
+    double residual = 0.0;
+    if (this.size > 1 && maxAbs > 0.0 && !Double.isInfinite(maxAbs)) {
+      for (int i = 0; i < this.size; i++) {
+        column[i] = this.kernel[i][pivotCol];
+        row[i] = this.kernel[pivotRow][i] / this.kernel[pivotRow][pivotCol];
+      }
+      for (int i = 0; i < this.size; i++) {
+        for (int j = 0; j < this.size; j++) {
+          residual = Math.max(residual, Math.abs(this.kernel[i][j] - column[i] * row[j]));
+        }
+      }
+    }
+
+    if (this.size > 1 && maxAbs > 0.0 && residual <= SEPARABLE_TOLERANCE * maxAbs) {
+      this.column = column;
+      this.row = row;
+      //The factorisation error plus a generous bound on the floating point error of both sums,
+      // for channel values of at most 255.
+      this.guard = 255.0 * this.size * this.size * (residual + 1e-12 * maxAbs);
+    } else {
+      this.column = null;
+      this.row = null;
+      this.guard = 0.0;
+    }
+  }
+
+  /**
+   * Gets how far the kernel reaches from its center, which is how many rows and cols around a
+   * region are needed to filter it.
+   *
+   * @return The radius of the kernel.
+   */
+  int radius() {
+    return this.offset;
+  }
+
+  /**
+   * Returns whether this kernel will be applied as two 1D passes.
+   *
+   * @return True if the kernel is separable.
+   */
+  boolean isSeparable() {
+    return this.column != null;
+  }
+
+  /**
+   * Filters the rows from fromRow (inclusive) to toRow (exclusive) of the source into the same
+   * rows of the destination. Alpha values are kept. The destination must have the same size as
+   * the source and must not be the source.
+   *
+   * @param source  The raster to read from.
+   * @param dest    The raster to write to.
+   * @param fromRow The first row to filter.
+   * @param toRow   One past the last row to filter.
+   */
+  void apply(PackedRaster source, PackedRaster dest, int fromRow, int toRow) {
+    if (this.isSeparable()) {
+      this.applySeparable(source, dest, fromRow, toRow);
+    } else {
+      this.applyDirect(source, dest, fromRow, toRow);
+    }
+  }
+
+  //Applies the full 2D kernel to every pixel.
+  private void applyDirect(PackedRaster source, PackedRaster dest, int fromRow, int toRow) {
+    int width = source.width;
+    int[] in = source.pixels;
+
+    for (int i = fromRow; i < toRow; i++) {
+      for (int j = 0; j < width; j++) {
+        int index = i * width + j;
+        dest.pixels[index] = PackedRaster.pack(PackedRaster.alpha(in[index]),
+                roundAndClamp(this.directSum(source, i, j, 16)),
+                roundAndClamp(this.directSum(source, i, j, 8)),
+                roundAndClamp(this.directSum(source, i, j, 0)));
+      }
+    }
+  }
+
+  //Sums one channel (selected by its bit shift) of the neighbors of a pixel weighted by the
+  // kernel, in the same order as the SimpleImageProcessingModel.
+  private double directSum(PackedRaster source, int row, int col, int shift) {
+    int width = source.width;
+    int firstRow = Math.max(0, row - this.offset);
+    int lastRow = Math.min(source.height - 1, row + this.offset);
+    int firstCol = Math.max(0, col - this.offset);
+    int lastCol = Math.min(width - 1, col + this.offset);
+
+    double sum = 0.0;
+    for (int r = firstRow; r <= lastRow; r++) {
+      double[] kernelRow = this.kernel[r - row + this.offset];
+      int index = r * width + firstCol;
+      for (int c = firstCol; c <= lastCol; c++, index++) {
+        sum += ((source.pixels[index] >> shift) & 0xFF) * kernelRow[c - col + this.offset];
+      }
+    }
+    return sum;
+  }
+
+  //Applies the row factor horizontally into a ring of rows, then the column factor vertically.
+  private void applySeparable(PackedRaster source, PackedRaster dest, int fromRow, int toRow) {
+    int width = source.width;
+    int height = source.height;
+    int[] in = source.pixels;
+
+    //Row r of the horizontal pass is kept at index r % size, which is unique for the size rows a
+    // kernel covers.
+    double[][] reds = new double[this.size][width];
+    double[][] greens = new double[this.size][width];
+    double[][] blues = new double[this.size][width];
+    int nextRow = Math.max(0, fromRow - this.offset);
+
+    for (int i = fromRow; i < toRow; i++) {
+      int firstRow = Math.max(0, i - this.offset);
+      int lastRow = Math.min(height - 1, i + this.offset);
+
+      for (; nextRow <= lastRow; nextRow++) {
+        this.horizontalPass(in, width, nextRow, reds[nextRow % this.size],
+                greens[nextRow % this.size], blues[nextRow % this.size]);
+      }
+
+      for (int j = 0; j < width; j++) {
+        double red = 0.0;
+        double green = 0.0;
+        double blue = 0.0;
+        for (int r = firstRow; r <= lastRow; r++) {
+          double weight = this.column[r - i + this.offset];
+          int slot = r % this.size;
+          red += reds[slot][j] * weight;
+          green += greens[slot][j] * weight;
+          blue += blues[slot][j] * weight;
+        }
+
+        if (this.nearTie(red)) {
+          red = this.directSum(source, i, j, 16);
+        }
+        if (this.nearTie(green)) {
+          green = this.directSum(source, i, j, 8);
+        }
+        if (this.nearTie(blue)) {
+          blue = this.directSum(source, i, j, 0);
+        }
+
+        int index = i * width + j;
+        dest.pixels[index] = PackedRaster.pack(PackedRaster.alpha(in[index]),
+                roundAndClamp(red), roundAndClamp(green), roundAndClamp(blue));
+      }
+    }
+  }
+
+  //Applies the row factor to one row of the image.
+  private void horizontalPass(int[] in, int width, int row,
+                              double[] reds, double[] greens, double[] blues) {
+    int rowStart = row * width;
+
+    for (int j = 0; j < width; j++) {
+      int firstCol = Math.max(0, j - this.offset);
+      int lastCol = Math.min(width - 1, j + this.offset);
+
+      double red = 0.0;
+      double green = 0.0;
+      double blue = 0.0;
+      for (int c = firstCol; c <= lastCol; c++) {
+        double weight = this.row[c - j + this.offset];
+        int argb = in[rowStart + c];
+        red += PackedRaster.red(argb) * weight;
+        green += PackedRaster.green(argb) * weight;
+        blue += PackedRaster.blue(argb) * weight;
+      }
+
+      reds[j] = red;
+      greens[j] = green;
+      blues[j] = blue;
+    }
+  }
+
+  //Checks whether a separable sum is close enough to a rounding boundary that it could round
+  // differently from the direct sum.
+  private boolean nearTie(double sum) {
+    return Math.abs(sum - Math.floor(sum) - 0.5) <= this.guard;
+  }
+
+  /**
+   * Rounds a computed channel value and clamps it between 0 and 255.
+   *
+   * @param value The value.
+   * @return The rounded and clamped value.
+   */
+  static int roundAndClamp(double value) {
+    long result = Math.round(value);
+    return (int) (result < 0 ? 0 : Math.min(255, result));
+  }
+}
@@ -0,0 +1,57 @@
+package imageprocessing.model;
+
+/**
+ * Represents cropping an image to a rectangle. Cropping only selects pixels, so the result of
+ * cropping an image that already has its pixels is a view of them, and nothing is copied.
+ */
+final class CropOperation implements Operation {
+  private final int row;
+  private final int col;
+  private final int width;
+  private final int height;
+
+  /**
+   * Creates the operation for a rectangle. The rectangle must lie inside the images it is run on.
+   *
+   * @param row    The top row of the rectangle.
+   * @param col    The left col of the rectangle.
+   * @param width  The width of the rectangle.
+   * @param height The height of the rectangle.
+   */
+  CropOperation(int row, int col, int width, int height) {
+    this.row = row;
+    this.col = col;
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public PackedRaster apply(PackedRaster source, BandScheduler scheduler, boolean inPlace) {
+    return this.view(source).compact();
+  }
+
+  @Override
+  public boolean canRunInPlace() {
+    return false;
+  }
+
+  @Override
+  public PackedRaster view(PackedRaster source) {
+    return source.cropped(this.row, this.col, this.width, this.height);
+  }
+
+  @Override
+  public int resultWidth(int sourceWidth) {
+    return this.width;
+  }
+
+  @Override
+  public int resultHeight(int sourceHeight) {
+    return this.height;
+  }
+
+  @Override
+  public Operation fuse(Operation next) {
+    return null;
+  }
+}
@@ -0,0 +1,11 @@
+package imageprocessing.model;
+
+/**
+ * Represents how a model with a memory budget frees the memory of an image it evicts: by writing
+ * its pixels to disk (Spill), by dropping them and recomputing them from the image they were
+ * computed from when they are used again (Recompute), or by whichever of the two is estimated to
+ * be faster from measured timings (Cost). Images that cannot be recomputed are always spilled.
+ */
+public enum EvictionPolicy {
+  Cost, Spill, Recompute
+}
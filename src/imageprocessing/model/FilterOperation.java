@@ -0,0 +1,54 @@
+package imageprocessing.model;
+
+/**
+ * Represents applying a filter kernel to an image. Every output pixel depends on its neighbors,
+ * so a filter cannot be fused with the operations around it.
+ */
+final class FilterOperation implements Operation {
+  private final Convolution convolution;
+
+  /**
+   * Creates the operation for a kernel.
+   *
+   * @param kernel The kernel, a square with an odd size.
+   * @throws IllegalArgumentException If the kernel is invalid.
+   */
+  FilterOperation(double[][] kernel) throws IllegalArgumentException {
+    this.convolution = new Convolution(kernel);
+  }
+
+  @Override
+  public PackedRaster apply(PackedRaster source, BandScheduler scheduler, boolean inPlace) {
+    PackedRaster plain = source.compact();
+    PackedRaster result = plain.blankCopy();
+    scheduler.run(plain.width, plain.height,
+            (fromRow, toRow) -> this.convolution.apply(plain, result, fromRow, toRow));
+    return result;
+  }
+
+  //Every output pixel reads its neighbors, so the source must stay as it is.
+  @Override
+  public boolean canRunInPlace() {
+    return false;
+  }
+
+  @Override
+  public PackedRaster view(PackedRaster source) {
+    return null;
+  }
+
+  @Override
+  public int resultWidth(int sourceWidth) {
+    return sourceWidth;
+  }
+
+  @Override
+  public int resultHeight(int sourceHeight) {
+    return sourceHeight;
+  }
+
+  @Override
+  public Operation fuse(Operation next) {
+    return null;
+  }
+}
@@ -0,0 +1,158 @@
+package imageprocessing.model;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Counts how often every value of a property occurs in an image (see
+ * ImageProcessingModelState.getHistogram). Every band of rows is counted into its own partial
+ * histogram of primitive counts, which is added to the result once the band is done, so bands
+ * never share counts while they run and nothing is boxed.
+ */
+final class Histogram {
+
+  private Histogram() {
+    // only static methods
+  }
+
+  /**
+   * Gets the number of counts of a histogram of an image with the given max value.
+   *
+   * @param maxValue The max value of the image.
+   * @return The number of counts.
+   */
+  static int bins(int maxValue) {
+    return Math.max(256, maxValue + 1);
+  }
+
+  /**
+   * Counts a property of the pixels of a raster, splitting its rows into bands with the
+   * scheduler.
+   *
+   * @param raster    The raster.
+   * @param property  The property to count.
+   * @param scheduler The scheduler to run bands with.
+   * @return The counts.
+   * @throws IllegalArgumentException If the property is null.
+   */
+  static long[] count(PackedRaster raster, PixelProperty property, BandScheduler scheduler)
+          throws IllegalArgumentException {
+    checkProperty(property);
+    long[] counts = new long[bins(raster.maxValue)];
+    int width = raster.width;
+
+    scheduler.run(width, raster.height, (fromRow, toRow) -> {
+      long[] partial = new long[counts.length];
+      //Rows of a mirrored view are copied out first, so they can be counted forwards.
+      int[] row = raster.colStride == 1 ? null : new int[width];
+
+      for (int i = fromRow; i < toRow; i++) {
+        if (row == null) {
+          int start = raster.index(i, 0);
+          countPacked(raster.pixels, start, start + width, raster.maxValue, property, partial);
+        } else {
+          raster.getPixels(i, 0, width, 1, row, 0, width);
+          countPacked(row, 0, width, raster.maxValue, property, partial);
+        }
+      }
+      merge(counts, partial);
+    });
+    return counts;
+  }
+
+  /**
+   * Counts a property of the pixels of any image one row at a time, splitting its rows into
+   * bands with the scheduler. Unlike packed pixels, the values may be above 255.
+   *
+   * @param image     The image.
+   * @param property  The property to count.
+   * @param scheduler The scheduler to run bands with.
+   * @return The counts.
+   * @throws IllegalArgumentException If the property is null.
+   */
+  static long[] count(ImageHandle image, PixelProperty property, BandScheduler scheduler)
+          throws IllegalArgumentException {
+    checkProperty(property);
+    long[] counts = new long[bins(image.getMaxValue())];
+    int width = image.getWidth();
+
+    scheduler.run(width, image.getHeight(), (fromRow, toRow) -> {
+      long[] partial = new long[counts.length];
+      int[] values = new int[width];
+
+      for (int i = fromRow; i < toRow; i++) {
+        image.getChannel(property, i, 0, width, 1, values, 0, width);
+        for (int j = 0; j < width; j++) {
+          partial[values[j]]++;
+        }
+      }
+      merge(counts, partial);
+    });
+    return counts;
+  }
+
+  /**
+   * Adds the counts of a property of a range of packed pixels to a histogram. The property is
+   * chosen once per range rather than once per pixel.
+   *
+   * @param pixels   The packed pixels.
+   * @param from     The index of the first pixel.
+   * @param to       One past the index of the last pixel.
+   * @param maxValue The max value of the image the pixels belong to.
+   * @param property The property to count.
+   * @param counts   The histogram to add to.
+   */
+  static void countPacked(int[] pixels, int from, int to, int maxValue, PixelProperty property,
+                          long[] counts) {
+    switch (property) {
+      case Red:
+        for (int i = from; i < to; i++) {
+          counts[PackedRaster.red(pixels[i])]++;
+        }
+        break;
+      case Green:
+        for (int i = from; i < to; i++) {
+          counts[PackedRaster.green(pixels[i])]++;
+        }
+        break;
+      case Blue:
+        for (int i = from; i < to; i++) {
+          counts[PackedRaster.blue(pixels[i])]++;
+        }
+        break;
+      case Alpha:
+        for (int i = from; i < to; i++) {
+          counts[PackedRaster.alpha(pixels[i])]++;
+        }
+        break;
+      case MaxValue:
+        counts[maxValue] += to - from;
+        break;
+      default:
+        for (int i = from; i < to; i++) {
+          counts[PackedRaster.property(pixels[i], maxValue, property)]++;
+        }
+        break;
+    }
+  }
+
+  /**
+   * Adds a partial histogram to a histogram that other bands may be adding to at the same time.
+   *
+   * @param counts  The histogram.
+   * @param partial The partial histogram.
+   */
+  static void merge(long[] counts, long[] partial) {
+    synchronized (counts) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += partial[i];
+      }
+    }
+  }
+
+  //Checks that a property can be counted.
+  private static void checkProperty(PixelProperty property) throws IllegalArgumentException {
+    if (property == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+  }
+}
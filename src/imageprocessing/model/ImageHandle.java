@@ -0,0 +1,85 @@
+package imageprocessing.model;
+
+import java.util.Map;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents one image of a model that was resolved from its name once (see
+ * ImageProcessingModelState.getImage), so reading it does not look the name up again. This is
+ * what code that reads many pixels or rows of an image, such as savers and views, should use.
+ * None of these methods can modify the image.
+ *
+ * <p>A handle reads the image as it was when it was resolved. It stays valid until an operation
+ * stores a new image under the same name (some models then write over the old pixels), after
+ * which a new handle must be resolved.</p>
+ */
+public interface ImageHandle {
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return The width
+   */
+  int getWidth();
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return The height
+   */
+  int getHeight();
+
+  /**
+   * Gets the max value of a color channel in the image.
+   *
+   * @return The max value
+   */
+  int getMaxValue();
+
+  /**
+   * Obtains the information of a certain pixel, in the same form as
+   * ImageProcessingModelState.getPixelInfo.
+   *
+   * @param row The row of the pixel
+   * @param col The col of the pixel
+   * @return A map representing the pixel info
+   * @throws IllegalArgumentException If the row or col is out of bounds
+   */
+  Map<PixelProperty, Integer> getPixelInfo(int row, int col) throws IllegalArgumentException;
+
+  /**
+   * Copies a rectangle of pixels into a caller supplied array as packed ARGB values, in the same
+   * layout as ImageProcessingModelState.getPixels.
+   *
+   * @param row      The first row of the rectangle
+   * @param col      The first col of the rectangle
+   * @param width    The width of the rectangle
+   * @param height   The height of the rectangle
+   * @param dest     The array to copy the pixels into
+   * @param offset   The index in dest of the first pixel
+   * @param scanline The distance in dest between the starts of two rows
+   * @throws IllegalArgumentException If the rectangle is not inside the image, or dest is too
+   *                                  small
+   */
+  void getPixels(int row, int col, int width, int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException;
+
+  /**
+   * Copies one property of a rectangle of pixels into a caller supplied array, in the same layout
+   * as ImageProcessingModelState.getChannel.
+   *
+   * @param property The property to copy
+   * @param row      The first row of the rectangle
+   * @param col      The first col of the rectangle
+   * @param width    The width of the rectangle
+   * @param height   The height of the rectangle
+   * @param dest     The array to copy the values into
+   * @param offset   The index in dest of the first value
+   * @param scanline The distance in dest between the starts of two rows
+   * @throws IllegalArgumentException If the rectangle is not inside the image, or dest is too
+   *                                  small
+   */
+  void getChannel(PixelProperty property, int row, int col, int width, int height, int[] dest,
+                  int offset, int scanline) throws IllegalArgumentException;
+}
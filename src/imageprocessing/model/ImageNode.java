@@ -0,0 +1,416 @@
+package imageprocessing.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents one image of the operation graph of the RasterImageProcessingModel. A node either
+ * already has its pixels (a loaded or materialized image), or knows the node it is derived from
+ * and the operation that derives it. A pending node is materialized the first time its pixels are
+ * needed, after which it keeps them and lets go of its parent. Deriving from a pending node fuses
+ * the two operations when possible, so a chain of point operations becomes a single pass.
+ *
+ * <p>A node counts its holders: the library names it is stored under and the pending nodes that
+ * are derived from it. When a node is materialized and its parent has no other holder (e.g. the
+ * library name of the parent was overwritten by the result), and nothing else shares the pixels
+ * of the parent, the operation runs in place on them instead of allocating a new image. A node
+ * without holders lets go of its pixels and its parent.</p>
+ *
+ * <p>Flipping or cropping a node that has its pixels gives a view node, whose pixels are a view
+ * of the pixels of the node it was derived from (see PackedRaster), so nothing is copied. Before
+ * a node lets go of pixels that views still use, e.g. because its library name was overwritten,
+ * every such view copies out the pixels it shows.</p>
+ *
+ * <p>A node that has its pixels can be spilled: its pixels are written to a SpillFile and dropped
+ * from memory. A spilled node still counts as materialized, and reads its pixels back the next
+ * time they are needed. Only nodes whose pixels are their own (not a view, not shared and without
+ * views) are spilled.</p>
+ *
+ * <p>When lineage is kept, a node that was computed from its parent (not in place) remembers the
+ * parent and the operation, and how long computing took. Such a node can be dropped instead of
+ * spilled, and is recomputed from its parent the next time its pixels are needed. The link does
+ * not hold the parent, so it is only kept as long as the parent is not released, and the pixels
+ * of a node that others can be recomputed from are never written over in place. A node with
+ * dropped children is not dropped itself, so recomputing a node never needs more than its parent
+ * to be read back.</p>
+ */
+final class ImageNode {
+  final int width;
+  final int height;
+  final int maxValue;
+
+  //The cached histograms and statistics of the pixels, which never change once computed.
+  final StatsCache stats;
+
+  //Null until materialized, and while spilled.
+  private PackedRaster raster;
+
+  //The spilled pixels, null unless spilled.
+  private SpillFile.Entry spilled;
+
+  //Null once materialized.
+  private ImageNode parent;
+  private Operation operation;
+
+  //The number of library names and pending nodes that use this node.
+  private int holders;
+
+  //For a view node, the node whose pixels it is a view of, null otherwise.
+  private ImageNode viewed;
+
+  //The view nodes of the pixels of this node.
+  private final List<ImageNode> views;
+
+  //The node and operation the pixels can be recomputed from, how to run it and how long it took,
+  // null unless lineage is kept.
+  private ImageNode lineageParent;
+  private Operation lineageOperation;
+  private BandScheduler lineageScheduler;
+  private long computeNanos;
+
+  //The nodes whose pixels can be recomputed from the pixels of this node, and how many of them
+  // are dropped.
+  private final List<ImageNode> lineageChildren;
+  private int droppedChildren;
+
+  //The spill file of the model while the pixels are dropped, which recomputes are reported to,
+  // null otherwise.
+  private SpillFile dropped;
+
+  /**
+   * Creates a node that already has its pixels, and becomes an owner of them.
+   *
+   * @param raster The pixels.
+   */
+  ImageNode(PackedRaster raster) {
+    this.width = raster.width;
+    this.height = raster.height;
+    this.maxValue = raster.maxValue;
+    this.stats = new StatsCache();
+    this.raster = raster;
+    this.spilled = null;
+    this.parent = null;
+    this.operation = null;
+    this.holders = 0;
+    this.viewed = null;
+    this.views = new ArrayList<ImageNode>();
+    this.lineageChildren = new ArrayList<ImageNode>();
+    raster.retain();
+  }
+
+  //Creates a pending node. Every operation keeps the max value of its source.
+  private ImageNode(ImageNode parent, Operation operation) {
+    this.width = operation.resultWidth(parent.width);
+    this.height = operation.resultHeight(parent.height);
+    this.maxValue = parent.maxValue;
+    this.stats = new StatsCache();
+    this.raster = null;
+    this.spilled = null;
+    this.parent = parent;
+    this.operation = operation;
+    this.holders = 0;
+    this.viewed = null;
+    this.views = new ArrayList<ImageNode>();
+    this.lineageChildren = new ArrayList<ImageNode>();
+    parent.hold();
+  }
+
+  //Creates a view node of the pixels of a node that is not a view itself.
+  private ImageNode(ImageNode viewed, PackedRaster view) {
+    this(view);
+    this.viewed = viewed;
+    viewed.addView(this);
+  }
+
+  /**
+   * Creates a pending node for the result of running an operation on this node. If this node is
+   * itself pending and its operation can be fused with the new one, the new node skips this node
+   * and runs the fused operation on this node's parent, so this node never has to be
+   * materialized.
+   *
+   * @param next The operation to run on this node.
+   * @return The new node.
+   */
+  synchronized ImageNode derive(Operation next) throws IllegalStateException {
+    if (!this.isMaterialized()) {
+      Operation fused = this.operation.fuse(next);
+      if (fused != null) {
+        return new ImageNode(this.parent, fused);
+      }
+    } else {
+      PackedRaster view = next.view(this.loaded());
+      if (view != null) {
+        return new ImageNode(this.viewed == null ? this : this.viewed, view);
+      }
+    }
+    return new ImageNode(this, next);
+  }
+
+  /**
+   * Records one more library name or pending node that uses this node.
+   */
+  synchronized void hold() {
+    this.holders++;
+  }
+
+  /**
+   * Records that a library name or pending node no longer uses this node. Once nothing does, the
+   * node gives up its pixels, or its parent if it is still pending.
+   */
+  void release() {
+    List<ImageNode> oldViews;
+    List<ImageNode> oldChildren;
+    synchronized (this) {
+      this.holders--;
+      if (this.holders > 0) {
+        return;
+      }
+      oldViews = new ArrayList<ImageNode>(this.views);
+      this.views.clear();
+      oldChildren = new ArrayList<ImageNode>(this.lineageChildren);
+    }
+
+    for (ImageNode view : oldViews) {
+      view.detach();
+    }
+    for (ImageNode child : oldChildren) {
+      child.cutLineage();
+    }
+
+    ImageNode oldParent;
+    ImageNode oldViewed;
+    ImageNode oldLineageParent;
+    synchronized (this) {
+      if (this.raster != null) {
+        this.raster.release();
+        this.raster = null;
+      }
+      if (this.spilled != null) {
+        this.spilled.free();
+        this.spilled = null;
+      }
+      oldParent = this.parent;
+      oldViewed = this.viewed;
+      oldLineageParent = this.lineageParent;
+      this.parent = null;
+      this.operation = null;
+      this.viewed = null;
+      this.clearLineage();
+      this.dropped = null;
+    }
+
+    if (oldParent != null) {
+      oldParent.release();
+    }
+    if (oldViewed != null) {
+      oldViewed.removeView(this);
+    }
+    if (oldLineageParent != null) {
+      oldLineageParent.removeLineageChild(this);
+    }
+  }
+
+  //Makes the pixels of this node independent of its lineage parent, which is being released, by
+  // recomputing them first if they were dropped.
+  private synchronized void cutLineage() {
+    if (this.dropped != null) {
+      this.loaded();
+    }
+    this.clearLineage();
+  }
+
+  //Forgets the lineage parent. The caller must hold the lock of this node.
+  private void clearLineage() {
+    this.lineageParent = null;
+    this.lineageOperation = null;
+    this.lineageScheduler = null;
+  }
+
+  private synchronized void removeLineageChild(ImageNode child) {
+    this.lineageChildren.remove(child);
+  }
+
+  //Replaces the pixels of a view node by a copy of them, so it no longer depends on the node it
+  // is a view of.
+  private synchronized void detach() {
+    if (this.viewed != null) {
+      PackedRaster copy = this.raster.compact();
+      copy.retain();
+      this.raster.release();
+      this.raster = copy;
+      this.viewed = null;
+    }
+  }
+
+  private synchronized void addView(ImageNode view) {
+    this.views.add(view);
+  }
+
+  private synchronized void removeView(ImageNode view) {
+    this.views.remove(view);
+  }
+
+  /**
+   * Checks whether this node has its pixels.
+   *
+   * @return Whether the node is materialized.
+   */
+  synchronized boolean isMaterialized() {
+    return this.raster != null || this.spilled != null || this.dropped != null;
+  }
+
+  /**
+   * Checks whether the pixels of this node are spilled or dropped, i.e. not in memory although
+   * the node is materialized.
+   *
+   * @return Whether the node is evicted.
+   */
+  synchronized boolean isEvicted() {
+    return this.spilled != null || this.dropped != null;
+  }
+
+  /**
+   * Gets the array that the pixels of this node are in, if they are in memory.
+   *
+   * @return The array, or null if the node is pending or spilled.
+   */
+  synchronized int[] residentPixels() {
+    return this.raster == null ? null : this.raster.pixels;
+  }
+
+  /**
+   * Frees the memory of the pixels of this node, unless they are not in memory or are not only
+   * this node's own. They are dropped if they can be recomputed and the policy prefers it, and
+   * are written to a spill file otherwise. The Cost policy drops them if recomputing them (plus
+   * reading back the parent, if it is spilled) took less time than writing and reading them is
+   * estimated to take.
+   *
+   * @param file   The file to spill to.
+   * @param policy The policy to choose with.
+   * @return Whether the node was evicted.
+   * @throws IllegalStateException If the file could not be written.
+   */
+  synchronized boolean evict(SpillFile file, EvictionPolicy policy) throws IllegalStateException {
+    if (this.raster == null || this.viewed != null || !this.views.isEmpty()
+            || this.raster.isView() || this.raster.isShared()) {
+      return false;
+    }
+
+    if (this.lineageParent != null && this.droppedChildren == 0
+            && policy != EvictionPolicy.Spill) {
+      synchronized (this.lineageParent) {
+        ImageNode source = this.lineageParent;
+        if (source.dropped == null && (policy == EvictionPolicy.Recompute
+                || this.computeNanos + (source.spilled == null ? 0
+                : file.estimateNanos(4L * source.width * source.height))
+                < file.estimateNanos(8L * this.raster.pixels.length))) {
+          source.droppedChildren++;
+          this.raster.release();
+          this.raster = null;
+          this.dropped = file;
+          file.recordDrop();
+          return true;
+        }
+      }
+    }
+
+    this.spilled = file.write(this.raster.pixels);
+    this.raster.release();
+    this.raster = null;
+    return true;
+  }
+
+  /**
+   * Gets the pixels of this node, first materializing every pending node it depends on. The
+   * chain is walked iteratively, so long chains of filters do not use up the stack.
+   *
+   * @param scheduler The scheduler to run operations with.
+   * @return The pixels.
+   */
+  PackedRaster materialize(BandScheduler scheduler) {
+    return this.materialize(scheduler, false);
+  }
+
+  /**
+   * Gets the pixels of this node like materialize, and makes every node that is materialized
+   * remember its lineage if the given flag is set.
+   *
+   * @param scheduler   The scheduler to run operations with.
+   * @param keepLineage Whether the materialized nodes remember their lineage.
+   * @return The pixels.
+   */
+  PackedRaster materialize(BandScheduler scheduler, boolean keepLineage) {
+    List<ImageNode> pending = new ArrayList<ImageNode>();
+    for (ImageNode node = this; node != null && !node.isMaterialized(); node = node.getParent()) {
+      pending.add(node);
+    }
+
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      pending.get(i).materializeFromParent(scheduler, keepLineage);
+    }
+    return this.getRaster();
+  }
+
+  //Runs the operation of this node on the pixels of its (materialized) parent, in place if this
+  // node is the only one that uses them and nothing can be recomputed from them.
+  private void materializeFromParent(BandScheduler scheduler, boolean keepLineage) {
+    ImageNode oldParent;
+    synchronized (this) {
+      if (this.isMaterialized()) {
+        return;
+      }
+      oldParent = this.parent;
+      synchronized (oldParent) {
+        PackedRaster source = oldParent.loaded();
+        boolean inPlace = oldParent.holders == 1 && !source.isView() && !source.isShared()
+                && oldParent.lineageChildren.isEmpty() && this.operation.canRunInPlace();
+        long start = System.nanoTime();
+        this.raster = this.operation.apply(source, scheduler, inPlace);
+        this.raster.retain();
+
+        if (keepLineage && !inPlace && this.raster.pixels != source.pixels) {
+          this.lineageParent = oldParent;
+          this.lineageOperation = this.operation;
+          this.lineageScheduler = scheduler;
+          this.computeNanos = System.nanoTime() - start;
+          oldParent.lineageChildren.add(this);
+        }
+      }
+      this.parent = null;
+      this.operation = null;
+    }
+    oldParent.release();
+  }
+
+  private synchronized ImageNode getParent() {
+    return this.parent;
+  }
+
+  private synchronized PackedRaster getRaster() throws IllegalStateException {
+    return this.loaded();
+  }
+
+  //Gets the pixels of this materialized node, reading them back first if they were spilled or
+  // recomputing them if they were dropped. The caller must hold the lock of this node.
+  private PackedRaster loaded() throws IllegalStateException {
+    if (this.raster == null && this.spilled != null) {
+      this.raster = new PackedRaster(this.width, this.height, this.maxValue,
+              this.spilled.read());
+      this.raster.retain();
+      this.spilled.free();
+      this.spilled = null;
+    } else if (this.raster == null && this.dropped != null) {
+      synchronized (this.lineageParent) {
+        PackedRaster source = this.lineageParent.loaded();
+        long start = System.nanoTime();
+        this.raster = this.lineageOperation.apply(source, this.lineageScheduler, false);
+        this.raster.retain();
+        this.computeNanos = System.nanoTime() - start;
+        this.lineageParent.droppedChildren--;
+      }
+      this.dropped.recordRecompute();
+      this.dropped = null;
+    }
+    return this.raster;
+  }
+}
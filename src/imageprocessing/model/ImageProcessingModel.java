@@ -18,6 +18,61 @@ public interface ImageProcessingModel extends ImageProcessingModelState {
   void addImageToLibrary(String imageName, Pixel[][] imgGrid)
           throws IllegalArgumentException;
 
+  /**
+   * Adds an image to the library from an array of packed ARGB pixels, in the same form as
+   * ImageProcessingModelState.getPixels: row major, (alpha << 24) | (red << 16) | (green << 8) |
+   * blue. This lets loaders decode straight into one int array instead of a grid of Pixels. The
+   * array is copied, so it cannot be directly accessed afterwards.
+   *
+   * @param imageName The name of the image to add.
+   * @param width     The width of the image.
+   * @param height    The height of the image.
+   * @param maxValue  The max value of a color channel, at most 255.
+   * @param pixels    The packed pixels, at least width * height of them.
+   * @throws IllegalArgumentException If the imageName is empty or null, the pixels are null, the
+   *                                  width or height is not positive, or the max value is not
+   *                                  between 0 and 255.
+   */
+  void addImageToLibrary(String imageName, int width, int height, int maxValue, int[] pixels)
+          throws IllegalArgumentException;
+
+  /**
+   * Adds an image to the library from an array of packed ARGB pixels, like addImageToLibrary,
+   * but hands the array over to the model instead of having it copied. This lets a loader give
+   * the model the array it just decoded into. The caller must not use the array afterwards.
+   *
+   * @param imageName The name of the image to add.
+   * @param width     The width of the image.
+   * @param height    The height of the image.
+   * @param maxValue  The max value of a color channel, at most 255.
+   * @param pixels    The packed pixels, at least width * height of them.
+   * @throws IllegalArgumentException If the imageName is empty or null, the pixels are null, the
+   *                                  width or height is not positive, or the max value is not
+   *                                  between 0 and 255.
+   */
+  void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                              int[] pixels) throws IllegalArgumentException;
+
+  /**
+   * Adds an image to the library whose packed ARGB pixels are read from a source, a band of rows
+   * at a time from the top. A model that does not keep an image in one array (see
+   * TiledImageProcessingModel) never needs the whole image in memory, so loaders can stream
+   * images larger than the heap into it. Work that can be cancelled (see CancellationToken) stops
+   * between bands once it is, and stores nothing.
+   *
+   * @param imageName The name of the image to add.
+   * @param width     The width of the image.
+   * @param height    The height of the image.
+   * @param maxValue  The max value of a color channel, at most 255.
+   * @param source    The source of the pixels.
+   * @throws IllegalArgumentException If the imageName is empty or null, the source is null, the
+   *                                  width or height is not positive, the max value is not
+   *                                  between 0 and 255, the image is too large for the model,
+   *                                  or the source throws it.
+   */
+  void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                            PixelSource source) throws IllegalArgumentException;
+
   /**
    * Represents a command to flip an image either horizontally or vertically.
    *
@@ -28,6 +83,21 @@ public interface ImageProcessingModel extends ImageProcessingModelState {
    */
   void flip(FlipDirection flip, String imageName, String newName) throws IllegalArgumentException;
 
+  /**
+   * Represents a command to crop an image to a rectangle.
+   *
+   * @param row       The top row of the rectangle.
+   * @param col       The left col of the rectangle.
+   * @param width     The width of the rectangle.
+   * @param height    The height of the rectangle.
+   * @param imageName The name of the image to crop.
+   * @param newName   What the new image should be known as.
+   * @throws IllegalArgumentException If an invalid image name is entered, or the rectangle is
+   *                                  empty or does not lie inside the image.
+   */
+  void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException;
+
   /**
    * Represents a command to brighten an image by some amount.
    *
@@ -14,6 +14,17 @@ public interface ImageProcessingModelState {
    */
   enum PixelProperty { Red, Green, Blue, MaxValue, Alpha, Value, Intensity, Luma }
 
+  /**
+   * Resolves the name of an image once into a handle to it, which reads the image without
+   * looking the name up again (see ImageHandle). Every other method of this interface except
+   * getHistogram is the same as resolving a handle and calling the same method on it.
+   *
+   * @param imageName The name of the image
+   * @return The handle
+   * @throws IllegalArgumentException If the image was not found
+   */
+  ImageHandle getImage(String imageName) throws IllegalArgumentException;
+
   /**
    * Gets the width of the given image.
    *
@@ -43,4 +54,78 @@ public interface ImageProcessingModelState {
    */
   Map<PixelProperty, Integer> getPixelInfo(String imageName, int row, int col)
           throws IllegalArgumentException;
+
+  /**
+   * Gets the max value of a color channel in the given image.
+   *
+   * @param imageName The name of the image
+   * @return The max value
+   * @throws IllegalArgumentException If the image was not found
+   */
+  int getMaxValue(String imageName) throws IllegalArgumentException;
+
+  /**
+   * Copies a rectangle of pixels of the given image into a caller supplied array, one int per
+   * pixel in packed ARGB form: (alpha << 24) | (red << 16) | (green << 8) | blue. The pixel at
+   * (row + i, col + j) is written to dest[offset + i * scanline + j]. Copying a single row is
+   * done with a height of 1. Nothing is allocated per pixel, so this should be used instead of
+   * getPixelInfo whenever many pixels are read.
+   *
+   * @param imageName The name of the image to use
+   * @param row       The first row of the rectangle
+   * @param col       The first col of the rectangle
+   * @param width     The width of the rectangle
+   * @param height    The height of the rectangle
+   * @param dest      The array to copy the pixels into
+   * @param offset    The index in dest of the first pixel
+   * @param scanline  The distance in dest between the starts of two rows
+   * @throws IllegalArgumentException If the image name is invalid, the rectangle is not inside
+   *                                  the image, or dest is too small
+   */
+  void getPixels(String imageName, int row, int col, int width, int height,
+                 int[] dest, int offset, int scanline) throws IllegalArgumentException;
+
+  /**
+   * Copies one property (red, luma, etc.) of a rectangle of pixels of the given image into a
+   * caller supplied array. The layout of dest is the same as in getPixels.
+   *
+   * @param imageName The name of the image to use
+   * @param property  The property to copy
+   * @param row       The first row of the rectangle
+   * @param col       The first col of the rectangle
+   * @param width     The width of the rectangle
+   * @param height    The height of the rectangle
+   * @param dest      The array to copy the values into
+   * @param offset    The index in dest of the first value
+   * @param scanline  The distance in dest between the starts of two rows
+   * @throws IllegalArgumentException If the image name is invalid, the rectangle is not inside
+   *                                  the image, or dest is too small
+   */
+  void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                  int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException;
+
+  /**
+   * Counts how often every value of one property (red, luma, etc.) occurs in the given image.
+   * The counts are indexed by value and there are max(256, max value + 1) of them, so every
+   * property fits. Models that run operations in parallel count in parallel too.
+   *
+   * @param imageName The name of the image to use
+   * @param property  The property to count
+   * @return The counts
+   * @throws IllegalArgumentException If the image name or the property is invalid
+   */
+  long[] getHistogram(String imageName, PixelProperty property) throws IllegalArgumentException;
+
+  /**
+   * Gets the statistics of the given image: its size and max value, the smallest, largest and
+   * mean value of each color channel, and a hash of its contents. The statistics and histograms
+   * of an image are computed at most once and cached until an operation or addImageToLibrary
+   * stores another image under its name, so asking again for an unchanged image is free.
+   *
+   * @param imageName The name of the image to use
+   * @return The statistics
+   * @throws IllegalArgumentException If the image name is invalid
+   */
+  ImageStats getStats(String imageName) throws IllegalArgumentException;
 }
@@ -0,0 +1,141 @@
+package imageprocessing.model;
+
+import java.util.Locale;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents the statistics of an image (see ImageProcessingModelState.getStats): its size and
+ * max value, the smallest, largest and mean value of its red, green and blue channels, and a hash
+ * of its contents. Equal images have equal hashes in every model, so the hash can tell whether
+ * two images (or one image before and after an operation) differ without comparing pixels.
+ */
+public final class ImageStats {
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final int[] min;
+  private final int[] max;
+  private final double[] mean;
+  private final long contentHash;
+
+  /**
+   * Creates the statistics of an image.
+   *
+   * @param width       The width of the image.
+   * @param height      The height of the image.
+   * @param maxValue    The max value of the image.
+   * @param min         The smallest red, green and blue values, in that order.
+   * @param max         The largest red, green and blue values, in that order.
+   * @param mean        The mean red, green and blue values, in that order.
+   * @param contentHash The hash of the contents of the image.
+   * @throws IllegalArgumentException If min, max or mean do not have three values.
+   */
+  public ImageStats(int width, int height, int maxValue, int[] min, int[] max, double[] mean,
+                    long contentHash) throws IllegalArgumentException {
+    if (min == null || max == null || mean == null || min.length != 3 || max.length != 3
+            || mean.length != 3) {
+      throw new IllegalArgumentException("There must be a value for red, green and blue");
+    }
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.min = min.clone();
+    this.max = max.clone();
+    this.mean = mean.clone();
+    this.contentHash = contentHash;
+  }
+
+  /**
+   * Gets the width of the image.
+   *
+   * @return The width.
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the height of the image.
+   *
+   * @return The height.
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the max value of the image.
+   *
+   * @return The max value.
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Gets the smallest value of a channel.
+   *
+   * @param channel Red, Green or Blue.
+   * @return The smallest value.
+   * @throws IllegalArgumentException If the channel is not red, green or blue.
+   */
+  public int getMin(PixelProperty channel) throws IllegalArgumentException {
+    return this.min[index(channel)];
+  }
+
+  /**
+   * Gets the largest value of a channel.
+   *
+   * @param channel Red, Green or Blue.
+   * @return The largest value.
+   * @throws IllegalArgumentException If the channel is not red, green or blue.
+   */
+  public int getMax(PixelProperty channel) throws IllegalArgumentException {
+    return this.max[index(channel)];
+  }
+
+  /**
+   * Gets the mean value of a channel.
+   *
+   * @param channel Red, Green or Blue.
+   * @return The mean value.
+   * @throws IllegalArgumentException If the channel is not red, green or blue.
+   */
+  public double getMean(PixelProperty channel) throws IllegalArgumentException {
+    return this.mean[index(channel)];
+  }
+
+  /**
+   * Gets the hash of the contents of the image.
+   *
+   * @return The hash.
+   */
+  public long getContentHash() {
+    return this.contentHash;
+  }
+
+  //Gets the index of a channel in the arrays of values.
+  private static int index(PixelProperty channel) throws IllegalArgumentException {
+    if (channel == PixelProperty.Red) {
+      return 0;
+    } else if (channel == PixelProperty.Green) {
+      return 1;
+    } else if (channel == PixelProperty.Blue) {
+      return 2;
+    }
+    throw new IllegalArgumentException("Only red, green and blue have statistics");
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(String.format(Locale.ROOT,
+            "width: %d, height: %d, max value: %d", this.width, this.height, this.maxValue));
+    String[] names = new String[]{"red", "green", "blue"};
+    for (int c = 0; c < 3; c++) {
+      result.append(String.format(Locale.ROOT, ", %s: min %d, max %d, mean %.2f", names[c],
+              this.min[c], this.max[c], this.mean[c]));
+    }
+    return result.append(String.format(", hash: %016x", this.contentHash)).toString();
+  }
+}
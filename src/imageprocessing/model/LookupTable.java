@@ -0,0 +1,183 @@
+package imageprocessing.model;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents a point operation that maps every channel value (red, green and blue) through its
+ * own 256 entry table, e.g. brightening. Alpha is kept. Tables can be chained with andThen, so
+ * several point operations can be applied in one pass over an image. Grayscale, which combines
+ * the channels of a pixel, is applied through the tables of PackedRaster by applyGrayscale.
+ * A table made by brighten also knows the affine operation it is equivalent to, so it can be
+ * composed with color transformations (see AffineColorOp).
+ */
+final class LookupTable implements PointOp {
+  //The new value of every channel value, already shifted into its place in a packed pixel.
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+
+  //The equivalent affine operation, or null if there is none.
+  private final AffineColorOp affine;
+
+  //Creates a table from three unshifted channel tables.
+  private LookupTable(int[] red, int[] green, int[] blue, AffineColorOp affine) {
+    this.affine = affine;
+    this.red = new int[256];
+    this.green = new int[256];
+    this.blue = new int[256];
+    for (int i = 0; i < 256; i++) {
+      this.red[i] = red[i] << 16;
+      this.green[i] = green[i] << 8;
+      this.blue[i] = blue[i];
+    }
+  }
+
+  /**
+   * Creates a table that maps every channel value to itself.
+   *
+   * @return The table.
+   */
+  static LookupTable identity() {
+    int[] values = new int[256];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    return new LookupTable(values, values, values, AffineColorOp.offset(0, 255));
+  }
+
+  /**
+   * Creates a table that adds an amount to every channel value, keeping the result between 0
+   * and the max value.
+   *
+   * @param amount   The amount to add, may be negative.
+   * @param maxValue The max value of the image.
+   * @return The table.
+   */
+  static LookupTable brighten(int amount, int maxValue) {
+    int[] values = new int[256];
+    for (int i = 0; i < values.length; i++) {
+      int value = i + amount;
+      values[i] = value < 0 ? 0 : Math.min(value, maxValue);
+    }
+    return new LookupTable(values, values, values, AffineColorOp.offset(amount, maxValue));
+  }
+
+  /**
+   * Creates a table that applies this table and then the given one.
+   *
+   * @param next The table to apply second.
+   * @return The combined table.
+   */
+  LookupTable andThen(LookupTable next) {
+    int[] red = new int[256];
+    int[] green = new int[256];
+    int[] blue = new int[256];
+    for (int i = 0; i < 256; i++) {
+      red[i] = next.red[this.red[i] >> 16] >> 16;
+      green[i] = next.green[this.green[i] >> 8] >> 8;
+      blue[i] = next.blue[this.blue[i]];
+    }
+    return new LookupTable(red, green, blue, null);
+  }
+
+  /**
+   * Gets the affine operation that gives the same results as this table.
+   *
+   * @return The affine operation, or null if this table was not made by identity or brighten.
+   */
+  AffineColorOp toAffine() {
+    return this.affine;
+  }
+
+  /**
+   * Narrows the given channel bounds to the bounds of the values this table maps them to.
+   *
+   * @param low  The smallest possible red, green and blue values, replaced by the new ones.
+   * @param high The largest possible red, green and blue values, replaced by the new ones.
+   */
+  void applyToBounds(int[] low, int[] high) {
+    int[][] tables = new int[][]{this.red, this.green, this.blue};
+    int[] shifts = new int[]{16, 8, 0};
+    for (int c = 0; c < 3; c++) {
+      int min = 255;
+      int max = 0;
+      for (int v = low[c]; v <= high[c]; v++) {
+        int value = tables[c][v] >> shifts[c];
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+      low[c] = min;
+      high[c] = max;
+    }
+  }
+
+  @Override
+  public void apply(int[] in, int[] out, int from, int to) {
+    int[] r = this.red;
+    int[] g = this.green;
+    int[] b = this.blue;
+    for (int i = from; i < to; i++) {
+      int argb = in[i];
+      out[i] = (argb & 0xFF000000) | r[(argb >> 16) & 0xFF] | g[(argb >> 8) & 0xFF]
+              | b[argb & 0xFF];
+    }
+  }
+
+  /**
+   * Replaces the color of the packed pixels of in from index from (inclusive) to index to
+   * (exclusive) by a gray of the given property, and writes them into out. Alpha is kept.
+   *
+   * @param component The property to use for the gray value.
+   * @param maxValue  The max value of the image.
+   * @param in        The source pixels.
+   * @param out       The destination pixels, may be the same array as in.
+   * @param from      The first index.
+   * @param to        The index after the last one.
+   */
+  static void applyGrayscale(PixelProperty component, int maxValue, int[] in, int[] out,
+                             int from, int to) {
+    //The property is chosen once, outside the loop, for the common cases.
+    switch (component) {
+      case Red:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.red(in[i]));
+        }
+        break;
+      case Green:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.green(in[i]));
+        }
+        break;
+      case Blue:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.blue(in[i]));
+        }
+        break;
+      case Value:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.value(in[i]));
+        }
+        break;
+      case Intensity:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.intensity(in[i]));
+        }
+        break;
+      case Luma:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.luma(in[i]));
+        }
+        break;
+      default:
+        for (int i = from; i < to; i++) {
+          out[i] = gray(in[i], PackedRaster.property(in[i], maxValue, component));
+        }
+        break;
+    }
+  }
+
+  //Packs a gray pixel with the alpha of argb.
+  private static int gray(int argb, int value) {
+    return (argb & 0xFF000000) | (value << 16) | (value << 8) | value;
+  }
+}
@@ -0,0 +1,110 @@
+package imageprocessing.model;
+
+/**
+ * Represents a snapshot of how the images of a model with a memory budget (see
+ * RasterImageProcessingModel.setMemoryBudget) were kept: how often an image was used while its
+ * pixels were in memory, how often images were spilled to disk and reloaded, and how often they
+ * were dropped and recomputed from the image they were computed from instead.
+ */
+public final class MemoryStats {
+  private final long hits;
+  private final long spills;
+  private final long reloads;
+  private final long drops;
+  private final long recomputes;
+  private final long residentBytes;
+  private final long spilledBytes;
+
+  /**
+   * Creates a snapshot of the given statistics.
+   *
+   * @param hits          The number of times an image was used while its pixels were in memory.
+   * @param spills        The number of times the pixels of an image were written to disk.
+   * @param reloads       The number of times the pixels of an image were read back from disk.
+   * @param drops         The number of times the pixels of an image were dropped.
+   * @param recomputes    The number of times dropped pixels were recomputed.
+   * @param residentBytes The bytes of pixels of the images in the library that are in memory.
+   * @param spilledBytes  The bytes of pixels that are on disk.
+   */
+  public MemoryStats(long hits, long spills, long reloads, long drops, long recomputes,
+                     long residentBytes, long spilledBytes) {
+    this.hits = hits;
+    this.spills = spills;
+    this.reloads = reloads;
+    this.drops = drops;
+    this.recomputes = recomputes;
+    this.residentBytes = residentBytes;
+    this.spilledBytes = spilledBytes;
+  }
+
+  /**
+   * Gets the number of times an image was used while its pixels were in memory.
+   *
+   * @return The number of hits.
+   */
+  public long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of times the pixels of an image were written to disk.
+   *
+   * @return The number of spills.
+   */
+  public long getSpills() {
+    return this.spills;
+  }
+
+  /**
+   * Gets the number of times the pixels of an image were read back from disk.
+   *
+   * @return The number of reloads.
+   */
+  public long getReloads() {
+    return this.reloads;
+  }
+
+  /**
+   * Gets the number of times the pixels of an image were dropped, to be recomputed from the image
+   * they were computed from when they are used again.
+   *
+   * @return The number of drops.
+   */
+  public long getDrops() {
+    return this.drops;
+  }
+
+  /**
+   * Gets the number of times dropped pixels were recomputed.
+   *
+   * @return The number of recomputes.
+   */
+  public long getRecomputes() {
+    return this.recomputes;
+  }
+
+  /**
+   * Gets the bytes of pixels of the images in the library that are in memory.
+   *
+   * @return The number of bytes.
+   */
+  public long getResidentBytes() {
+    return this.residentBytes;
+  }
+
+  /**
+   * Gets the bytes of pixels that are on disk.
+   *
+   * @return The number of bytes.
+   */
+  public long getSpilledBytes() {
+    return this.spilledBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("hits: %d, spills: %d, reloads: %d, drops: %d, recomputes: %d, "
+            + "resident: %d bytes, spilled: %d bytes", this.hits, this.spills, this.reloads,
+            this.drops, this.recomputes, this.residentBytes, this.spilledBytes);
+  }
+}
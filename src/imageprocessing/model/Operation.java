@@ -0,0 +1,63 @@
+package imageprocessing.model;
+
+/**
+ * Represents a step of the operation graph of the RasterImageProcessingModel, which derives a new
+ * image from a source image. Operations are immutable, so one can be shared by several images and
+ * run again.
+ */
+interface Operation {
+
+  /**
+   * Runs the operation. When asked to run in place, the result is written over the source, which
+   * the caller must own alone. An operation that leaves every pixel where it is may also return
+   * the source itself, which the caller must then share instead of changing. The result is never
+   * a view.
+   *
+   * @param source    The source image.
+   * @param scheduler The scheduler to split the work with.
+   * @param inPlace   Whether to write the result over the source, only if canRunInPlace.
+   * @return The new image.
+   */
+  PackedRaster apply(PackedRaster source, BandScheduler scheduler, boolean inPlace);
+
+  /**
+   * Checks whether the operation can write its result over its source, which saves allocating a
+   * new image when nothing else uses the source.
+   *
+   * @return Whether the operation can run in place.
+   */
+  boolean canRunInPlace();
+
+  /**
+   * Gets the result of the operation as a view of the source (see PackedRaster), if the
+   * operation only moves pixels around. A view copies nothing.
+   *
+   * @param source The source image.
+   * @return The view, or null if the operation cannot be a view.
+   */
+  PackedRaster view(PackedRaster source);
+
+  /**
+   * Gets the width of the result of the operation.
+   *
+   * @param sourceWidth The width of the source image.
+   * @return The width of the result.
+   */
+  int resultWidth(int sourceWidth);
+
+  /**
+   * Gets the height of the result of the operation.
+   *
+   * @param sourceHeight The height of the source image.
+   * @return The height of the result.
+   */
+  int resultHeight(int sourceHeight);
+
+  /**
+   * Combines this operation with one that runs on its result, so both are done in a single pass.
+   *
+   * @param next The operation that runs after this one.
+   * @return The combined operation, or null if the two cannot be combined.
+   */
+  Operation fuse(Operation next);
+}
@@ -0,0 +1,541 @@
+package imageprocessing.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents the pixels of one image as a single contiguous array of packed ARGB values. Every
+ * channel is stored in 8 bits (alpha in the highest byte, then red, green and blue), so a pixel
+ * costs 4 bytes instead of a whole Pixel object. The max value is shared by the whole image.
+ * Derived properties (value, intensity, luma) are computed on demand and always equal what the
+ * formulas of the Pixel class give. Intensity and luma are looked up in small integer tables
+ * instead of being computed in floating point.
+ *
+ * <p>The pixels of a raster that belongs to an image are never changed while anything else can
+ * see them. Image nodes that share a raster count themselves as its owners, and an operation may
+ * only write over a raster that has a single owner (see ImageNode).</p>
+ *
+ * <p>A raster can also be a view of part of another raster's array (e.g. a flipped or cropped
+ * image): the pixel at (row, col) is then at offset + row * rowStride + col * colStride, where a
+ * negative stride walks backwards. Creating a view copies nothing, and a view owns the raster it
+ * was created from. Code that needs a plain row major array can call compact.</p>
+ */
+final class PackedRaster {
+  //10000 times the luma weight of each channel value, so the weighted sum of a pixel is exact.
+  private static final int[] LUMA_RED = new int[256];
+  private static final int[] LUMA_GREEN = new int[256];
+  private static final int[] LUMA_BLUE = new int[256];
+
+  //The intensity for every possible sum of the three channels.
+  private static final int[] INTENSITY = new int[3 * 255 + 1];
+
+  //About how many pixels an image is streamed in at a time when the work can be cancelled.
+  private static final int STREAM_BAND_PIXELS = 1 << 16;
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      LUMA_RED[i] = 2126 * i;
+      LUMA_GREEN[i] = 7152 * i;
+      LUMA_BLUE[i] = 722 * i;
+    }
+    for (int i = 0; i < INTENSITY.length; i++) {
+      INTENSITY[i] = (int) Math.round(i / 3.0);
+    }
+  }
+
+  final int width;
+  final int height;
+  final int maxValue;
+
+  //Index = offset + row * rowStride + col * colStride, which is row * width + col unless this
+  // raster is a view.
+  final int[] pixels;
+  final int offset;
+  final int rowStride;
+  final int colStride;
+
+  //The raster whose array this is a view of, this raster itself if it is not a view.
+  private final PackedRaster base;
+
+  //The number of image nodes that share this raster, counted on the base.
+  private int owners;
+
+  /**
+   * Creates a raster with the given dimensions around an existing pixel array. The array is not
+   * copied.
+   *
+   * @param width    The width of the image.
+   * @param height   The height of the image.
+   * @param maxValue The max value of a color channel.
+   * @param pixels   The packed ARGB pixels, row major.
+   */
+  PackedRaster(int width, int height, int maxValue, int[] pixels) {
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.pixels = pixels;
+    this.offset = 0;
+    this.rowStride = width;
+    this.colStride = 1;
+    this.base = this;
+  }
+
+  //Creates a view of the array of a base raster.
+  private PackedRaster(PackedRaster base, int width, int height, int offset, int rowStride,
+                       int colStride) {
+    this.width = width;
+    this.height = height;
+    this.maxValue = base.maxValue;
+    this.pixels = base.pixels;
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.colStride = colStride;
+    this.base = base;
+  }
+
+  /**
+   * Creates an empty (all zero) raster with the given dimensions.
+   *
+   * @param width    The width of the image.
+   * @param height   The height of the image.
+   * @param maxValue The max value of a color channel.
+   */
+  PackedRaster(int width, int height, int maxValue) {
+    this(width, height, maxValue, new int[width * height]);
+  }
+
+  /**
+   * Creates an empty raster with the same dimensions and max value as this one.
+   *
+   * @return The new raster.
+   */
+  PackedRaster blankCopy() {
+    return new PackedRaster(this.width, this.height, this.maxValue);
+  }
+
+  /**
+   * Gets the index of a pixel in the array.
+   *
+   * @param row The row of the pixel.
+   * @param col The col of the pixel.
+   * @return The index.
+   */
+  int index(int row, int col) {
+    return this.offset + row * this.rowStride + col * this.colStride;
+  }
+
+  /**
+   * Checks whether this raster is a view of another raster's array.
+   *
+   * @return Whether the raster is a view.
+   */
+  boolean isView() {
+    return this.base != this;
+  }
+
+  /**
+   * Creates a view of this raster that is mirrored in the given directions. Nothing is copied.
+   *
+   * @param horizontal Whether to mirror left to right.
+   * @param vertical   Whether to mirror top to bottom.
+   * @return The view, or this raster if it is not mirrored at all.
+   */
+  PackedRaster flipped(boolean horizontal, boolean vertical) {
+    if (!horizontal && !vertical) {
+      return this;
+    }
+    int start = this.index(vertical ? this.height - 1 : 0, horizontal ? this.width - 1 : 0);
+    return new PackedRaster(this.base, this.width, this.height, start,
+            vertical ? -this.rowStride : this.rowStride,
+            horizontal ? -this.colStride : this.colStride);
+  }
+
+  /**
+   * Creates a view of a rectangle of this raster. Nothing is copied. Assumes the rectangle lies
+   * inside the raster.
+   *
+   * @param row    The top row of the rectangle.
+   * @param col    The left col of the rectangle.
+   * @param width  The width of the rectangle.
+   * @param height The height of the rectangle.
+   * @return The view.
+   */
+  PackedRaster cropped(int row, int col, int width, int height) {
+    return new PackedRaster(this.base, width, height, this.index(row, col), this.rowStride,
+            this.colStride);
+  }
+
+  /**
+   * Gets a raster with the same pixels as this one in a plain row major array of its own.
+   *
+   * @return A copy if this raster is a view, this raster otherwise.
+   */
+  PackedRaster compact() {
+    if (!this.isView()) {
+      return this;
+    }
+    PackedRaster copy = this.blankCopy();
+    this.getPixels(0, 0, this.width, this.height, copy.pixels, 0, this.width);
+    return copy;
+  }
+
+  /**
+   * Converts a grid of pixels into a raster. Every pixel must have the same max value, and every
+   * value must fit in 8 bits.
+   *
+   * @param imgGrid The grid of pixels, row major.
+   * @return The raster.
+   * @throws IllegalArgumentException If the grid is empty, not rectangular, contains null pixels
+   *                                  or has values that do not fit.
+   */
+  static PackedRaster fromGrid(Pixel[][] imgGrid) throws IllegalArgumentException {
+    if (imgGrid.length == 0 || imgGrid[0] == null || imgGrid[0].length == 0) {
+      throw new IllegalArgumentException("The pixel grid cannot be empty");
+    }
+
+    int height = imgGrid.length;
+    int width = imgGrid[0].length;
+    int maxValue = -1;
+    int[] pixels = new int[width * height];
+
+    for (int i = 0; i < height; i++) {
+      if (imgGrid[i] == null || imgGrid[i].length != width) {
+        throw new IllegalArgumentException("Every row of the pixel grid must have the same width");
+      }
+
+      for (int j = 0; j < width; j++) {
+        if (imgGrid[i][j] == null) {
+          throw new IllegalArgumentException("The pixel grid cannot contain null pixels");
+        }
+
+        Map<PixelProperty, Integer> values = imgGrid[i][j].getPixelInfo();
+        int max = values.get(PixelProperty.MaxValue);
+        if (maxValue == -1) {
+          maxValue = checkChannel(max);
+        } else if (max != maxValue) {
+          throw new IllegalArgumentException("Every pixel must have the same max value");
+        }
+
+        pixels[i * width + j] = pack(checkChannel(values.get(PixelProperty.Alpha)),
+                checkChannel(values.get(PixelProperty.Red)),
+                checkChannel(values.get(PixelProperty.Green)),
+                checkChannel(values.get(PixelProperty.Blue)));
+      }
+    }
+
+    return new PackedRaster(width, height, maxValue, pixels);
+  }
+
+  //Checks that a value fits in the 8 bits a channel is stored in.
+  private static int checkChannel(int value) throws IllegalArgumentException {
+    if (value < 0 || value > 255) {
+      throw new IllegalArgumentException("Channel values must be between 0 and 255");
+    }
+    return value;
+  }
+
+  /**
+   * Records one more image node that shares this raster (or the raster it is a view of).
+   */
+  void retain() {
+    synchronized (this.base) {
+      this.base.owners++;
+    }
+  }
+
+  /**
+   * Records that an image node no longer shares this raster.
+   */
+  void release() {
+    synchronized (this.base) {
+      this.base.owners--;
+    }
+  }
+
+  /**
+   * Checks whether more than one image node shares this raster (including views of it), in which
+   * case its pixels must not be changed.
+   *
+   * @return Whether the raster is shared.
+   */
+  boolean isShared() {
+    synchronized (this.base) {
+      return this.base.owners > 1;
+    }
+  }
+
+  /**
+   * Packs four channel values into a single int. Each value must be within 0 and 255.
+   *
+   * @param alpha The alpha value.
+   * @param red   The red value.
+   * @param green The green value.
+   * @param blue  The blue value.
+   * @return The packed pixel.
+   */
+  static int pack(int alpha, int red, int green, int blue) {
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+
+  //Unpacks the individual channels and computes the derived properties of a packed pixel.
+  static int alpha(int argb) {
+    return argb >>> 24;
+  }
+
+  static int red(int argb) {
+    return (argb >> 16) & 0xFF;
+  }
+
+  static int green(int argb) {
+    return (argb >> 8) & 0xFF;
+  }
+
+  static int blue(int argb) {
+    return argb & 0xFF;
+  }
+
+  static int value(int argb) {
+    return Math.max(red(argb), Math.max(green(argb), blue(argb)));
+  }
+
+  static int intensity(int argb) {
+    return INTENSITY[red(argb) + green(argb) + blue(argb)];
+  }
+
+  //The fixed point sum is rounded half up. The Pixel class rounds a double that is not always
+  // exactly on .5 for a tie, so ties (about 3400 of the 16.7 million colors) use its formula.
+  static int luma(int argb) {
+    int sum = LUMA_RED[red(argb)] + LUMA_GREEN[green(argb)] + LUMA_BLUE[blue(argb)] + 5000;
+    int luma = sum / 10000;
+    if (luma * 10000 == sum) {
+      return (int) Math.round(0.2126 * red(argb) + 0.7152 * green(argb) + 0.0722 * blue(argb));
+    }
+    return luma;
+  }
+
+  /**
+   * Gets a single property of a packed pixel.
+   *
+   * @param argb     The packed pixel.
+   * @param maxValue The max value of the image the pixel belongs to.
+   * @param property The property to get.
+   * @return The value of the property.
+   */
+  static int property(int argb, int maxValue, PixelProperty property) {
+    switch (property) {
+      case Red:
+        return red(argb);
+      case Green:
+        return green(argb);
+      case Blue:
+        return blue(argb);
+      case MaxValue:
+        return maxValue;
+      case Alpha:
+        return alpha(argb);
+      case Value:
+        return value(argb);
+      case Intensity:
+        return intensity(argb);
+      case Luma:
+        return luma(argb);
+      default:
+        throw new IllegalArgumentException("Unrecognized pixel property");
+    }
+  }
+
+  /**
+   * Checks the arguments of ImageProcessingModel.addImageToLibrary for packed pixels.
+   *
+   * @throws IllegalArgumentException If any argument is invalid.
+   */
+  static void checkImage(String imageName, int width, int height, int maxValue, int[] pixels)
+          throws IllegalArgumentException {
+    if (imageName == null || imageName.equals("") || pixels == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    if (width <= 0 || height <= 0 || (long) width * height > pixels.length) {
+      throw new IllegalArgumentException("Invalid image dimensions");
+    }
+
+    if (maxValue < 0 || maxValue > 255) {
+      throw new IllegalArgumentException("The max value must be between 0 and 255");
+    }
+  }
+
+  /**
+   * Checks the name, size and max value of an image that is streamed from a source. The image
+   * must also fit in one array.
+   *
+   * @throws IllegalArgumentException If any of them is invalid.
+   */
+  static void checkImage(String imageName, int width, int height, int maxValue,
+                         PixelSource source) throws IllegalArgumentException {
+    if (imageName == null || imageName.equals("") || source == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid image dimensions");
+    }
+    if ((long) width * height > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("The image is too large for one array");
+    }
+    if (maxValue < 0 || maxValue > 255) {
+      throw new IllegalArgumentException("The max value must be between 0 and 255");
+    }
+  }
+
+  /**
+   * Reads every row of an image from a source into one row major array. If the work running on
+   * the calling thread can be cancelled (see CancellationToken), the rows are read in bands and
+   * the token is checked before each one, so a cancelled load stops before the image is stored.
+   *
+   * @param width  The width of the image.
+   * @param height The height of the image.
+   * @param source The source of the rows.
+   * @return The packed pixels.
+   * @throws IllegalArgumentException If the source cannot read a row.
+   * @throws CancellationException    If the token of the calling thread is cancelled.
+   */
+  static int[] readAll(int width, int height, PixelSource source)
+          throws IllegalArgumentException, CancellationException {
+    int[] pixels = new int[width * height];
+    CancellationToken token = CancellationToken.current();
+    if (token == null) {
+      source.readRows(0, height, pixels);
+      return pixels;
+    }
+
+    int bandRows = Math.max(1, STREAM_BAND_PIXELS / width);
+    int[] band = new int[width * Math.min(bandRows, height)];
+    for (int row = 0; row < height; row += bandRows) {
+      token.check();
+      int toRow = Math.min(height, row + bandRows);
+      source.readRows(row, toRow, band);
+      System.arraycopy(band, 0, pixels, row * width, (toRow - row) * width);
+    }
+    return pixels;
+  }
+
+  /**
+   * Checks that a rectangle to crop to is not empty and lies inside an image of the given size.
+   *
+   * @throws IllegalArgumentException If the rectangle is invalid.
+   */
+  static void checkCrop(int imageWidth, int imageHeight, int row, int col, int width,
+                        int height) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || width <= 0 || height <= 0
+            || row + height > imageHeight || col + width > imageWidth) {
+      throw new IllegalArgumentException("The crop region is out of bounds");
+    }
+  }
+
+  /**
+   * Checks that a rectangle lies inside an image of the given size and that it fits in the
+   * destination array with the given offset and scanline.
+   *
+   * @throws IllegalArgumentException If the rectangle or the destination is invalid.
+   */
+  static void checkRegion(int imageWidth, int imageHeight, int row, int col, int width,
+                          int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    if (row < 0 || col < 0 || width < 0 || height < 0
+            || row + height > imageHeight || col + width > imageWidth) {
+      throw new IllegalArgumentException("Row or col is out of bounds");
+    }
+
+    if (dest == null || offset < 0 || (height > 1 && scanline < width)
+            || (height > 0 && offset + (long) (height - 1) * scanline + width > dest.length)) {
+      throw new IllegalArgumentException("The destination array is too small");
+    }
+  }
+
+  /**
+   * Copies a rectangle of this raster into dest as packed ARGB values. Assumes the region was
+   * checked.
+   */
+  void getPixels(int row, int col, int width, int height, int[] dest, int offset, int scanline) {
+    for (int i = 0; i < height; i++) {
+      int index = this.index(row + i, col);
+      int destIndex = offset + i * scanline;
+
+      if (this.colStride == 1) {
+        System.arraycopy(this.pixels, index, dest, destIndex, width);
+      } else {
+        for (int j = 0; j < width; j++, index += this.colStride) {
+          dest[destIndex + j] = this.pixels[index];
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies one property of a rectangle of this raster into dest. Assumes the region was checked.
+   */
+  void getChannel(PixelProperty property, int row, int col, int width, int height,
+                  int[] dest, int offset, int scanline) {
+    //Rows of a mirrored view are copied out first, so the loops below can walk forwards.
+    int[] pixels = this.pixels;
+    int[] scratch = this.colStride == 1 ? null : new int[width];
+
+    for (int i = 0; i < height; i++) {
+      int index = this.index(row + i, col);
+      int destIndex = offset + i * scanline;
+      if (scratch != null) {
+        this.getPixels(row + i, col, width, 1, scratch, 0, width);
+        pixels = scratch;
+        index = 0;
+      }
+
+      switch (property) {
+        case Red:
+          for (int j = 0; j < width; j++) {
+            dest[destIndex + j] = red(pixels[index + j]);
+          }
+          break;
+        case Green:
+          for (int j = 0; j < width; j++) {
+            dest[destIndex + j] = green(pixels[index + j]);
+          }
+          break;
+        case Blue:
+          for (int j = 0; j < width; j++) {
+            dest[destIndex + j] = blue(pixels[index + j]);
+          }
+          break;
+        case Alpha:
+          for (int j = 0; j < width; j++) {
+            dest[destIndex + j] = alpha(pixels[index + j]);
+          }
+          break;
+        default:
+          for (int j = 0; j < width; j++) {
+            dest[destIndex + j] = property(pixels[index + j], this.maxValue, property);
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Returns a map of every property of the pixel at the given position, in the same form as
+   * Pixel.getPixelInfo. Assumes the position is valid.
+   *
+   * @param row The row of the pixel.
+   * @param col The col of the pixel.
+   * @return The map of pixel properties.
+   */
+  Map<PixelProperty, Integer> getPixelInfo(int row, int col) {
+    int argb = this.pixels[this.index(row, col)];
+
+    Map<PixelProperty, Integer> values = new HashMap<PixelProperty, Integer>();
+    for (PixelProperty p : PixelProperty.values()) {
+      values.put(p, property(argb, this.maxValue, p));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,20 @@
+package imageprocessing.model;
+
+/**
+ * Represents the pixels of an image that are produced a band of rows at a time, e.g. decoded
+ * from a file as they are needed. This lets a model add an image that never has to be in one
+ * array (see ImageProcessingModel.streamImageToLibrary).
+ */
+public interface PixelSource {
+
+  /**
+   * Writes the packed ARGB pixels of a band of rows into dest, in the same form as
+   * ImageProcessingModelState.getPixels: row major from index 0, with the width of the image.
+   *
+   * @param fromRow The first row (inclusive).
+   * @param toRow   The last row (exclusive).
+   * @param dest    The array to write to.
+   * @throws IllegalArgumentException If the pixels are invalid.
+   */
+  void readRows(int fromRow, int toRow, int[] dest) throws IllegalArgumentException;
+}
@@ -0,0 +1,21 @@
+package imageprocessing.model;
+
+/**
+ * Represents an operation that computes every output pixel from the input pixel at the same
+ * index only, e.g. brightening or a color transformation. Point operations do not depend on the
+ * position of a pixel, so several of them can be applied to a row one after another while the row
+ * is still in the cache, and they can be moved past a flip.
+ */
+interface PointOp {
+
+  /**
+   * Applies the operation to the packed pixels of in from index from (inclusive) to index to
+   * (exclusive), and writes the results to the same indices of out.
+   *
+   * @param in   The source pixels.
+   * @param out  The destination pixels, may be the same array as in.
+   * @param from The first index.
+   * @param to   The index after the last one.
+   */
+  void apply(int[] in, int[] out, int from, int to);
+}
@@ -0,0 +1,298 @@
+package imageprocessing.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents any chain of flips and point operations as a single operation. Point operations do
+ * not depend on where a pixel is, so every flip of the chain can be done first, as one index
+ * remapping, followed by every point operation in order. Each output row is copied from its
+ * source row once and then goes through all point operations while it is in the cache, so the
+ * whole chain is one pass over the image. Adjacent lookup tables are combined into one, except
+ * two brightening tables, which are left for composing so the run stays affine.
+ *
+ * <p>When the chain has adjacent affine operations (color transformations and brightening, see
+ * AffineColorOp), the channel bounds of the source image are measured first. Every run of affine
+ * operations that is exact to compose for pixels within those bounds is then replaced by a single
+ * one, and lookup tables that are still adjacent are combined. In verification mode the chain is
+ * also run step by step, the results are compared, and every match is counted.</p>
+ *
+ * <p>Without flips every pixel stays where it is, so the chain can be run in place. A chain that
+ * does nothing at all (e.g. two flips in the same direction) returns its source, so the new image
+ * shares the pixels of the old one. A chain of only flips can be a mirrored view of its source,
+ * which copies nothing, and any source can itself be a view.</p>
+ */
+final class PointOperation implements Operation {
+  private final boolean flipHorizontal;
+  private final boolean flipVertical;
+  private final PointOp[] ops;
+
+  //Counts the changed chains that matched running them step by step, or null to not verify.
+  private final AtomicLong verified;
+
+  //Creates an operation that does the given flips and then the given point operations.
+  private PointOperation(boolean flipHorizontal, boolean flipVertical, PointOp[] ops,
+                         AtomicLong verified) {
+    this.flipHorizontal = flipHorizontal;
+    this.flipVertical = flipVertical;
+    this.ops = ops;
+    this.verified = verified;
+  }
+
+  /**
+   * Creates an operation that flips an image.
+   *
+   * @param direction The direction to flip in.
+   * @return The operation.
+   */
+  static PointOperation flip(FlipDirection direction) {
+    return new PointOperation(direction.equals(FlipDirection.Horizontal),
+            direction.equals(FlipDirection.Vertical), new PointOp[0], null);
+  }
+
+  /**
+   * Creates an operation that applies a single point operation.
+   *
+   * @param op The point operation.
+   * @return The operation.
+   */
+  static PointOperation of(PointOp op) {
+    return new PointOperation(false, false, new PointOp[]{op}, null);
+  }
+
+  /**
+   * Creates a copy of this operation that checks composed affine operations against running
+   * them step by step, and throws an IllegalStateException if they ever differ.
+   *
+   * @param verified Counts the composed chains that were verified.
+   * @return The operation.
+   */
+  PointOperation verified(AtomicLong verified) {
+    return new PointOperation(this.flipHorizontal, this.flipVertical, this.ops, verified);
+  }
+
+  @Override
+  public Operation fuse(Operation next) {
+    if (!(next instanceof PointOperation)) {
+      return null;
+    }
+    PointOperation other = (PointOperation) next;
+
+    List<PointOp> combined = new ArrayList<PointOp>();
+    for (PointOp op : this.ops) {
+      combined.add(op);
+    }
+    for (PointOp op : other.ops) {
+      int last = combined.size() - 1;
+      if (op instanceof LookupTable && last >= 0 && combined.get(last) instanceof LookupTable
+              && (asAffine(op) == null || asAffine(combined.get(last)) == null)) {
+        combined.set(last, ((LookupTable) combined.get(last)).andThen((LookupTable) op));
+      } else {
+        combined.add(op);
+      }
+    }
+
+    //Flipping twice in the same direction cancels out.
+    return new PointOperation(this.flipHorizontal != other.flipHorizontal,
+            this.flipVertical != other.flipVertical, combined.toArray(new PointOp[0]),
+            this.verified != null ? this.verified : other.verified);
+  }
+
+  //Verification compares against the source afterwards, so it must not be overwritten.
+  @Override
+  public boolean canRunInPlace() {
+    return !this.flipHorizontal && !this.flipVertical && this.verified == null;
+  }
+
+  @Override
+  public PackedRaster apply(PackedRaster source, BandScheduler scheduler, boolean inPlace)
+          throws IllegalStateException {
+    if (!this.flipHorizontal && !this.flipVertical && this.ops.length == 0) {
+      return source.compact();
+    }
+
+    PointOp[] plan = this.ops;
+    if (mayCompose(this.ops)) {
+      plan = compose(this.ops, channelBounds(source, scheduler));
+    }
+
+    PackedRaster result = this.run(source, inPlace ? source : source.blankCopy(), plan,
+            scheduler);
+
+    if (this.verified != null && plan != this.ops) {
+      PackedRaster expected = this.run(source, source.blankCopy(), this.ops, scheduler);
+      if (!Arrays.equals(expected.pixels, result.pixels)) {
+        throw new IllegalStateException("Composed color operations do not match running them "
+                + "step by step");
+      }
+      this.verified.incrementAndGet();
+    }
+    return result;
+  }
+
+  @Override
+  public PackedRaster view(PackedRaster source) {
+    return this.ops.length == 0 ? source.flipped(this.flipHorizontal, this.flipVertical) : null;
+  }
+
+  @Override
+  public int resultWidth(int sourceWidth) {
+    return sourceWidth;
+  }
+
+  @Override
+  public int resultHeight(int sourceHeight) {
+    return sourceHeight;
+  }
+
+  //Gets the affine operation a point operation is equivalent to, or null if there is none.
+  private static AffineColorOp asAffine(PointOp op) {
+    if (op instanceof AffineColorOp) {
+      return (AffineColorOp) op;
+    } else if (op instanceof LookupTable) {
+      return ((LookupTable) op).toAffine();
+    }
+    return null;
+  }
+
+  //Checks whether an integral affine operation is followed by another affine operation, which is
+  // when composing could be possible.
+  private static boolean mayCompose(PointOp[] ops) {
+    for (int i = 0; i + 1 < ops.length; i++) {
+      AffineColorOp first = asAffine(ops[i]);
+      if (first != null && first.isIntegral() && asAffine(ops[i + 1]) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //Measures the smallest and largest red, green and blue values of an image, as {low, high}.
+  private static int[][] channelBounds(PackedRaster source, BandScheduler scheduler) {
+    int[] low = new int[]{255, 255, 255};
+    int[] high = new int[]{0, 0, 0};
+    int width = source.width;
+    int[] pixels = source.pixels;
+
+    scheduler.run(width, source.height, (fromRow, toRow) -> {
+      int[] bandLow = new int[]{255, 255, 255};
+      int[] bandHigh = new int[]{0, 0, 0};
+      for (int i = fromRow; i < toRow; i++) {
+        int index = source.index(i, 0);
+        for (int j = 0; j < width; j++, index += source.colStride) {
+          int argb = pixels[index];
+          for (int c = 0; c < 3; c++) {
+            int value = (argb >> (16 - 8 * c)) & 0xFF;
+            bandLow[c] = Math.min(bandLow[c], value);
+            bandHigh[c] = Math.max(bandHigh[c], value);
+          }
+        }
+      }
+
+      synchronized (low) {
+        for (int c = 0; c < 3; c++) {
+          low[c] = Math.min(low[c], bandLow[c]);
+          high[c] = Math.max(high[c], bandHigh[c]);
+        }
+      }
+    });
+
+    return new int[][]{low, high};
+  }
+
+  //Replaces every run of affine operations that can be composed exactly, given the bounds of the
+  // source channels, by the composed operation, then combines lookup tables that are still
+  // adjacent. Returns the same array if nothing was composed or combined.
+  private static PointOp[] compose(PointOp[] ops, int[][] bounds) {
+    List<PointOp> plan = new ArrayList<PointOp>();
+    int[] low = bounds[0];
+    int[] high = bounds[1];
+    boolean composedAny = false;
+
+    //The affine operation being built, the operation it started from, and whether anything was
+    // composed into it. While it is being built, low and high are the bounds of its input.
+    AffineColorOp pending = null;
+    PointOp pendingOriginal = null;
+    boolean pendingComposed = false;
+
+    for (PointOp op : ops) {
+      AffineColorOp affine = asAffine(op);
+
+      if (affine != null && pending != null && pending.isIntegral()
+              && !pending.mayClamp(low, high)) {
+        pending = pending.then(affine);
+        pendingComposed = true;
+        composedAny = true;
+        continue;
+      }
+
+      if (pending != null) {
+        plan.add(pendingComposed ? pending : pendingOriginal);
+        pending.applyToBounds(low, high);
+        pending = null;
+      }
+
+      if (affine != null) {
+        pending = affine;
+        pendingOriginal = op;
+        pendingComposed = false;
+      } else {
+        plan.add(op);
+        if (op instanceof LookupTable) {
+          ((LookupTable) op).applyToBounds(low, high);
+        } else {
+          Arrays.fill(low, 0);
+          Arrays.fill(high, 255);
+        }
+      }
+    }
+
+    if (pending != null) {
+      plan.add(pendingComposed ? pending : pendingOriginal);
+    }
+
+    //Brightening tables that could not be composed (e.g. because they clamp) are one table.
+    for (int i = plan.size() - 1; i > 0; i--) {
+      if (plan.get(i - 1) instanceof LookupTable && plan.get(i) instanceof LookupTable) {
+        plan.set(i - 1, ((LookupTable) plan.get(i - 1)).andThen((LookupTable) plan.remove(i)));
+        composedAny = true;
+      }
+    }
+    return composedAny ? plan.toArray(new PointOp[0]) : ops;
+  }
+
+  //Runs the flips and then the given point operations, writing into result. The result may be
+  // the source only if it is not a view and there are no flips.
+  private PackedRaster run(PackedRaster source, PackedRaster result, PointOp[] ops,
+                           BandScheduler scheduler) {
+    PackedRaster in = source.flipped(this.flipHorizontal, this.flipVertical);
+    int width = in.width;
+    int[] out = result.pixels;
+
+    //A source that is not a view has the same indices as the result.
+    boolean plain = !in.isView();
+
+    scheduler.run(width, in.height, (fromRow, toRow) -> {
+      for (int i = fromRow; i < toRow; i++) {
+        int start = i * width;
+        int first = 0;
+
+        if (plain && ops.length > 0) {
+          //The first point operation can read the source row directly.
+          ops[0].apply(in.pixels, out, start, start + width);
+          first = 1;
+        } else {
+          in.getPixels(i, 0, width, 1, out, start, width);
+        }
+
+        for (int k = first; k < ops.length; k++) {
+          ops[k].apply(out, out, start, start + width);
+        }
+      }
+    });
+
+    return result;
+  }
+}
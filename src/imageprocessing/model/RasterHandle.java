@@ -0,0 +1,62 @@
+package imageprocessing.model;
+
+import java.util.Map;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents a handle (see ImageHandle) to an image that is a PackedRaster, which every read
+ * goes to directly after checking its bounds.
+ */
+final class RasterHandle implements ImageHandle {
+  private final PackedRaster raster;
+
+  /**
+   * Creates a handle to a raster.
+   *
+   * @param raster The raster.
+   */
+  RasterHandle(PackedRaster raster) {
+    this.raster = raster;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.raster.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.raster.height;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return this.raster.maxValue;
+  }
+
+  @Override
+  public Map<PixelProperty, Integer> getPixelInfo(int row, int col)
+          throws IllegalArgumentException {
+    if (row < 0 || row >= this.raster.height || col < 0 || col >= this.raster.width) {
+      throw new IllegalArgumentException("Row or col is out of bounds");
+    }
+    return this.raster.getPixelInfo(row, col);
+  }
+
+  @Override
+  public void getPixels(int row, int col, int width, int height, int[] dest, int offset,
+                        int scanline) throws IllegalArgumentException {
+    PackedRaster.checkRegion(this.raster.width, this.raster.height, row, col, width, height,
+            dest, offset, scanline);
+    this.raster.getPixels(row, col, width, height, dest, offset, scanline);
+  }
+
+  @Override
+  public void getChannel(PixelProperty property, int row, int col, int width, int height,
+                         int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    PackedRaster.checkRegion(this.raster.width, this.raster.height, row, col, width, height,
+            dest, offset, scanline);
+    this.raster.getChannel(property, row, col, width, height, dest, offset, scanline);
+  }
+}
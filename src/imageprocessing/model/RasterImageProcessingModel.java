@@ -0,0 +1,459 @@
+package imageprocessing.model;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents an implementation for an image processing model that stores every image as one
+ * contiguous array of packed ARGB pixels (see PackedRaster) instead of a grid of Pixel objects.
+ * This produces exactly the same results as the SimpleImageProcessingModel while using a fraction
+ * of the memory, and every operation is a loop over primitive ints. Channel values are stored in
+ * 8 bits, so images must have channel and max values between 0 and 255.
+ *
+ * <p>Every image of the library is a node of an operation graph (see ImageNode). By default every
+ * operation is run as soon as it is called. In lazy mode an operation only records a node, and
+ * nothing is computed until the pixels of an image are read (e.g. to save or display it). Chains
+ * of flips, brightening, grayscale and color transformations are then fused into a single pass
+ * over the image, and images that are only used as intermediate steps are never created.</p>
+ *
+ * <p>Images are never copied to be shared. An operation that does not change anything (e.g.
+ * flipping twice) gives a new name for the same pixels, and an operation whose source is not used
+ * by anything else (e.g. brighten 10 img img) writes over the pixels of its source. Loaders can
+ * hand over the array they decoded with transferImageToLibrary instead of having it copied.
+ * Flipping or cropping an image that has its pixels gives a view of them, which takes constant
+ * time and memory; a view is only copied out when the image it shows is dropped.</p>
+ *
+ * <p>The library can be given a memory budget (see setMemoryBudget). Whenever the pixels of the
+ * images in the library take more than the budget, the least recently used images are evicted:
+ * spilled to a scratch file and read back the next time they are used, or, if they were computed
+ * from another image that is still around, dropped and recomputed from it (see
+ * setEvictionPolicy).</p>
+ */
+public class RasterImageProcessingModel implements ImageProcessingModel {
+
+  private final Map<String, ImageNode> imageCollection;
+  private final BandScheduler scheduler;
+  private final boolean lazy;
+  private boolean verifyComposition;
+  private final AtomicLong verifiedCompositions;
+
+  //Null unless the model has a memory budget.
+  private SpillFile spillFile;
+  private long memoryBudget;
+  private EvictionPolicy evictionPolicy;
+  private long hits;
+
+  /**
+   * Default constructor: Creates a default model that runs every operation on the calling
+   * thread. The image collection is initialized.
+   */
+  public RasterImageProcessingModel() {
+    this((ForkJoinPool) null);
+  }
+
+  /**
+   * Creates a model that splits every operation into bands of rows and runs them on a new
+   * ForkJoinPool with the given parallelism. A parallelism of 1 runs serially. The output is
+   * identical for any parallelism.
+   *
+   * @param parallelism The number of threads to use.
+   * @throws IllegalArgumentException If the parallelism is less than 1.
+   */
+  public RasterImageProcessingModel(int parallelism) throws IllegalArgumentException {
+    this(createPool(parallelism));
+  }
+
+  /**
+   * Creates a model that splits every operation into bands of rows and runs them on a new
+   * ForkJoinPool with the given parallelism, and that may defer operations until their result is
+   * read.
+   *
+   * @param parallelism The number of threads to use.
+   * @param lazy        Whether operations are deferred until their result is read.
+   * @throws IllegalArgumentException If the parallelism is less than 1.
+   */
+  public RasterImageProcessingModel(int parallelism, boolean lazy)
+          throws IllegalArgumentException {
+    this(createPool(parallelism), lazy);
+  }
+
+  /**
+   * Creates a model that splits every operation into bands of rows and runs them on the given
+   * pool. A null pool runs serially. The output is identical for any pool.
+   *
+   * @param pool The pool to run operations on, or null.
+   */
+  public RasterImageProcessingModel(ForkJoinPool pool) {
+    this(pool, false);
+  }
+
+  /**
+   * Creates a model that splits every operation into bands of rows and runs them on the given
+   * pool (serially if it is null), and that may defer operations until their result is read. The
+   * output is identical either way.
+   *
+   * @param pool The pool to run operations on, or null.
+   * @param lazy Whether operations are deferred until their result is read.
+   */
+  public RasterImageProcessingModel(ForkJoinPool pool, boolean lazy) {
+    //In access order, so the least recently used images come first.
+    this.imageCollection = new LinkedHashMap<String, ImageNode>(16, 0.75f, true);
+    this.scheduler = new BandScheduler(pool);
+    this.lazy = lazy;
+    this.verifyComposition = false;
+    this.verifiedCompositions = new AtomicLong();
+    this.spillFile = null;
+    this.memoryBudget = Long.MAX_VALUE;
+    this.evictionPolicy = EvictionPolicy.Cost;
+    this.hits = 0;
+  }
+
+  /**
+   * Sets whether chains of color transformations and brightening that are composed into a single
+   * affine operation are also run step by step to check that the results are identical. This is
+   * off by default, as it runs such chains twice.
+   *
+   * @param verify Whether to verify composed operations.
+   */
+  public void setVerifyComposition(boolean verify) {
+    this.verifyComposition = verify;
+  }
+
+  /**
+   * Gets how many chains that were composed (or whose lookup tables were combined) were also run
+   * step by step and matched, while composition was verified (see setVerifyComposition). Chains
+   * that are run exactly as they were called are not counted.
+   *
+   * @return The number of verified chains.
+   */
+  public long getVerifiedCompositions() {
+    return this.verifiedCompositions.get();
+  }
+
+  /**
+   * Sets how many bytes of pixels the images in the library may take in memory. Once they take
+   * more, the least recently used images are spilled to a scratch file in the given directory
+   * until they fit, and are read back the next time they are used. The image that was used last
+   * is never spilled, and images that share their pixels with another image are not spilled.
+   * There is no budget by default.
+   *
+   * <p>With a budget, every image that is computed from another one remembers its lineage: the
+   * image and the operation it was computed from. Depending on the eviction policy, such an image
+   * may be dropped instead of spilled and recomputed when it is used again. Operations then no
+   * longer write over an image that others can be recomputed from.</p>
+   *
+   * @param bytes          The budget in bytes.
+   * @param spillDirectory The directory for the scratch file, or null for the default temporary
+   *                       directory.
+   * @throws IllegalArgumentException If the budget is not positive.
+   * @throws IllegalStateException    If images could not be spilled.
+   */
+  public void setMemoryBudget(long bytes, String spillDirectory)
+          throws IllegalArgumentException, IllegalStateException {
+    if (bytes <= 0) {
+      throw new IllegalArgumentException("The memory budget must be positive");
+    }
+    if (this.spillFile == null) {
+      this.spillFile = new SpillFile(spillDirectory == null ? null : new File(spillDirectory));
+    }
+    this.memoryBudget = bytes;
+    this.enforceBudget();
+  }
+
+  /**
+   * Sets how evicted images that can be recomputed from their lineage are freed. By default
+   * (Cost) an image is dropped if recomputing it took less time than spilling and reloading it
+   * is estimated to take, from the measured speed of the scratch file.
+   *
+   * @param policy The eviction policy.
+   * @throws IllegalArgumentException If the policy is null.
+   */
+  public void setEvictionPolicy(EvictionPolicy policy) throws IllegalArgumentException {
+    if (policy == null) {
+      throw new IllegalArgumentException("The eviction policy cannot be null");
+    }
+    this.evictionPolicy = policy;
+  }
+
+  /**
+   * Gets how often images were used while their pixels were in memory, spilled and reloaded, and
+   * dropped and recomputed, and how many bytes of pixels are in memory and spilled right now.
+   *
+   * @return The statistics.
+   */
+  public MemoryStats getMemoryStats() {
+    boolean spilling = this.spillFile != null;
+    return new MemoryStats(this.hits, spilling ? this.spillFile.getSpills() : 0,
+            spilling ? this.spillFile.getReloads() : 0, spilling ? this.spillFile.getDrops() : 0,
+            spilling ? this.spillFile.getRecomputes() : 0, this.residentBytes(),
+            spilling ? this.spillFile.getSpilledBytes() : 0);
+  }
+
+  //Creates a pool with the given parallelism, or null to run serially.
+  private static ForkJoinPool createPool(int parallelism) throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    return parallelism == 1 ? null : new ForkJoinPool(parallelism);
+  }
+
+  //Converts the imgGrid into a packed raster and adds it.
+  @Override
+  public void addImageToLibrary(String imageName, Pixel[][] imgGrid)
+          throws IllegalArgumentException {
+
+    if (imageName == null || imageName.equals("") || imgGrid == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    this.store(imageName, new ImageNode(PackedRaster.fromGrid(imgGrid)));
+    this.enforceBudget();
+  }
+
+  @Override
+  public void addImageToLibrary(String imageName, int width, int height, int maxValue,
+                                int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    int[] copy = new int[width * height];
+    System.arraycopy(pixels, 0, copy, 0, copy.length);
+    this.store(imageName, new ImageNode(new PackedRaster(width, height, maxValue, copy)));
+    this.enforceBudget();
+  }
+
+  //Uses the array as the pixels of the image, unless it is longer than the image.
+  @Override
+  public void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                                     int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    if (pixels.length != width * height) {
+      this.addImageToLibrary(imageName, width, height, maxValue, pixels);
+      return;
+    }
+    this.store(imageName, new ImageNode(new PackedRaster(width, height, maxValue, pixels)));
+    this.enforceBudget();
+  }
+
+  //Every image is one array, so the whole image is read into it at once.
+  @Override
+  public void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                                   PixelSource source) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, source);
+
+    int[] pixels = PackedRaster.readAll(width, height, source);
+    this.transferImageToLibrary(imageName, width, height, maxValue, pixels);
+  }
+
+  @Override
+  public int getWidth(String imageName) throws IllegalArgumentException {
+    return this.getNode(imageName).width;
+  }
+
+  @Override
+  public int getHeight(String imageName) throws IllegalArgumentException {
+    return this.getNode(imageName).height;
+  }
+
+  @Override
+  public void flip(FlipDirection flip, String imageName, String newName)
+          throws IllegalArgumentException {
+    this.derive(this.getNode(imageName), PointOperation.flip(flip), newName, StatsCache.SAME);
+  }
+
+  @Override
+  public void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException {
+    ImageNode source = this.getNode(imageName);
+    PackedRaster.checkCrop(source.width, source.height, row, col, width, height);
+    this.derive(source, new CropOperation(row, col, width, height), newName, null);
+  }
+
+  @Override
+  public void brighten(int amount, String imageName, String newName)
+          throws IllegalArgumentException {
+    ImageNode source = this.getNode(imageName);
+    this.derive(source, PointOperation.of(LookupTable.brighten(amount, source.maxValue)),
+            newName, StatsCache.brighten(amount, source.maxValue));
+  }
+
+  @Override
+  public void grayscale(PixelProperty component, String imageName, String newName)
+          throws IllegalArgumentException {
+    ImageNode source = this.getNode(imageName);
+    int max = source.maxValue;
+    this.derive(source, PointOperation.of((in, out, from, to) ->
+            LookupTable.applyGrayscale(component, max, in, out, from, to)), newName,
+            StatsCache.grayscale(component));
+  }
+
+  @Override
+  public void applyFilter(double[][] kernel, String imageName, String newName)
+          throws IllegalArgumentException {
+    ImageNode source = this.getNode(imageName);
+    this.derive(source, new FilterOperation(kernel), newName, null);
+  }
+
+  @Override
+  public void colorTransformation(double[][] transformation, String imageName, String newName)
+          throws IllegalArgumentException {
+    ImageNode source = this.getNode(imageName);
+    this.derive(source, PointOperation.of(AffineColorOp.transformation(transformation)),
+            newName, null);
+  }
+
+  //Runs any operations the image still depends on, so the handle reads its pixels directly.
+  @Override
+  public ImageHandle getImage(String imageName) throws IllegalArgumentException {
+    return new RasterHandle(this.getRaster(imageName));
+  }
+
+  @Override
+  public Map<PixelProperty, Integer> getPixelInfo(String imageName, int row, int col)
+          throws IllegalArgumentException {
+    return this.getImage(imageName).getPixelInfo(row, col);
+  }
+
+  @Override
+  public int getMaxValue(String imageName) throws IllegalArgumentException {
+    return this.getNode(imageName).maxValue;
+  }
+
+  @Override
+  public void getPixels(String imageName, int row, int col, int width, int height,
+                        int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    this.getImage(imageName).getPixels(row, col, width, height, dest, offset, scanline);
+  }
+
+  @Override
+  public void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                         int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    this.getImage(imageName).getChannel(property, row, col, width, height, dest, offset,
+            scanline);
+  }
+
+  @Override
+  public long[] getHistogram(String imageName, PixelProperty property)
+          throws IllegalArgumentException {
+    ImageNode node = this.getNode(imageName);
+    return node.stats.getHistogram(property,
+            p -> Histogram.count(this.materialize(node), p, this.scheduler));
+  }
+
+  //Only the first call for an image reads its pixels, so showing an unchanged image again never
+  // runs its operations or reads it back from the spill file.
+  @Override
+  public ImageStats getStats(String imageName) throws IllegalArgumentException {
+    ImageNode node = this.getNode(imageName);
+    return node.stats.getStats(() -> new RasterHandle(this.materialize(node)), this.scheduler,
+            p -> Histogram.count(this.materialize(node), p, this.scheduler));
+  }
+
+  //Gets the node of an image, throws an IllegalArgumentException if it does not exist. This
+  // makes it the most recently used image, but only reading its pixels counts as a hit.
+  private ImageNode getNode(String imageName) throws IllegalArgumentException {
+    ImageNode node = imageName == null ? null
+            : this.imageCollection.get(imageName.toLowerCase());
+    if (node == null) {
+      throw new IllegalArgumentException("Model does not contain this image");
+    }
+    return node;
+  }
+
+  //Counts a hit if the pixels of a node that are about to be read are in memory.
+  private void countHit(ImageNode node) {
+    if (node.residentPixels() != null) {
+      this.hits++;
+    }
+  }
+
+  //Gets the pixels of an image, running any operations it still depends on.
+  private PackedRaster getRaster(String imageName) throws IllegalArgumentException {
+    return this.materialize(this.getNode(imageName));
+  }
+
+  //Gets the pixels of a node, running any operations it still depends on.
+  private PackedRaster materialize(ImageNode node) throws IllegalStateException {
+    this.countHit(node);
+    PackedRaster raster = node.materialize(this.scheduler, this.spillFile != null);
+    this.enforceBudget();
+    return raster;
+  }
+
+  //Records the result of running an operation on the node of an image under the new name, and
+  // runs it right away unless the model is lazy, which reads the pixels of the source. The
+  // histograms of the result are derived from those of the source unless the derivation is null.
+  private void derive(ImageNode source, Operation operation, String newName,
+                      StatsCache.Derivation derivation) throws IllegalArgumentException {
+    if (newName == null || newName.equals("")) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    if (this.verifyComposition && operation instanceof PointOperation) {
+      operation = ((PointOperation) operation).verified(this.verifiedCompositions);
+    }
+
+    //The result is stored first, so if it replaces its own source, the source is no longer
+    // held by the library and can be written over.
+    ImageNode result = source.derive(operation);
+    if (derivation != null) {
+      result.stats.deriveFrom(source.stats, derivation);
+    }
+    this.store(newName, result);
+    if (!this.lazy) {
+      this.countHit(source);
+      result.materialize(this.scheduler, this.spillFile != null);
+    }
+    this.enforceBudget();
+  }
+
+  //Evicts the least recently used images until the images in memory fit in the budget, keeping
+  // the one that was used last.
+  private void enforceBudget() throws IllegalStateException {
+    if (this.spillFile == null) {
+      return;
+    }
+
+    long resident = this.residentBytes();
+    Iterator<ImageNode> oldest = this.imageCollection.values().iterator();
+    for (int remaining = this.imageCollection.size(); resident > this.memoryBudget
+            && remaining > 1; remaining--) {
+      ImageNode node = oldest.next();
+      int[] pixels = node.residentPixels();
+      if (pixels != null && node.evict(this.spillFile, this.evictionPolicy)) {
+        resident -= 4L * pixels.length;
+      }
+    }
+  }
+
+  //Adds up the bytes of the arrays the images in the library have in memory, counting arrays
+  // that are shared by several images once.
+  private long residentBytes() {
+    Set<int[]> counted = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+    long bytes = 0;
+    for (ImageNode node : this.imageCollection.values()) {
+      int[] pixels = node.residentPixels();
+      if (pixels != null && counted.add(pixels)) {
+        bytes += 4L * pixels.length;
+      }
+    }
+    return bytes;
+  }
+
+  //Stores a node under a name, and lets go of the node that was stored under it before.
+  private void store(String imageName, ImageNode node) {
+    node.hold();
+    ImageNode previous = this.imageCollection.put(imageName.toLowerCase(), node);
+    if (previous != null) {
+      previous.release();
+    }
+  }
+}
@@ -9,12 +9,15 @@ import java.util.Map;
 public class SimpleImageProcessingModel implements ImageProcessingModel {
 
   private final Map<String, Pixel[][]> imageCollection;
+  //The cached histograms and statistics of every image, replaced whenever the image is.
+  private final Map<String, StatsCache> statsCollection;
 
   /**
    * Default constructor: Creates a default model. The image collection is initialized.
    */
   public SimpleImageProcessingModel() {
     imageCollection = new HashMap<String, Pixel[][]>();
+    statsCollection = new HashMap<String, StatsCache>();
   }
 
   //Creates a copy of the imgGrid and adds it.
@@ -43,38 +46,70 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
     }
 
     this.imageCollection.put(imageName.toLowerCase(), temp);
+    this.statsCollection.put(imageName.toLowerCase(), new StatsCache());
   }
 
   @Override
-  public int getWidth(String imageName) throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+  public void addImageToLibrary(String imageName, int width, int height, int maxValue,
+                                int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    Pixel[][] imgGrid = new Pixel[height][width];
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int argb = pixels[i * width + j];
+        imgGrid[i][j] = new Pixel(PackedRaster.red(argb), PackedRaster.green(argb),
+                PackedRaster.blue(argb), maxValue, PackedRaster.alpha(argb));
+      }
+    }
 
-    return this.imageCollection.get(imageName.toLowerCase())[0].length;
+    this.imageCollection.put(imageName.toLowerCase(), imgGrid);
+    this.statsCollection.put(imageName.toLowerCase(), new StatsCache());
   }
 
+  //The pixels are converted into a grid anyway, so there is nothing to gain from the array.
   @Override
-  public int getHeight(String imageName) throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+  public void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                                     int[] pixels) throws IllegalArgumentException {
+    this.addImageToLibrary(imageName, width, height, maxValue, pixels);
+  }
 
-    return this.imageCollection.get(imageName.toLowerCase()).length;
+  //Reads the whole image at once, since it is converted into a grid anyway.
+  @Override
+  public void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                                   PixelSource source) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, source);
+
+    int[] pixels = PackedRaster.readAll(width, height, source);
+    this.addImageToLibrary(imageName, width, height, maxValue, pixels);
+  }
+
+  @Override
+  public int getWidth(String imageName) throws IllegalArgumentException {
+    return this.getGrid(imageName)[0].length;
+  }
+
+  @Override
+  public int getHeight(String imageName) throws IllegalArgumentException {
+    return this.getGrid(imageName).length;
   }
 
   @Override
   public void flip(FlipDirection flip, String imageName, String newName)
           throws IllegalArgumentException {
 
-    this.checkInBounds(imageName, 0, 0);
+    ImageHandle source = this.getImage(imageName);
 
-    int width = this.getWidth(imageName);
-    int height = this.getHeight(imageName);
+    int width = source.getWidth();
+    int height = source.getHeight();
 
-    Pixel[][] newImgGrid = this.getCopy(imageName);
+    Pixel[][] newImgGrid = this.getCopy(source);
 
     if (flip.equals(FlipDirection.Vertical)) {
 
       for (int i = 0; i < newImgGrid.length; i++) {
         for (int j = 0; j < newImgGrid[0].length; j++) {
-          Map<PixelProperty, Integer> values = this.getPixelInfo(imageName, i, j);
+          Map<PixelProperty, Integer> values = source.getPixelInfo(i, j);
           Pixel p = new Pixel(values.get(PixelProperty.Red), values.get(PixelProperty.Green),
                   values.get(PixelProperty.Blue), values.get(PixelProperty.MaxValue),
                   values.get(PixelProperty.Alpha));
@@ -87,7 +122,7 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
 
       for (int i = 0; i < height; i++) {
         for (int j = 0; j < width; j++) {
-          Map<PixelProperty, Integer> values = this.getPixelInfo(imageName, i, j);
+          Map<PixelProperty, Integer> values = source.getPixelInfo(i, j);
           Pixel p = new Pixel(values.get(PixelProperty.Red), values.get(PixelProperty.Green),
                   values.get(PixelProperty.Blue), values.get(PixelProperty.MaxValue),
                   values.get(PixelProperty.Alpha));
@@ -97,6 +132,29 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
       }
     }
 
+    StatsCache sourceStats = this.getStatsCache(imageName);
+    this.addImageToLibrary(newName, newImgGrid);
+    this.getStatsCache(newName).deriveFrom(sourceStats, StatsCache.SAME);
+  }
+
+  @Override
+  public void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException {
+
+    ImageHandle source = this.getImage(imageName);
+    PackedRaster.checkCrop(source.getWidth(), source.getHeight(), row, col, width, height);
+
+    Pixel[][] newImgGrid = new Pixel[height][width];
+
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        Map<PixelProperty, Integer> values = source.getPixelInfo(row + i, col + j);
+        newImgGrid[i][j] = new Pixel(values.get(PixelProperty.Red),
+                values.get(PixelProperty.Green), values.get(PixelProperty.Blue),
+                values.get(PixelProperty.MaxValue), values.get(PixelProperty.Alpha));
+      }
+    }
+
     this.addImageToLibrary(newName, newImgGrid);
   }
 
@@ -104,9 +162,9 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
   @Override
   public void brighten(int amount, String imageName, String newName)
           throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+    ImageHandle source = this.getImage(imageName);
 
-    Pixel[][] imgGrid = this.getCopy(imageName);
+    Pixel[][] imgGrid = this.getCopy(source);
 
     for (int i = 0; i < imgGrid.length; i++) {
       for (int j = 0; j < imgGrid[i].length; j++) {
@@ -130,50 +188,54 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
       }
     }
 
+    StatsCache sourceStats = this.getStatsCache(imageName);
     this.addImageToLibrary(newName, imgGrid);
+    this.getStatsCache(newName).deriveFrom(sourceStats,
+            StatsCache.brighten(amount, source.getMaxValue()));
   }
 
   @Override
   public void grayscale(PixelProperty component, String imageName, String newName)
           throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+    ImageHandle source = this.getImage(imageName);
 
-    Pixel[][] imgGrid = this.getCopy(imageName);
+    Pixel[][] imgGrid = this.getCopy(source);
 
     for (int i = 0; i < imgGrid.length; i++) {
       for (int j = 0; j < imgGrid[i].length; j++) {
 
-        int alpha = this.getPixelInfo(imageName, i, j).get(PixelProperty.Alpha);
-        int grayValue = this.getPixelInfo(imageName, i, j).get(component);
+        int alpha = source.getPixelInfo(i, j).get(PixelProperty.Alpha);
+        int grayValue = source.getPixelInfo(i, j).get(component);
         imgGrid[i][j] = new Pixel(grayValue, grayValue, grayValue,
-                this.getPixelInfo(imageName, i, j).get(PixelProperty.MaxValue),
+                source.getPixelInfo(i, j).get(PixelProperty.MaxValue),
                 alpha);
       }
     }
 
+    StatsCache sourceStats = this.getStatsCache(imageName);
     this.addImageToLibrary(newName, imgGrid);
-
+    this.getStatsCache(newName).deriveFrom(sourceStats, StatsCache.grayscale(component));
   }
 
   @Override
   public void applyFilter(double[][] kernel, String imageName, String newName)
           throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+    ImageHandle source = this.getImage(imageName);
 
     if (kernel == null || kernel.length % 2 == 0 || kernel[0].length % 2 == 0) {
       throw new IllegalArgumentException("Kernel must be an odd square matrix");
     }
 
-    Pixel[][] imgGrid = this.getCopy(imageName);
+    Pixel[][] imgGrid = this.getCopy(source);
 
 
     for (int i = 0; i < imgGrid.length; i++) {
       for (int j = 0; j < imgGrid[i].length; j++) {
-        int red = applyFilterAtPosition(PixelProperty.Red, kernel, imgGrid, imageName, i, j);
-        int green = applyFilterAtPosition(PixelProperty.Green, kernel, imgGrid, imageName, i, j);
-        int blue = applyFilterAtPosition(PixelProperty.Blue, kernel, imgGrid, imageName, i, j);
-        int max = this.getPixelInfo(imageName, i, j).get(PixelProperty.MaxValue);
-        int alpha = this.getPixelInfo(imageName, i, j).get(PixelProperty.Alpha);
+        int red = applyFilterAtPosition(PixelProperty.Red, kernel, imgGrid, source, i, j);
+        int green = applyFilterAtPosition(PixelProperty.Green, kernel, imgGrid, source, i, j);
+        int blue = applyFilterAtPosition(PixelProperty.Blue, kernel, imgGrid, source, i, j);
+        int max = source.getPixelInfo(i, j).get(PixelProperty.MaxValue);
+        int alpha = source.getPixelInfo(i, j).get(PixelProperty.Alpha);
         imgGrid[i][j] = new Pixel(red, green, blue, max, alpha);
       }
     }
@@ -184,22 +246,22 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
   @Override
   public void colorTransformation(double[][] transformation, String imageName, String newName)
           throws IllegalArgumentException {
-    this.checkInBounds(imageName, 0, 0);
+    ImageHandle source = this.getImage(imageName);
 
     if (transformation == null || transformation.length != 3 || transformation[0].length != 3) {
       throw new IllegalArgumentException("Invalid transformation matrix");
     }
 
-    Pixel[][] imgGrid = this.getCopy(imageName);
+    Pixel[][] imgGrid = this.getCopy(source);
 
     for (int i = 0; i < imgGrid.length; i++) {
       for (int j = 0; j < imgGrid[i].length; j++) {
-        Map<PixelProperty, Integer> values = this.getPixelInfo(imageName, i, j);
+        Map<PixelProperty, Integer> values = source.getPixelInfo(i, j);
         int red = values.get(PixelProperty.Red);
         int green = values.get(PixelProperty.Green);
         int blue = values.get(PixelProperty.Blue);
         int max = values.get(PixelProperty.MaxValue);
-        int alpha = this.getPixelInfo(imageName, i, j).get(PixelProperty.Alpha);
+        int alpha = source.getPixelInfo(i, j).get(PixelProperty.Alpha);
         imgGrid[i][j] = this.applyTransformation(transformation, red, green, blue, max, alpha);
       }
     }
@@ -208,37 +270,140 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
 
   }
 
+  @Override
+  public ImageHandle getImage(String imageName) throws IllegalArgumentException {
+    return new GridHandle(this.getGrid(imageName));
+  }
+
   @Override
   public Map<PixelProperty, Integer> getPixelInfo(String imageName, int row, int col)
           throws IllegalArgumentException {
+    return this.getImage(imageName).getPixelInfo(row, col);
+  }
+
+  @Override
+  public int getMaxValue(String imageName) throws IllegalArgumentException {
+    return this.getImage(imageName).getMaxValue();
+  }
+
+  @Override
+  public void getPixels(String imageName, int row, int col, int width, int height,
+                        int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    this.getImage(imageName).getPixels(row, col, width, height, dest, offset, scanline);
+  }
+
+  @Override
+  public void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                         int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    this.getImage(imageName).getChannel(property, row, col, width, height, dest, offset,
+            scanline);
+  }
+
+  @Override
+  public long[] getHistogram(String imageName, PixelProperty property)
+          throws IllegalArgumentException {
+    ImageHandle image = this.getImage(imageName);
+    return this.getStatsCache(imageName).getHistogram(property,
+            p -> Histogram.count(image, p, new BandScheduler(null)));
+  }
 
-    //Checks if the specific "position" is accessible. Will throw an exception if not.
-    this.checkInBounds(imageName, row, col);
+  @Override
+  public ImageStats getStats(String imageName) throws IllegalArgumentException {
+    ImageHandle image = this.getImage(imageName);
+    return this.getStatsCache(imageName).getStats(() -> image, new BandScheduler(null),
+            p -> Histogram.count(image, p, new BandScheduler(null)));
+  }
 
-    return this.imageCollection.get(imageName.toLowerCase())[row][col].getPixelInfo();
+  //Gets the cache of an image, which exists whenever the image does.
+  private StatsCache getStatsCache(String imageName) {
+    return this.statsCollection.get(imageName.toLowerCase());
   }
 
-  // Checks if an image and row or col is valid, throws IllegalArgumentException otherwise.
-  private void checkInBounds(String imageName, int row, int col) throws IllegalArgumentException {
-    if (!this.imageCollection.containsKey(imageName.toLowerCase())) {
+  //Gets the grid of an image with a single lookup, throws an IllegalArgumentException if it does
+  // not exist.
+  private Pixel[][] getGrid(String imageName) throws IllegalArgumentException {
+    Pixel[][] grid = imageName == null ? null
+            : this.imageCollection.get(imageName.toLowerCase());
+    if (grid == null) {
       throw new IllegalArgumentException("Model does not contain this image");
     }
+    return grid;
+  }
 
-    //This will NOT throw an exception if row and col == 0. So we use row, col = 0 when
-    // we only want to check that the image exists in the map.
-    if (row < 0 || row >= this.imageCollection.get(imageName.toLowerCase()).length ||
-            col < 0 || col >= this.imageCollection.get(imageName.toLowerCase())[0].length) {
-      throw new IllegalArgumentException("Row or col is out of bounds");
+  /**
+   * Represents a handle (see ImageHandle) to the grid of an image of this model.
+   */
+  private static final class GridHandle implements ImageHandle {
+    private final Pixel[][] grid;
+
+    private GridHandle(Pixel[][] grid) {
+      this.grid = grid;
+    }
+
+    @Override
+    public int getWidth() {
+      return this.grid[0].length;
+    }
+
+    @Override
+    public int getHeight() {
+      return this.grid.length;
+    }
+
+    @Override
+    public int getMaxValue() {
+      return this.grid[0][0].getPixelInfo().get(PixelProperty.MaxValue);
+    }
+
+    @Override
+    public Map<PixelProperty, Integer> getPixelInfo(int row, int col)
+            throws IllegalArgumentException {
+      if (row < 0 || row >= this.grid.length || col < 0 || col >= this.grid[0].length) {
+        throw new IllegalArgumentException("Row or col is out of bounds");
+      }
+      return this.grid[row][col].getPixelInfo();
+    }
+
+    @Override
+    public void getPixels(int row, int col, int width, int height, int[] dest, int offset,
+                          int scanline) throws IllegalArgumentException {
+      PackedRaster.checkRegion(this.grid[0].length, this.grid.length, row, col, width, height,
+              dest, offset, scanline);
+
+      for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) {
+          Map<PixelProperty, Integer> values = this.grid[row + i][col + j].getPixelInfo();
+          dest[offset + i * scanline + j] = PackedRaster.pack(values.get(PixelProperty.Alpha),
+                  values.get(PixelProperty.Red), values.get(PixelProperty.Green),
+                  values.get(PixelProperty.Blue));
+        }
+      }
+    }
+
+    @Override
+    public void getChannel(PixelProperty property, int row, int col, int width, int height,
+                           int[] dest, int offset, int scanline)
+            throws IllegalArgumentException {
+      PackedRaster.checkRegion(this.grid[0].length, this.grid.length, row, col, width, height,
+              dest, offset, scanline);
+
+      for (int i = 0; i < height; i++) {
+        for (int j = 0; j < width; j++) {
+          dest[offset + i * scanline + j] = this.grid[row + i][col + j].getPixelInfo()
+                  .get(property);
+        }
+      }
     }
   }
 
   //Creates a copy of certain image. Assumes the image is valid.
-  private Pixel[][] getCopy(String imageName) {
-    Pixel[][] result = new Pixel[this.getHeight(imageName)][this.getWidth(imageName)];
+  private Pixel[][] getCopy(ImageHandle source) {
+    Pixel[][] result = new Pixel[source.getHeight()][source.getWidth()];
 
     for (int i = 0; i < result.length; i++) {
       for (int j = 0; j < result[i].length; j++) {
-        Map<PixelProperty, Integer> values = this.getPixelInfo(imageName, i, j);
+        Map<PixelProperty, Integer> values = source.getPixelInfo(i, j);
         int red = values.get(PixelProperty.Red);
         int green = values.get(PixelProperty.Green);
         int blue = values.get(PixelProperty.Blue);
@@ -255,7 +420,7 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
   //Applies a filter on one pixel's specific color channel using its neighbors. If the filter
   // overlaps non-existent pixels, those are ignored.
   private int applyFilterAtPosition(PixelProperty p, double[][] kernel,
-                                    Pixel[][] imgGrid, String imageName,
+                                    Pixel[][] imgGrid, ImageHandle source,
                                     int row, int col) {
     double sum = 0.0;
 
@@ -266,7 +431,7 @@ public class SimpleImageProcessingModel implements ImageProcessingModel {
         if (i < 0 || i >= imgGrid.length || j < 0 || j >= imgGrid[i].length) {
           //Don't add anything because we're out of bounds
         } else {
-          Map<PixelProperty, Integer> pixelInfo = this.getPixelInfo(imageName, i, j);
+          Map<PixelProperty, Integer> pixelInfo = source.getPixelInfo(i, j);
           sum += pixelInfo.get(p) * 1.0 * kernel[i - row + offset][j - col + offset];
           //System.out.println((i - row + offset) + " " + (j - col + offset));
         }
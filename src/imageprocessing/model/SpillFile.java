@@ -0,0 +1,316 @@
+package imageprocessing.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the pixels of images that were spilled out of memory (see ImageNode) in a scratch file,
+ * so they can be read back when they are needed again. The file is only created once something
+ * is spilled, and the space of entries that are freed is reused: freed extents that touch are
+ * merged, and freed space at the end of the file is given back to the end, so the file never
+ * grows past the most pixels that were spilled at once plus fragmentation. The file is deleted
+ * when the program exits.
+ *
+ * <p>The file measures how fast it writes and reads, so the cost of spilling can be weighed
+ * against recomputing (see ImageNode.evict). It also counts the images that were dropped instead
+ * and recomputed, so all eviction statistics are in one place.</p>
+ */
+final class SpillFile {
+  //The most ints that are copied through the transfer buffer at once.
+  private static final int BUFFER_INTS = 1 << 18;
+
+  //The assumed time to write or read a byte until something was measured, about 1 GB/s.
+  private static final double DEFAULT_NANOS_PER_BYTE = 1.0;
+
+  private final File directory;
+  private FileChannel channel;
+  private ByteBuffer buffer;
+
+  //The end of the used part of the file, and the freed extents before it as {offset, bytes},
+  // sorted by offset. No two extents touch, and none ends at the end.
+  private long end;
+  private final List<long[]> freeExtents;
+
+  private long spills;
+  private long reloads;
+  private long spilledBytes;
+  private long drops;
+  private long recomputes;
+
+  //The bytes written and read so far, and how long that took.
+  private long transferredBytes;
+  private long transferNanos;
+
+  /**
+   * Creates a spill file in the given directory, which is not created until it is first used.
+   *
+   * @param directory The directory for the file, or null for the default temporary directory.
+   */
+  SpillFile(File directory) {
+    this.directory = directory;
+    this.channel = null;
+    this.buffer = null;
+    this.end = 0;
+    this.freeExtents = new ArrayList<long[]>();
+    this.spills = 0;
+    this.reloads = 0;
+    this.spilledBytes = 0;
+    this.drops = 0;
+    this.recomputes = 0;
+    this.transferredBytes = 0;
+    this.transferNanos = 0;
+  }
+
+  /**
+   * Writes pixels into the file.
+   *
+   * @param pixels The pixels to write.
+   * @return The entry to read them back with.
+   * @throws IllegalStateException If the file could not be written.
+   */
+  synchronized Entry write(int[] pixels) throws IllegalStateException {
+    long bytes = 4L * pixels.length;
+    long offset = this.allocate(bytes);
+    long start = System.nanoTime();
+
+    try {
+      for (int i = 0; i < pixels.length; i += BUFFER_INTS) {
+        int count = Math.min(BUFFER_INTS, pixels.length - i);
+        ByteBuffer chunk = this.getBuffer();
+        chunk.asIntBuffer().put(pixels, i, count);
+        chunk.limit(4 * count);
+        long position = offset + 4L * i;
+        while (chunk.hasRemaining()) {
+          position += this.channel.write(chunk, position);
+        }
+      }
+    } catch (IOException e) {
+      this.release(offset, bytes);
+      throw new IllegalStateException("Failed to write to the spill file");
+    }
+
+    this.spills++;
+    this.spilledBytes += bytes;
+    this.measure(bytes, start);
+    return new Entry(offset, pixels.length);
+  }
+
+  /**
+   * Estimates how long writing or reading the given number of bytes takes, from how fast the file
+   * was so far.
+   *
+   * @param bytes The number of bytes.
+   * @return The estimated time in nanoseconds.
+   */
+  synchronized long estimateNanos(long bytes) {
+    double nanosPerByte = this.transferredBytes == 0 ? DEFAULT_NANOS_PER_BYTE
+            : (double) this.transferNanos / this.transferredBytes;
+    return (long) (bytes * nanosPerByte);
+  }
+
+  /**
+   * Records that an image was dropped instead of spilled.
+   */
+  synchronized void recordDrop() {
+    this.drops++;
+  }
+
+  /**
+   * Records that a dropped image was recomputed.
+   */
+  synchronized void recordRecompute() {
+    this.recomputes++;
+  }
+
+  /**
+   * Gets the number of times pixels were dropped instead of spilled.
+   *
+   * @return The number of drops.
+   */
+  synchronized long getDrops() {
+    return this.drops;
+  }
+
+  /**
+   * Gets the number of times dropped pixels were recomputed.
+   *
+   * @return The number of recomputes.
+   */
+  synchronized long getRecomputes() {
+    return this.recomputes;
+  }
+
+  /**
+   * Gets the number of times pixels were written into the file.
+   *
+   * @return The number of spills.
+   */
+  synchronized long getSpills() {
+    return this.spills;
+  }
+
+  /**
+   * Gets the number of times pixels were read back from the file.
+   *
+   * @return The number of reloads.
+   */
+  synchronized long getReloads() {
+    return this.reloads;
+  }
+
+  /**
+   * Gets the number of bytes of pixels that are currently in the file.
+   *
+   * @return The number of bytes.
+   */
+  synchronized long getSpilledBytes() {
+    return this.spilledBytes;
+  }
+
+  //Adds a transfer that started at the given time to the measured speed.
+  private void measure(long bytes, long start) {
+    this.transferredBytes += bytes;
+    this.transferNanos += System.nanoTime() - start;
+  }
+
+  //Finds room for the given number of bytes, in the first freed extent it fits in or at the end
+  // of the file, and creates the file if needed.
+  private long allocate(long bytes) throws IllegalStateException {
+    if (this.channel == null) {
+      try {
+        File file = File.createTempFile("images", ".spill", this.directory);
+        file.deleteOnExit();
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+      } catch (IOException | SecurityException e) {
+        throw new IllegalStateException("Unable to create the spill file");
+      }
+    }
+
+    for (int i = 0; i < this.freeExtents.size(); i++) {
+      long[] extent = this.freeExtents.get(i);
+      if (extent[1] >= bytes) {
+        long offset = extent[0];
+        extent[0] += bytes;
+        extent[1] -= bytes;
+        if (extent[1] == 0) {
+          this.freeExtents.remove(i);
+        }
+        return offset;
+      }
+    }
+
+    long offset = this.end;
+    this.end += bytes;
+    return offset;
+  }
+
+  //Gives an extent back, merging it with the freed extents it touches, and lowers the end if it is
+  // the last part of the file that was in use.
+  private void release(long offset, long bytes) {
+    int index = 0;
+    while (index < this.freeExtents.size() && this.freeExtents.get(index)[0] < offset) {
+      index++;
+    }
+
+    long[] extent = new long[]{offset, bytes};
+    if (index > 0) {
+      long[] previous = this.freeExtents.get(index - 1);
+      if (previous[0] + previous[1] == offset) {
+        previous[1] += bytes;
+        extent = previous;
+        index--;
+      } else {
+        this.freeExtents.add(index, extent);
+      }
+    } else {
+      this.freeExtents.add(index, extent);
+    }
+
+    if (index + 1 < this.freeExtents.size()) {
+      long[] next = this.freeExtents.get(index + 1);
+      if (extent[0] + extent[1] == next[0]) {
+        extent[1] += next[1];
+        this.freeExtents.remove(index + 1);
+      }
+    }
+
+    if (extent[0] + extent[1] == this.end) {
+      this.end = extent[0];
+      this.freeExtents.remove(index);
+    }
+  }
+
+  //Gets the cleared transfer buffer, creating it the first time.
+  private ByteBuffer getBuffer() {
+    if (this.buffer == null) {
+      this.buffer = ByteBuffer.allocateDirect(4 * BUFFER_INTS).order(ByteOrder.nativeOrder());
+    }
+    this.buffer.clear();
+    return this.buffer;
+  }
+
+  /**
+   * Represents pixels that were written into the file.
+   */
+  final class Entry {
+    private final long offset;
+    private final int length;
+
+    private Entry(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Reads the pixels back from the file.
+     *
+     * @return The pixels.
+     * @throws IllegalStateException If the file could not be read.
+     */
+    int[] read() throws IllegalStateException {
+      int[] pixels = new int[this.length];
+
+      synchronized (SpillFile.this) {
+        long start = System.nanoTime();
+        try {
+          for (int i = 0; i < this.length; i += BUFFER_INTS) {
+            int count = Math.min(BUFFER_INTS, this.length - i);
+            ByteBuffer chunk = SpillFile.this.getBuffer();
+            chunk.limit(4 * count);
+            long position = this.offset + 4L * i;
+            while (chunk.hasRemaining()) {
+              int read = SpillFile.this.channel.read(chunk, position);
+              if (read < 0) {
+                throw new IOException("Unexpected end of the spill file");
+              }
+              position += read;
+            }
+            chunk.flip();
+            chunk.asIntBuffer().get(pixels, i, count);
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException("Failed to read from the spill file");
+        }
+        SpillFile.this.reloads++;
+        SpillFile.this.measure(4L * this.length, start);
+      }
+      return pixels;
+    }
+
+    /**
+     * Gives the space of the pixels back to the file. The entry must not be used afterwards.
+     */
+    void free() {
+      synchronized (SpillFile.this) {
+        SpillFile.this.release(this.offset, 4L * this.length);
+        SpillFile.this.spilledBytes -= 4L * this.length;
+      }
+    }
+  }
+}
@@ -0,0 +1,278 @@
+package imageprocessing.model;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Caches the histograms (see Histogram) and the statistics (see ImageStats) of one image of a
+ * library, so each is only computed the first time it is asked for. A cache belongs to one
+ * library entry, and storing an image under a name (by an operation or addImageToLibrary) always
+ * creates a new entry, so a cache never has to be invalidated: the old one goes away with the
+ * image it describes. The statistics are derived from the cached red, green and blue histograms
+ * plus one pass that hashes the pixels.
+ *
+ * <p>The histograms of the result of a flip, brighten or grayscale follow from the histograms of
+ * its source (they are the same, shifted and clamped, or the histogram of the component), so the
+ * models seed the new cache with them (see deriveFrom) instead of counting the result again. Only
+ * histograms the source already has are derived, and the others are counted when needed.</p>
+ */
+final class StatsCache {
+
+  /**
+   * Represents the way a model counts a property of the image of a cache.
+   */
+  interface Counter {
+    /**
+     * Counts how often every value of a property occurs in the image.
+     *
+     * @param property The property.
+     * @return The counts.
+     */
+    long[] count(PixelProperty property);
+  }
+
+  /**
+   * Represents the way the histograms of the result of an operation follow from the histograms of
+   * its source.
+   */
+  interface Derivation {
+    /**
+     * Derives the histogram of a property of the result.
+     *
+     * @param property The property.
+     * @param source   Gets the cached histogram of a property of the source, or null if it is not
+     *                 cached. It must not be changed.
+     * @return The new histogram, or null if it cannot be derived.
+     */
+    long[] derive(PixelProperty property, Function<PixelProperty, long[]> source);
+  }
+
+  /**
+   * The derivation of an operation that only moves pixels, e.g. a flip: every histogram stays the
+   * same.
+   */
+  static final Derivation SAME = (property, source) -> copy(source.apply(property));
+
+  //Mixes the hash of every row with its index, so swapping rows changes the hash.
+  private static final long ROW_MULTIPLIER = 0x9E3779B97F4A7C15L;
+  private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  //Indexed by the ordinal of the property, null until counted.
+  private final long[][] histograms;
+  private ImageStats stats;
+
+  /**
+   * Creates an empty cache.
+   */
+  StatsCache() {
+    this.histograms = new long[PixelProperty.values().length][];
+    this.stats = null;
+  }
+
+  /**
+   * Gets a copy of the histogram of a property, counting it if it is not cached yet.
+   *
+   * @param property The property.
+   * @param counter  The way to count it.
+   * @return The counts, which the caller may change.
+   * @throws IllegalArgumentException If the property is null.
+   */
+  synchronized long[] getHistogram(PixelProperty property, Counter counter)
+          throws IllegalArgumentException {
+    return this.histogram(property, counter).clone();
+  }
+
+  /**
+   * Gets the statistics of the image, computing them if they are not cached yet. The image is
+   * only asked for when they are computed, so cached statistics never read any pixels.
+   *
+   * @param image     The way to get the image.
+   * @param scheduler The scheduler to hash the rows of the image with.
+   * @param counter   The way to count the channels of the image.
+   * @return The statistics.
+   */
+  synchronized ImageStats getStats(Supplier<ImageHandle> image, BandScheduler scheduler,
+                                   Counter counter) {
+    if (this.stats != null) {
+      return this.stats;
+    }
+
+    int[] min = new int[3];
+    int[] max = new int[3];
+    double[] mean = new double[3];
+    PixelProperty[] channels = new PixelProperty[]{PixelProperty.Red, PixelProperty.Green,
+        PixelProperty.Blue};
+    for (int c = 0; c < 3; c++) {
+      long[] counts = this.histogram(channels[c], counter);
+      long total = 0;
+      long sum = 0;
+      min[c] = -1;
+      for (int value = 0; value < counts.length; value++) {
+        if (counts[value] > 0) {
+          min[c] = min[c] == -1 ? value : min[c];
+          max[c] = value;
+          total += counts[value];
+          sum += counts[value] * value;
+        }
+      }
+      mean[c] = (double) sum / total;
+    }
+
+    ImageHandle handle = image.get();
+    this.stats = new ImageStats(handle.getWidth(), handle.getHeight(), handle.getMaxValue(), min,
+            max, mean, contentHash(handle, scheduler));
+    return this.stats;
+  }
+
+  /**
+   * Seeds this cache with the histograms that can be derived from the cached histograms of the
+   * source of the operation that computed the image, so they are never counted.
+   *
+   * @param source     The cache of the source image.
+   * @param derivation How the histograms follow from those of the source.
+   */
+  void deriveFrom(StatsCache source, Derivation derivation) {
+    PixelProperty[] properties = PixelProperty.values();
+    long[][] derived = new long[properties.length][];
+    for (PixelProperty property : properties) {
+      derived[property.ordinal()] = derivation.derive(property, source::cached);
+    }
+
+    synchronized (this) {
+      for (int i = 0; i < derived.length; i++) {
+        if (this.histograms[i] == null) {
+          this.histograms[i] = derived[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the derivation of brightening by an amount: every value v of a channel becomes
+   * v + amount, clamped to 0 and the max value, which moves its count. The value of a pixel is
+   * its largest channel, which moves the same way. Intensity and luma depend on how each channel
+   * was clamped, so they are counted.
+   *
+   * @param amount   The amount to add.
+   * @param maxValue The max value of the image.
+   * @return The derivation.
+   */
+  static Derivation brighten(int amount, int maxValue) {
+    return (property, source) -> {
+      switch (property) {
+        case Red:
+        case Green:
+        case Blue:
+        case Value:
+          long[] counts = source.apply(property);
+          if (counts == null) {
+            return null;
+          }
+          long[] result = new long[counts.length];
+          for (int v = 0; v < counts.length; v++) {
+            int value = v + amount;
+            result[value < 0 ? 0 : Math.min(value, maxValue)] += counts[v];
+          }
+          return result;
+        case Alpha:
+        case MaxValue:
+          return copy(source.apply(property));
+        default:
+          return null;
+      }
+    };
+  }
+
+  /**
+   * Gets the derivation of a grayscale of a component: every channel of a pixel becomes its
+   * component, so the channels, value, intensity and luma of the result are all counted by the
+   * histogram of the component.
+   *
+   * @param component The component.
+   * @return The derivation.
+   */
+  static Derivation grayscale(PixelProperty component) {
+    return (property, source) -> {
+      switch (component) {
+        case Red:
+        case Green:
+        case Blue:
+        case Value:
+        case Intensity:
+        case Luma:
+          break;
+        default:
+          return null;
+      }
+      return copy(source.apply(property == PixelProperty.Alpha
+              || property == PixelProperty.MaxValue ? property : component));
+    };
+  }
+
+  //Copies a histogram, or returns null if there is none.
+  private static long[] copy(long[] counts) {
+    return counts == null ? null : counts.clone();
+  }
+
+  //Gets the cached histogram of a property, or null if it is not cached.
+  private synchronized long[] cached(PixelProperty property) {
+    return this.histograms[property.ordinal()];
+  }
+
+  //Gets the cached histogram of a property, counting it first if needed.
+  private long[] histogram(PixelProperty property, Counter counter)
+          throws IllegalArgumentException {
+    if (property == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+    if (this.histograms[property.ordinal()] == null) {
+      this.histograms[property.ordinal()] = counter.count(property);
+    }
+    return this.histograms[property.ordinal()];
+  }
+
+  /**
+   * Hashes the size, the max value and the packed pixels of an image. Every row is hashed on its
+   * own (with FNV-1a over its pixels) and mixed with its index, and the rows are added up, so
+   * bands of rows can be hashed in any order.
+   *
+   * @param image     The image.
+   * @param scheduler The scheduler to run bands with.
+   * @return The hash.
+   */
+  static long contentHash(ImageHandle image, BandScheduler scheduler) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    long[] sum = new long[1];
+
+    scheduler.run(width, height, (fromRow, toRow) -> {
+      int[] row = new int[width];
+      long partial = 0;
+      for (int i = fromRow; i < toRow; i++) {
+        image.getPixels(i, 0, width, 1, row, 0, width);
+        long hash = FNV_OFFSET;
+        for (int j = 0; j < width; j++) {
+          hash = (hash ^ row[j]) * FNV_PRIME;
+        }
+        partial += mix(hash + i * ROW_MULTIPLIER);
+      }
+
+      synchronized (sum) {
+        sum[0] += partial;
+      }
+    });
+
+    return mix(sum[0] ^ mix(((long) width << 32) | height) ^ image.getMaxValue());
+  }
+
+  //Scrambles the bits of a value (the finalizer of SplitMix64).
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,206 @@
+package imageprocessing.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the tiles of TiledRasters in a scratch file instead of on the heap, so images can be much
+ * larger than the heap. The file is divided into slots of one full tile each and is memory mapped
+ * a large segment at a time. Only a bounded working set of tiles is resident on the heap: reading
+ * a tile that is not resident copies it out of the mapping, and once there are too many resident
+ * tiles the least recently used one is dropped, after being copied into the mapping if it was
+ * written since. The operating system decides which parts of the mapping are in memory.
+ *
+ * <p>Slots of images that are dropped are reused. The scratch file is deleted when the program
+ * exits.</p>
+ */
+final class TilePager {
+  //The most bytes of the scratch file that are mapped as one buffer.
+  private static final long SEGMENT_SIZE = 1 << 30;
+
+  private final FileChannel channel;
+  private final int slotInts;
+  private final int slotsPerSegment;
+  private final int residentTiles;
+
+  private final List<IntBuffer> segments;
+  private final Deque<Integer> freeSlots;
+  private int nextSlot;
+
+  //The resident tiles by slot, least recently used first.
+  private final LinkedHashMap<Integer, Resident> resident;
+
+  /**
+   * Creates a pager with a new scratch file.
+   *
+   * @param directory     The directory to create the scratch file in, or null for the default
+   *                      temporary directory.
+   * @param tileSize      The width and height of a tile.
+   * @param residentTiles The most tiles that are resident on the heap at once.
+   * @throws IllegalStateException If the scratch file could not be created.
+   */
+  TilePager(File directory, int tileSize, int residentTiles) throws IllegalStateException {
+    this.slotInts = tileSize * tileSize;
+    this.slotsPerSegment = (int) Math.max(1, SEGMENT_SIZE / (4L * this.slotInts));
+    this.residentTiles = residentTiles;
+    this.segments = new ArrayList<IntBuffer>();
+    this.freeSlots = new ArrayDeque<Integer>();
+    this.nextSlot = 0;
+    this.resident = new LinkedHashMap<Integer, Resident>(16, 0.75f, true);
+
+    try {
+      File file = File.createTempFile("tiles", ".scratch", directory);
+      file.deleteOnExit();
+      this.channel = new RandomAccessFile(file, "rw").getChannel();
+    } catch (IOException | SecurityException e) {
+      throw new IllegalStateException("Unable to create the scratch file");
+    }
+  }
+
+  /**
+   * Creates a store for the tiles of one image, which keeps them in this pager.
+   *
+   * @param tiles The number of tiles of the image.
+   * @return The store.
+   */
+  TileStore createStore(int tiles) {
+    return new PagedStore(tiles);
+  }
+
+  //Gets the pixels of the tile in a slot, making it resident.
+  private synchronized int[] read(int slot, int length) throws IllegalStateException {
+    Resident tile = this.resident.get(slot);
+    if (tile != null) {
+      return tile.pixels;
+    }
+
+    int[] pixels = new int[length];
+    this.locate(slot).get(pixels);
+    this.makeResident(slot, new Resident(pixels, false));
+    return pixels;
+  }
+
+  //Sets the pixels of the tile in a slot. They are only copied into the mapping when evicted.
+  private synchronized void write(int slot, int[] pixels) throws IllegalStateException {
+    this.makeResident(slot, new Resident(pixels, true));
+  }
+
+  private synchronized int allocate() {
+    return this.freeSlots.isEmpty() ? this.nextSlot++ : this.freeSlots.pop();
+  }
+
+  private synchronized void release(int slot) {
+    this.resident.remove(slot);
+    this.freeSlots.push(slot);
+  }
+
+  //Adds a resident tile, then evicts the least recently used tiles while there are too many.
+  private void makeResident(int slot, Resident tile) throws IllegalStateException {
+    this.resident.put(slot, tile);
+
+    Iterator<Map.Entry<Integer, Resident>> oldest = this.resident.entrySet().iterator();
+    while (this.resident.size() > this.residentTiles) {
+      Map.Entry<Integer, Resident> entry = oldest.next();
+      if (entry.getValue().dirty) {
+        this.locate(entry.getKey()).put(entry.getValue().pixels);
+      }
+      oldest.remove();
+    }
+  }
+
+  //Gets a buffer positioned at the start of a slot, mapping its segment if needed.
+  private IntBuffer locate(int slot) throws IllegalStateException {
+    int segment = slot / this.slotsPerSegment;
+    long segmentBytes = 4L * this.slotInts * this.slotsPerSegment;
+
+    try {
+      while (this.segments.size() <= segment) {
+        this.segments.add(this.channel.map(FileChannel.MapMode.READ_WRITE,
+                this.segments.size() * segmentBytes, segmentBytes)
+                .order(ByteOrder.nativeOrder()).asIntBuffer());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to map the scratch file");
+    }
+
+    IntBuffer buffer = this.segments.get(segment).duplicate();
+    buffer.position((slot % this.slotsPerSegment) * this.slotInts);
+    return buffer;
+  }
+
+  /**
+   * Represents a tile that is resident on the heap.
+   */
+  private static final class Resident {
+    private final int[] pixels;
+
+    //Whether the tile was written since it was last copied into the mapping.
+    private final boolean dirty;
+
+    private Resident(int[] pixels, boolean dirty) {
+      this.pixels = pixels;
+      this.dirty = dirty;
+    }
+  }
+
+  /**
+   * Represents the tiles of one image, each in its own slot of the scratch file.
+   */
+  private final class PagedStore implements TileStore {
+    //-1 until the tile is written.
+    private final int[] slots;
+    private final int[] lengths;
+
+    private PagedStore(int tiles) {
+      this.slots = new int[tiles];
+      this.lengths = new int[tiles];
+      Arrays.fill(this.slots, -1);
+    }
+
+    @Override
+    public int[] read(int index) {
+      int slot;
+      int length;
+      synchronized (this) {
+        slot = this.slots[index];
+        length = this.lengths[index];
+      }
+      return TilePager.this.read(slot, length);
+    }
+
+    @Override
+    public void write(int index, int[] pixels) {
+      int slot;
+      synchronized (this) {
+        if (this.slots[index] == -1) {
+          this.slots[index] = TilePager.this.allocate();
+        }
+        this.lengths[index] = pixels.length;
+        slot = this.slots[index];
+      }
+      TilePager.this.write(slot, pixels);
+    }
+
+    @Override
+    public synchronized void free() {
+      for (int i = 0; i < this.slots.length; i++) {
+        if (this.slots[i] != -1) {
+          TilePager.this.release(this.slots[i]);
+          this.slots[i] = -1;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package imageprocessing.model;
+
+/**
+ * Represents where the tiles of a TiledRaster are kept. A tile is written once, as a whole, and
+ * is never changed afterwards, so an array that was read may be kept and shared, but must not be
+ * changed.
+ */
+interface TileStore {
+
+  /**
+   * Gets the pixels of a tile, which must have been written.
+   *
+   * @param index The index of the tile.
+   * @return The pixels of the tile.
+   */
+  int[] read(int index);
+
+  /**
+   * Sets the pixels of a tile. The store takes the array, so the caller must not change it
+   * afterwards.
+   *
+   * @param index  The index of the tile.
+   * @param pixels The pixels of the tile.
+   */
+  void write(int index, int[] pixels);
+
+  /**
+   * Lets go of every tile. The store must not be used afterwards.
+   */
+  void free();
+}
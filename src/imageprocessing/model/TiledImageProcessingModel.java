@@ -0,0 +1,499 @@
+package imageprocessing.model;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Represents an implementation for an image processing model that stores every image as a grid
+ * of square tiles (see TiledRaster), 256x256 pixels by default, instead of one contiguous array.
+ * This is meant for very large images: no image needs an array of all its pixels, and every
+ * operation works one tile at a time. Rows of tiles are spread over the threads of a pool. The
+ * results are exactly the same as with the SimpleImageProcessingModel, and channel and max values
+ * must be between 0 and 255.
+ *
+ * <p>Filters need the pixels around a tile as well. Every tile is filtered together with a halo
+ * of as many rows and cols of its neighboring tiles as the kernel reaches, so its pixels see the
+ * same neighbors they would in the whole image.</p>
+ *
+ * <p>The tiles are kept on the heap, or with the paged constructor in a memory mapped scratch
+ * file of which only a bounded working set of tiles is on the heap (see TilePager). Loaders
+ * stream images into it a row of tiles at a time, and saving reads them back the same way, so a
+ * paged model can work on images far larger than the heap.</p>
+ */
+public class TiledImageProcessingModel implements ImageProcessingModel {
+
+  private static final int DEFAULT_TILE_SIZE = 256;
+
+  private final Map<String, TiledRaster> imageCollection;
+  private final BandScheduler scheduler;
+  private final int tileSize;
+
+  //Null if the tiles are kept on the heap.
+  private final TilePager pager;
+
+  /**
+   * Default constructor: Creates a model with 256x256 tiles that runs every operation on the
+   * calling thread. The image collection is initialized.
+   */
+  public TiledImageProcessingModel() {
+    this(1);
+  }
+
+  /**
+   * Creates a model with 256x256 tiles that runs rows of tiles on a new ForkJoinPool with the
+   * given parallelism. A parallelism of 1 runs serially. The output is identical for any
+   * parallelism.
+   *
+   * @param parallelism The number of threads to use.
+   * @throws IllegalArgumentException If the parallelism is less than 1.
+   */
+  public TiledImageProcessingModel(int parallelism) throws IllegalArgumentException {
+    this(parallelism, DEFAULT_TILE_SIZE);
+  }
+
+  /**
+   * Creates a model with tiles of the given size that runs rows of tiles on a new ForkJoinPool
+   * with the given parallelism. A parallelism of 1 runs serially. The output is identical for any
+   * parallelism and tile size.
+   *
+   * @param parallelism The number of threads to use.
+   * @param tileSize    The width and height of a tile.
+   * @throws IllegalArgumentException If the parallelism or the tile size is less than 1.
+   */
+  public TiledImageProcessingModel(int parallelism, int tileSize)
+          throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("The tile size must be at least 1");
+    }
+
+    this.imageCollection = new HashMap<String, TiledRaster>();
+    this.scheduler = new BandScheduler(parallelism == 1 ? null : new ForkJoinPool(parallelism));
+    this.tileSize = tileSize;
+    this.pager = null;
+  }
+
+  /**
+   * Creates a model whose tiles are paged to a scratch file, of which at most the given number
+   * of tiles is on the heap at once; the least recently used tiles are dropped from the heap
+   * first. Otherwise it is the same as the model with the given parallelism and tile size. The
+   * scratch file is deleted when the program exits.
+   *
+   * @param parallelism      The number of threads to use.
+   * @param tileSize         The width and height of a tile.
+   * @param residentTiles    The most tiles that are on the heap at once.
+   * @param scratchDirectory The directory for the scratch file, or null for the default
+   *                         temporary directory.
+   * @throws IllegalArgumentException If the parallelism, the tile size or the number of resident
+   *                                  tiles is less than 1, or a tile would be too large.
+   * @throws IllegalStateException    If the scratch file could not be created.
+   */
+  public TiledImageProcessingModel(int parallelism, int tileSize, int residentTiles,
+                                   String scratchDirectory)
+          throws IllegalArgumentException, IllegalStateException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    if (tileSize < 1 || (long) tileSize * tileSize * 4 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The tile size must be between 1 and 23170");
+    }
+    if (residentTiles < 1) {
+      throw new IllegalArgumentException("At least one tile must be resident");
+    }
+
+    this.imageCollection = new HashMap<String, TiledRaster>();
+    this.scheduler = new BandScheduler(parallelism == 1 ? null : new ForkJoinPool(parallelism));
+    this.tileSize = tileSize;
+    this.pager = new TilePager(scratchDirectory == null ? null : new File(scratchDirectory),
+            tileSize, residentTiles);
+  }
+
+  @Override
+  public void addImageToLibrary(String imageName, Pixel[][] imgGrid)
+          throws IllegalArgumentException {
+
+    if (imageName == null || imageName.equals("") || imgGrid == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+
+    PackedRaster raster = PackedRaster.fromGrid(imgGrid);
+    this.addImageToLibrary(imageName, raster.width, raster.height, raster.maxValue,
+            raster.pixels);
+  }
+
+  @Override
+  public void addImageToLibrary(String imageName, int width, int height, int maxValue,
+                                int[] pixels) throws IllegalArgumentException {
+    PackedRaster.checkImage(imageName, width, height, maxValue, pixels);
+
+    TiledRaster raster = new TiledRaster(width, height, maxValue, this.tileSize, this.pager);
+    for (int tileRow = 0; tileRow < raster.tilesDown; tileRow++) {
+      raster.writeTileRow(tileRow, pixels, tileRow * this.tileSize * width);
+    }
+    this.store(imageName, raster);
+  }
+
+  //The pixels are copied into tiles anyway, so there is nothing to gain from the array.
+  @Override
+  public void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                                     int[] pixels) throws IllegalArgumentException {
+    this.addImageToLibrary(imageName, width, height, maxValue, pixels);
+  }
+
+  //Reads the image one row of tiles at a time, so only that band is ever in one array.
+  @Override
+  public void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                                   PixelSource source) throws IllegalArgumentException {
+    if (imageName == null || imageName.equals("") || source == null) {
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid image dimensions");
+    }
+    if (maxValue < 0 || maxValue > 255) {
+      throw new IllegalArgumentException("The max value must be between 0 and 255");
+    }
+    if ((long) width * this.tileSize > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("The image is too wide for its rows of tiles");
+    }
+
+    TiledRaster raster = new TiledRaster(width, height, maxValue, this.tileSize, this.pager);
+    int[] band = new int[width * raster.tileHeight(0)];
+    try {
+      for (int tileRow = 0; tileRow < raster.tilesDown; tileRow++) {
+        CancellationToken.checkCurrent();
+        int top = tileRow * this.tileSize;
+        source.readRows(top, top + raster.tileHeight(tileRow), band);
+        raster.writeTileRow(tileRow, band, 0);
+      }
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      raster.free();
+      throw e;
+    }
+    this.store(imageName, raster);
+  }
+
+  @Override
+  public int getWidth(String imageName) throws IllegalArgumentException {
+    return this.getRaster(imageName).width;
+  }
+
+  @Override
+  public int getHeight(String imageName) throws IllegalArgumentException {
+    return this.getRaster(imageName).height;
+  }
+
+  //Every tile is copied from the mirrored rectangle of the source, then mirrored in place.
+  @Override
+  public void flip(FlipDirection flip, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    boolean horizontal = flip.equals(FlipDirection.Horizontal);
+    boolean vertical = flip.equals(FlipDirection.Vertical);
+
+    TiledRaster result = this.mapTiles(source, source.blankCopy(),
+        (tileRow, tileCol, row, col, width, height, tile) -> {
+          source.getPixels(vertical ? source.height - row - height : row,
+                  horizontal ? source.width - col - width : col, width, height, tile, 0, width);
+          mirror(tile, width, height, horizontal, vertical);
+        });
+    result.stats.deriveFrom(source.stats, StatsCache.SAME);
+    this.store(newName, result);
+  }
+
+  @Override
+  public void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    PackedRaster.checkCrop(source.width, source.height, row, col, width, height);
+
+    TiledRaster result = new TiledRaster(width, height, source.maxValue, this.tileSize,
+            this.pager);
+    this.store(newName, this.mapTiles(source, result,
+        (tileRow, tileCol, tileTop, tileLeft, tileWidth, tileHeight, tile) ->
+            source.getPixels(row + tileTop, col + tileLeft, tileWidth, tileHeight, tile, 0,
+                    tileWidth)));
+  }
+
+  @Override
+  public void brighten(int amount, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    this.applyPointOp(LookupTable.brighten(amount, source.maxValue), source, newName,
+            StatsCache.brighten(amount, source.maxValue));
+  }
+
+  @Override
+  public void grayscale(PixelProperty component, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    this.applyPointOp((in, out, from, to) ->
+            LookupTable.applyGrayscale(component, source.maxValue, in, out, from, to),
+            source, newName, StatsCache.grayscale(component));
+  }
+
+  //Filters every tile together with its halo, and keeps only the filtered tile.
+  @Override
+  public void applyFilter(double[][] kernel, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    Convolution convolution = new Convolution(kernel);
+    int radius = convolution.radius();
+
+    this.store(newName, this.mapTiles(source, source.blankCopy(),
+        (tileRow, tileCol, row, col, width, height, tile) -> {
+          int top = Math.max(0, row - radius);
+          int left = Math.max(0, col - radius);
+          int haloWidth = Math.min(source.width, col + width + radius) - left;
+          int haloHeight = Math.min(source.height, row + height + radius) - top;
+
+          PackedRaster halo = new PackedRaster(haloWidth, haloHeight, source.maxValue);
+          source.getPixels(top, left, haloWidth, haloHeight, halo.pixels, 0, haloWidth);
+          PackedRaster filtered = halo.blankCopy();
+          convolution.apply(halo, filtered, row - top, row - top + height);
+
+          for (int i = 0; i < height; i++) {
+            System.arraycopy(filtered.pixels, (row - top + i) * haloWidth + col - left,
+                    tile, i * width, width);
+          }
+        }));
+  }
+
+  @Override
+  public void colorTransformation(double[][] transformation, String imageName, String newName)
+          throws IllegalArgumentException {
+    TiledRaster source = this.getRaster(imageName);
+    this.applyPointOp(AffineColorOp.transformation(transformation), source, newName, null);
+  }
+
+  @Override
+  public ImageHandle getImage(String imageName) throws IllegalArgumentException {
+    return new TiledHandle(this.getRaster(imageName));
+  }
+
+  @Override
+  public Map<PixelProperty, Integer> getPixelInfo(String imageName, int row, int col)
+          throws IllegalArgumentException {
+    return this.getImage(imageName).getPixelInfo(row, col);
+  }
+
+  @Override
+  public int getMaxValue(String imageName) throws IllegalArgumentException {
+    return this.getRaster(imageName).maxValue;
+  }
+
+  @Override
+  public void getPixels(String imageName, int row, int col, int width, int height,
+                        int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    this.getImage(imageName).getPixels(row, col, width, height, dest, offset, scanline);
+  }
+
+  @Override
+  public void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                         int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    this.getImage(imageName).getChannel(property, row, col, width, height, dest, offset,
+            scanline);
+  }
+
+  @Override
+  public long[] getHistogram(String imageName, PixelProperty property)
+          throws IllegalArgumentException {
+    TiledRaster raster = this.getRaster(imageName);
+    return raster.stats.getHistogram(property, p -> this.countTiles(raster, p));
+  }
+
+  @Override
+  public ImageStats getStats(String imageName) throws IllegalArgumentException {
+    TiledRaster raster = this.getRaster(imageName);
+    return raster.stats.getStats(() -> new TiledHandle(raster), this.scheduler,
+            p -> this.countTiles(raster, p));
+  }
+
+  //Counts every tile into the partial histogram of its row of tiles, so each tile is read once.
+  private long[] countTiles(TiledRaster raster, PixelProperty property) {
+    long[] counts = new long[Histogram.bins(raster.maxValue)];
+    int pixelsPerRow = (int) Math.min(Integer.MAX_VALUE / 2,
+            (long) raster.width * this.tileSize);
+    this.scheduler.run(pixelsPerRow, raster.tilesDown, (fromRow, toRow) -> {
+      long[] partial = new long[counts.length];
+      for (int tileRow = fromRow; tileRow < toRow; tileRow++) {
+        for (int tileCol = 0; tileCol < raster.tilesAcross; tileCol++) {
+          int[] tile = raster.readTile(tileRow, tileCol);
+          Histogram.countPacked(tile, 0, tile.length, raster.maxValue, property, partial);
+        }
+      }
+      Histogram.merge(counts, partial);
+    });
+    return counts;
+  }
+
+  /**
+   * Represents a handle (see ImageHandle) to an image of this model, which reads its tiles
+   * directly after checking the bounds.
+   */
+  private static final class TiledHandle implements ImageHandle {
+    private final TiledRaster raster;
+
+    private TiledHandle(TiledRaster raster) {
+      this.raster = raster;
+    }
+
+    @Override
+    public int getWidth() {
+      return this.raster.width;
+    }
+
+    @Override
+    public int getHeight() {
+      return this.raster.height;
+    }
+
+    @Override
+    public int getMaxValue() {
+      return this.raster.maxValue;
+    }
+
+    @Override
+    public Map<PixelProperty, Integer> getPixelInfo(int row, int col)
+            throws IllegalArgumentException {
+      if (row < 0 || row >= this.raster.height || col < 0 || col >= this.raster.width) {
+        throw new IllegalArgumentException("Row or col is out of bounds");
+      }
+      return this.raster.getPixelInfo(row, col);
+    }
+
+    @Override
+    public void getPixels(int row, int col, int width, int height, int[] dest, int offset,
+                          int scanline) throws IllegalArgumentException {
+      PackedRaster.checkRegion(this.raster.width, this.raster.height, row, col, width, height,
+              dest, offset, scanline);
+      this.raster.getPixels(row, col, width, height, dest, offset, scanline);
+    }
+
+    @Override
+    public void getChannel(PixelProperty property, int row, int col, int width, int height,
+                           int[] dest, int offset, int scanline)
+            throws IllegalArgumentException {
+      PackedRaster.checkRegion(this.raster.width, this.raster.height, row, col, width, height,
+              dest, offset, scanline);
+      this.raster.getChannel(property, row, col, width, height, dest, offset, scanline);
+    }
+  }
+
+  /**
+   * Represents the part of an operation that computes one tile of the result.
+   */
+  private interface TileTask {
+    /**
+     * Fills a tile of the result, which is the rectangle with the given top left corner and size.
+     * The tile starts out empty.
+     *
+     * @param tileRow The row of the tile.
+     * @param tileCol The col of the tile.
+     * @param row     The top row of the tile in the image.
+     * @param col     The left col of the tile in the image.
+     * @param width   The width of the tile.
+     * @param height  The height of the tile.
+     * @param tile    The pixels of the tile to fill.
+     */
+    void run(int tileRow, int tileCol, int row, int col, int width, int height, int[] tile);
+  }
+
+  //Runs a task on every tile of the result, spreading rows of tiles over the pool. Every tile is
+  // written to the result once it is filled. If the work is cancelled (see CancellationToken),
+  // which is checked before every tile, the result is freed.
+  private TiledRaster mapTiles(TiledRaster source, TiledRaster result, TileTask task)
+          throws CancellationException {
+    //Each row of tiles counts as one row of the scheduler, with every pixel of it as its width.
+    int pixelsPerRow = (int) Math.min(Integer.MAX_VALUE / 2,
+            (long) source.width * this.tileSize);
+    CancellationToken token = CancellationToken.current();
+
+    try {
+      this.scheduler.run(pixelsPerRow, result.tilesDown, (fromRow, toRow) -> {
+        for (int tileRow = fromRow; tileRow < toRow; tileRow++) {
+          for (int tileCol = 0; tileCol < result.tilesAcross; tileCol++) {
+            if (token != null) {
+              token.check();
+            }
+            int width = result.tileWidth(tileCol);
+            int height = result.tileHeight(tileRow);
+            int[] tile = new int[width * height];
+            task.run(tileRow, tileCol, tileRow * this.tileSize, tileCol * this.tileSize, width,
+                    height, tile);
+            result.writeTile(tileRow, tileCol, tile);
+          }
+        }
+      });
+    } catch (CancellationException e) {
+      result.free();
+      throw e;
+    }
+    return result;
+  }
+
+  //Runs a point operation on every tile. The source and result have the same tiles. The
+  // histograms of the result are derived from those of the source unless the derivation is null.
+  private void applyPointOp(PointOp op, TiledRaster source, String newName,
+                            StatsCache.Derivation derivation) {
+    TiledRaster result = this.mapTiles(source, source.blankCopy(),
+        (tileRow, tileCol, row, col, width, height, tile) ->
+            op.apply(source.readTile(tileRow, tileCol), tile, 0, tile.length));
+    if (derivation != null) {
+      result.stats.deriveFrom(source.stats, derivation);
+    }
+    this.store(newName, result);
+  }
+
+  //Reverses the rows and/or the cols of a row major block of pixels in place.
+  private static void mirror(int[] pixels, int width, int height, boolean horizontal,
+                             boolean vertical) {
+    if (horizontal) {
+      for (int i = 0; i < height; i++) {
+        for (int left = i * width, right = left + width - 1; left < right; left++, right--) {
+          int temp = pixels[left];
+          pixels[left] = pixels[right];
+          pixels[right] = temp;
+        }
+      }
+    }
+
+    if (vertical) {
+      int[] temp = new int[width];
+      for (int top = 0, bottom = height - 1; top < bottom; top++, bottom--) {
+        System.arraycopy(pixels, top * width, temp, 0, width);
+        System.arraycopy(pixels, bottom * width, pixels, top * width, width);
+        System.arraycopy(temp, 0, pixels, bottom * width, width);
+      }
+    }
+  }
+
+  //Gets the raster of an image, throws an IllegalArgumentException if it does not exist.
+  private TiledRaster getRaster(String imageName) throws IllegalArgumentException {
+    TiledRaster raster = imageName == null ? null
+            : this.imageCollection.get(imageName.toLowerCase());
+    if (raster == null) {
+      throw new IllegalArgumentException("Model does not contain this image");
+    }
+    return raster;
+  }
+
+  //Stores a result under the new name, which must not be empty, and lets go of the tiles of the
+  // image it replaces.
+  private void store(String newName, TiledRaster result) throws IllegalArgumentException {
+    if (newName == null || newName.equals("")) {
+      result.free();
+      throw new IllegalArgumentException("Parameters cannot be null");
+    }
+    TiledRaster previous = this.imageCollection.put(newName.toLowerCase(), result);
+    if (previous != null) {
+      previous.free();
+    }
+  }
+}
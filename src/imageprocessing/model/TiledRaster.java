@@ -0,0 +1,222 @@
+package imageprocessing.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents the pixels of one image as a grid of square tiles of packed ARGB values (see
+ * PackedRaster), instead of one contiguous array. Every tile is its own small array, so images
+ * far larger than the largest possible array can be stored, and nothing needs one huge
+ * allocation. Tiles are numbered row major, and the pixels of a tile are row major within it.
+ * Tiles in the last col and row are cut to the size of the image.
+ *
+ * <p>Tiles are kept in a TileStore: on the heap, or paged to a scratch file by a TilePager. Every
+ * tile is written once, as a whole, before it is read.</p>
+ */
+final class TiledRaster {
+  final int width;
+  final int height;
+  final int maxValue;
+  final int tileSize;
+  final int tilesAcross;
+  final int tilesDown;
+
+  //The cached histograms and statistics of the tiles, which never change once written.
+  final StatsCache stats;
+
+  //Null if the tiles are on the heap.
+  private final TilePager pager;
+  private final TileStore tiles;
+
+  /**
+   * Creates a raster with the given dimensions whose tiles still have to be written.
+   *
+   * @param width    The width of the image.
+   * @param height   The height of the image.
+   * @param maxValue The max value of a color channel.
+   * @param tileSize The width and height of a tile.
+   * @param pager    The pager to keep the tiles in, or null to keep them on the heap.
+   */
+  TiledRaster(int width, int height, int maxValue, int tileSize, TilePager pager) {
+    this.width = width;
+    this.height = height;
+    this.maxValue = maxValue;
+    this.tileSize = tileSize;
+    this.tilesAcross = (width + tileSize - 1) / tileSize;
+    this.tilesDown = (height + tileSize - 1) / tileSize;
+    this.pager = pager;
+    this.stats = new StatsCache();
+
+    int count = this.tilesAcross * this.tilesDown;
+    this.tiles = pager == null ? new HeapStore(count) : pager.createStore(count);
+  }
+
+  /**
+   * Creates a raster with the same dimensions, max value, tiles and pager as this one, whose
+   * tiles still have to be written.
+   *
+   * @return The new raster.
+   */
+  TiledRaster blankCopy() {
+    return new TiledRaster(this.width, this.height, this.maxValue, this.tileSize, this.pager);
+  }
+
+  /**
+   * Gets the width of the tiles in a col of tiles.
+   *
+   * @param tileCol The col of tiles.
+   * @return The width.
+   */
+  int tileWidth(int tileCol) {
+    return Math.min(this.tileSize, this.width - tileCol * this.tileSize);
+  }
+
+  /**
+   * Gets the height of the tiles in a row of tiles.
+   *
+   * @param tileRow The row of tiles.
+   * @return The height.
+   */
+  int tileHeight(int tileRow) {
+    return Math.min(this.tileSize, this.height - tileRow * this.tileSize);
+  }
+
+  /**
+   * Gets the pixels of a tile, which must not be changed.
+   *
+   * @param tileRow The row of the tile.
+   * @param tileCol The col of the tile.
+   * @return The pixels of the tile, row major.
+   */
+  int[] readTile(int tileRow, int tileCol) {
+    return this.tiles.read(tileRow * this.tilesAcross + tileCol);
+  }
+
+  /**
+   * Sets the pixels of a tile. The raster takes the array, so it must not be changed afterwards.
+   *
+   * @param tileRow The row of the tile.
+   * @param tileCol The col of the tile.
+   * @param pixels  The pixels of the tile, row major.
+   */
+  void writeTile(int tileRow, int tileCol, int[] pixels) {
+    this.tiles.write(tileRow * this.tilesAcross + tileCol, pixels);
+  }
+
+  /**
+   * Sets every tile of a row of tiles from the rows of the image it covers.
+   *
+   * @param tileRow The row of tiles.
+   * @param rows    The packed pixels of the rows, row major with the width of the image.
+   * @param offset  The index of the first pixel of the rows.
+   */
+  void writeTileRow(int tileRow, int[] rows, int offset) {
+    int height = this.tileHeight(tileRow);
+    for (int tileCol = 0; tileCol < this.tilesAcross; tileCol++) {
+      int width = this.tileWidth(tileCol);
+      int[] tile = new int[width * height];
+      for (int i = 0; i < height; i++) {
+        System.arraycopy(rows, offset + i * this.width + tileCol * this.tileSize, tile,
+                i * width, width);
+      }
+      this.writeTile(tileRow, tileCol, tile);
+    }
+  }
+
+  /**
+   * Lets go of the tiles of this raster. It must not be used afterwards.
+   */
+  void free() {
+    this.tiles.free();
+  }
+
+  /**
+   * Copies a rectangle of this raster into dest as packed ARGB values. Assumes the region was
+   * checked.
+   */
+  void getPixels(int row, int col, int width, int height, int[] dest, int offset, int scanline) {
+    //Rows are copied one piece of a tile at a time, reading every tile once per band of rows it
+    // covers.
+    for (int top = row; top < row + height; ) {
+      int tileRow = top / this.tileSize;
+      int bottom = Math.min(row + height, (tileRow + 1) * this.tileSize);
+
+      for (int c = col; c < col + width; ) {
+        int tileCol = c / this.tileSize;
+        int tileWidth = this.tileWidth(tileCol);
+        int colInTile = c % this.tileSize;
+        int count = Math.min(col + width - c, tileWidth - colInTile);
+        int[] tile = this.readTile(tileRow, tileCol);
+
+        for (int r = top; r < bottom; r++) {
+          System.arraycopy(tile, (r % this.tileSize) * tileWidth + colInTile,
+                  dest, offset + (r - row) * scanline + c - col, count);
+        }
+        c += count;
+      }
+      top = bottom;
+    }
+  }
+
+  /**
+   * Copies one property of a rectangle of this raster into dest. Assumes the region was checked.
+   */
+  void getChannel(PixelProperty property, int row, int col, int width, int height,
+                  int[] dest, int offset, int scanline) {
+    int[] pixels = new int[width];
+    for (int i = 0; i < height; i++) {
+      this.getPixels(row + i, col, width, 1, pixels, 0, width);
+      for (int j = 0; j < width; j++) {
+        dest[offset + i * scanline + j] = PackedRaster.property(pixels[j], this.maxValue,
+                property);
+      }
+    }
+  }
+
+  /**
+   * Returns a map of every property of the pixel at the given position, in the same form as
+   * Pixel.getPixelInfo. Assumes the position is valid.
+   *
+   * @param row The row of the pixel.
+   * @param col The col of the pixel.
+   * @return The map of pixel properties.
+   */
+  Map<PixelProperty, Integer> getPixelInfo(int row, int col) {
+    int[] pixel = new int[1];
+    this.getPixels(row, col, 1, 1, pixel, 0, 1);
+
+    Map<PixelProperty, Integer> values = new HashMap<PixelProperty, Integer>();
+    for (PixelProperty p : PixelProperty.values()) {
+      values.put(p, PackedRaster.property(pixel[0], this.maxValue, p));
+    }
+    return values;
+  }
+
+  /**
+   * Represents tiles that are kept on the heap.
+   */
+  private static final class HeapStore implements TileStore {
+    private final int[][] tiles;
+
+    private HeapStore(int tiles) {
+      this.tiles = new int[tiles][];
+    }
+
+    @Override
+    public int[] read(int index) {
+      return this.tiles[index];
+    }
+
+    @Override
+    public void write(int index, int[] pixels) {
+      this.tiles[index] = pixels;
+    }
+
+    @Override
+    public void free() {
+      //The garbage collector frees the tiles.
+    }
+  }
+}
@@ -1,8 +1,5 @@
 package imageprocessing.view;
 
-import java.util.Map;
-
-
 /**
  * Represents the interface for a histogram which displays information about the 4 color channels
  * (red, green, blue, intensity/average) of an image and their frequencies.
@@ -10,17 +7,16 @@ import java.util.Map;
 public interface HistogramPanel {
 
   /**
-   * Adds counts for each pixel component.
-   * Each map's key represents the amount of that color (0 to 255)
-   * and the value represents the frequency. Also initializes the bar lists for every component.
+   * Adds counts for each pixel component. Each array is indexed by the amount of that color
+   * (values from 0 to 255 are shown) and holds its frequency. Also sets the bars for every
+   * component.
    *
    * @param redAdd       Red values and their frequencies
    * @param greenAdd     Green values and their frequencies
    * @param blueAdd      Blue values and their frequencies
    * @param intensityAdd Intensity/average values and their frequencies
    */
-  void addColorData(Map<Integer, Integer> redAdd, Map<Integer, Integer> greenAdd,
-                    Map<Integer, Integer> blueAdd, Map<Integer, Integer> intensityAdd);
+  void addColorData(long[] redAdd, long[] greenAdd, long[] blueAdd, long[] intensityAdd);
 
 
   /**
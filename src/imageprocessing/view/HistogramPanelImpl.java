@@ -7,29 +7,28 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Font;
 import java.awt.geom.AffineTransform;
-import java.util.HashSet;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.Set;
 
 import javax.swing.JPanel;
 
 /**
  * Represents the histogram panel in the image processing GUI. Displays pixel information about
- * the current image.
+ * the current image. The height of every bar is kept in one int array per component.
  */
 public class HistogramPanelImpl extends JPanel implements HistogramPanel {
-  private List<Bar> redBars;
-  private List<Bar> greenBars;
-  private List<Bar> blueBars;
-  private List<Bar> intensityBars;
+  //The number of values of a component that are shown, each as a bar one pixel wide.
+  private static final int BARS = 256;
+
+  //Null until color data is added.
+  private int[] redBars;
+  private int[] greenBars;
+  private int[] blueBars;
+  private int[] intensityBars;
   private final int initialWidth;
   private final int initialHeight;
 
   /**
-   * Constructor for the histogram panel. Sets the initialHeight and initialWidth and initializes
-   * the bar lists.
+   * Constructor for the histogram panel. Sets the initialHeight and initialWidth, and starts out
+   * without any bars.
    *
    * @param initialWidth  The initial width of the panel.
    * @param initialHeight The initial height of the panel.
@@ -39,11 +38,10 @@ public class HistogramPanelImpl extends JPanel implements HistogramPanel {
 
     this.setPreferredSize(new Dimension(initialWidth, initialHeight));
 
-
-    this.redBars = new ArrayList<Bar>();
-    this.greenBars = new ArrayList<Bar>();
-    this.blueBars = new ArrayList<Bar>();
-    this.intensityBars = new ArrayList<Bar>();
+    this.redBars = null;
+    this.greenBars = null;
+    this.blueBars = null;
+    this.intensityBars = null;
 
     this.setLayout(new GridLayout());
 
@@ -54,62 +52,28 @@ public class HistogramPanelImpl extends JPanel implements HistogramPanel {
 
 
   @Override
-  public void addColorData(Map<Integer, Integer> redAdd, Map<Integer, Integer> greenAdd,
-                           Map<Integer, Integer> blueAdd, Map<Integer, Integer> intensityAdd) {
-
-    Set<Integer> allValues = new HashSet<Integer>();
-    allValues.addAll(redAdd.values());
-    allValues.addAll(greenAdd.values());
-    allValues.addAll(blueAdd.values());
-    allValues.addAll(intensityAdd.values());
-    int maxValue = 0;
-    for (Integer val : allValues) {
-      if (val > maxValue) {
-        maxValue = val;
-      }
-    }
-
-
-    //Add the red bars
-    for (int i = 0; i < 256; i++) {
-      int barHeight = 0;
-      if (redAdd.containsKey(i)) {
-        barHeight = (redAdd.get(i) * (this.initialHeight / 3)) / maxValue;
-      }
-
-      Bar b = new Bar(Color.RED, 1, barHeight);
-      this.redBars.add(b);
-    }
-
-    //Add the green bars
-    for (int i = 0; i < 256; i++) {
-      int barHeight = 0;
-      if (greenAdd.containsKey(i)) {
-        barHeight = (greenAdd.get(i) * (this.initialHeight / 3)) / maxValue;
+  public void addColorData(long[] redAdd, long[] greenAdd, long[] blueAdd, long[] intensityAdd) {
+    //Every bar is scaled by the largest frequency of any component.
+    long maxValue = 0;
+    for (long[] counts : new long[][]{redAdd, greenAdd, blueAdd, intensityAdd}) {
+      for (long count : counts) {
+        maxValue = Math.max(maxValue, count);
       }
-      Bar b = new Bar(Color.GREEN, 1, barHeight);
-      this.greenBars.add(b);
     }
 
-    //Add the blue bars
-    for (int i = 0; i < 256; i++) {
-      int barHeight = 0;
-      if (blueAdd.containsKey(i)) {
-        barHeight = (blueAdd.get(i) * (this.initialHeight / 3)) / maxValue;
-      }
-      Bar b = new Bar(Color.BLUE, 1, barHeight);
-      this.blueBars.add(b);
-    }
+    this.redBars = this.barHeights(redAdd, maxValue);
+    this.greenBars = this.barHeights(greenAdd, maxValue);
+    this.blueBars = this.barHeights(blueAdd, maxValue);
+    this.intensityBars = this.barHeights(intensityAdd, maxValue);
+  }
 
-    //Add the intensity/average bars
-    for (int i = 0; i < 256; i++) {
-      int barHeight = 0;
-      if (intensityAdd.containsKey(i)) {
-        barHeight = (intensityAdd.get(i) * (this.initialHeight / 3)) / maxValue;
-      }
-      Bar b = new Bar(Color.GRAY, 1, barHeight);
-      this.intensityBars.add(b);
+  //Scales the frequencies of the first values of a component to the heights of its bars.
+  private int[] barHeights(long[] counts, long maxValue) {
+    int[] heights = new int[BARS];
+    for (int i = 0; i < Math.min(BARS, counts.length) && maxValue > 0; i++) {
+      heights[i] = (int) (counts[i] * (this.initialHeight / 3) / maxValue);
     }
+    return heights;
   }
 
   @Override
@@ -118,104 +82,64 @@ public class HistogramPanelImpl extends JPanel implements HistogramPanel {
 
     Graphics2D g2 = (Graphics2D) g;
 
-    //We only draw the axis when the histograms are drawn.
-    if (this.redBars.size() > 0 && this.blueBars.size() > 0 && this.greenBars.size() > 0
-            && this.intensityBars.size() > 0) {
-
-
-      g2.drawLine(24, this.initialHeight / 2 - 25, 565, this.initialHeight / 2 - 25);
-      g2.drawLine(24, this.initialHeight / 2 - 25, 24, this.initialHeight / 6 - 25);
-
-      g2.drawString("Red channel values", 25,
-              this.initialHeight / 2 - 10);
-      g2.drawString("Green channel values", 25 + this.initialWidth / 2,
-              this.initialHeight / 2 - 10);
-
-
-      g2.drawLine(24, this.initialHeight - 25, 565, this.initialHeight - 25);
-      g2.drawLine(24, this.initialHeight - 25, 24, this.initialHeight * 2 / 3 - 25);
-
-      g2.drawString("Blue channel values", 25,
-              this.initialHeight - 10);
-      g2.drawString("Intensity channel values", 25 + this.initialWidth / 2,
-              this.initialHeight - 10);
-
-
-      Font defaultFont = this.getFont();
-      Font font = new Font(null, Font.PLAIN, 12);
-      AffineTransform rotation = new AffineTransform();
-      rotation.rotate(Math.toRadians(-90), 0, 0);
-      Font rotated = font.deriveFont(rotation);
-      g2.setFont(rotated);
-      g2.drawString("Frequency", 17, this.initialHeight - 100);
-      g2.drawString("Frequency", 17, this.initialHeight / 2 - 100);
-      g2.setFont(defaultFont);
+    //We only draw the axis and the bars when the histograms are drawn.
+    if (this.redBars == null) {
+      return;
     }
 
+    g2.drawLine(24, this.initialHeight / 2 - 25, 565, this.initialHeight / 2 - 25);
+    g2.drawLine(24, this.initialHeight / 2 - 25, 24, this.initialHeight / 6 - 25);
 
-    for (int i = 0; i < redBars.size(); i++) {
-      int x = i * redBars.get(i).width + 25;
-      int y = this.initialHeight - 25 - redBars.get(i).height - this.initialHeight / 2;
-      g2.setColor(redBars.get(i).color);
-      g2.fillRect(x, y, redBars.get(i).width, redBars.get(i).height);
+    g2.drawString("Red channel values", 25,
+            this.initialHeight / 2 - 10);
+    g2.drawString("Green channel values", 25 + this.initialWidth / 2,
+            this.initialHeight / 2 - 10);
 
-    }
 
+    g2.drawLine(24, this.initialHeight - 25, 565, this.initialHeight - 25);
+    g2.drawLine(24, this.initialHeight - 25, 24, this.initialHeight * 2 / 3 - 25);
 
-    for (int i = 0; i < greenBars.size(); i++) {
-      int x = i * greenBars.get(i).width + 25 + this.initialWidth / 2;
-      int y = this.initialHeight - 25 - greenBars.get(i).height - this.initialHeight / 2;
-      g2.setColor(greenBars.get(i).color);
-      g2.fillRect(x, y, greenBars.get(i).width, greenBars.get(i).height);
+    g2.drawString("Blue channel values", 25,
+            this.initialHeight - 10);
+    g2.drawString("Intensity channel values", 25 + this.initialWidth / 2,
+            this.initialHeight - 10);
 
-    }
 
-    for (int i = 0; i < blueBars.size(); i++) {
-      int x = i * blueBars.get(i).width + 25;
-      int y = this.initialHeight - 25 - blueBars.get(i).height;
-      g2.setColor(blueBars.get(i).color);
-      g2.fillRect(x, y, blueBars.get(i).width, blueBars.get(i).height);
-    }
+    Font defaultFont = this.getFont();
+    Font font = new Font(null, Font.PLAIN, 12);
+    AffineTransform rotation = new AffineTransform();
+    rotation.rotate(Math.toRadians(-90), 0, 0);
+    Font rotated = font.deriveFont(rotation);
+    g2.setFont(rotated);
+    g2.drawString("Frequency", 17, this.initialHeight - 100);
+    g2.drawString("Frequency", 17, this.initialHeight / 2 - 100);
+    g2.setFont(defaultFont);
 
-    for (int i = 0; i < intensityBars.size(); i++) {
-      int x = i * intensityBars.get(i).width + 25 + this.initialWidth / 2;
-      int y = this.initialHeight - 25 - intensityBars.get(i).height;
-      g2.setColor(intensityBars.get(i).color);
-      g2.fillRect(x, y, intensityBars.get(i).width, intensityBars.get(i).height);
+    this.drawBars(g2, this.redBars, Color.RED, 25, this.initialHeight / 2);
+    this.drawBars(g2, this.greenBars, Color.GREEN, 25 + this.initialWidth / 2,
+            this.initialHeight / 2);
+    this.drawBars(g2, this.blueBars, Color.BLUE, 25, 0);
+    this.drawBars(g2, this.intensityBars, Color.GRAY, 25 + this.initialWidth / 2, 0);
+  }
+
+  //Draws the bars of a component from the given left edge, raised by the given amount from the
+  // bottom of the panel.
+  private void drawBars(Graphics2D g2, int[] heights, Color color, int left, int raise) {
+    g2.setColor(color);
+    for (int i = 0; i < heights.length; i++) {
+      int y = this.initialHeight - 25 - heights[i] - raise;
+      g2.fillRect(left + i, y, 1, heights[i]);
     }
   }
 
   @Override
   public void reset() {
 
-    this.redBars = new ArrayList<Bar>();
-    this.greenBars = new ArrayList<Bar>();
-    this.blueBars = new ArrayList<Bar>();
-    this.intensityBars = new ArrayList<Bar>();
-
-  }
+    this.redBars = null;
+    this.greenBars = null;
+    this.blueBars = null;
+    this.intensityBars = null;
 
-  /**
-   * Represents a bar in the histogram with some color, width, and height. The bar class is only
-   * ever used in the histogram and thus is private.
-   */
-  private class Bar {
-    private final Color color;
-    private final int width;
-    private final int height;
-
-    /**
-     * The bar constructor, sets all the fields for a bar.
-     *
-     * @param color  The color of the bar.
-     * @param width  The width of the bar.
-     * @param height The height of the bar.
-     */
-    protected Bar(Color color, int width, int height) {
-      this.color = color;
-      this.width = width;
-      this.height = height;
-    }
   }
 
 }
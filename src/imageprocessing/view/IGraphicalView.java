@@ -1,5 +1,7 @@
 package imageprocessing.view;
 
+import java.awt.image.BufferedImage;
+
 import imageprocessing.controller.Features;
 
 /**
@@ -26,11 +28,40 @@ public interface IGraphicalView {
    */
   void setImage(String name);
 
+  /**
+   * Takes the buffer the image panel showed before its current image, so a display built on
+   * another thread can write its pixels into it (see ImageDisplay.of) instead of creating a new
+   * image. Only one caller gets it.
+   *
+   * @return The spare buffer, or null if there is none.
+   */
+  BufferedImage takeSpareBuffer();
+
+  /**
+   * Shows an image and its histogram that were built on another thread.
+   *
+   * @param display The image and histogram to show.
+   */
+  void showDisplay(ImageDisplay display);
+
   /**
    * Refreshes the GUI.
    */
   void refresh();
 
+  /**
+   * Shows that a task is running in the background, with a way to cancel it. No other task can be
+   * started until hideProgress is called.
+   *
+   * @param message What the task is doing.
+   */
+  void showProgress(String message);
+
+  /**
+   * Stops showing that a task is running, and lets the user start tasks again.
+   */
+  void hideProgress();
+
   /**
    * Displays a message window with some title, message, and type.
    *
@@ -0,0 +1,102 @@
+package imageprocessing.view;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import imageprocessing.model.ImageHandle;
+import imageprocessing.model.ImageProcessingModelState;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+
+/**
+ * Represents everything the graphical view shows for an image: the image itself and the counts
+ * of its red, green, blue and intensity histograms. It is built from the model on a background
+ * thread, so the event dispatch thread only has to show it.
+ */
+public final class ImageDisplay {
+  private final BufferedImage image;
+  private final long[][] histogram;
+
+  //Creates a display of an image and its red, green, blue and intensity counts, in that order.
+  private ImageDisplay(BufferedImage image, long[][] histogram) {
+    this.image = image;
+    this.histogram = histogram;
+  }
+
+  /**
+   * Creates the display of an image of a model. This reads every pixel of the image, which runs
+   * any operations the model has not run yet. The histograms come from the cache of the model,
+   * which derives them from the source of a flip, brighten or grayscale instead of counting.
+   * The image is not hashed, so this is the only pass over it.
+   *
+   * @param model     The model.
+   * @param imageName The name of the image.
+   * @return The display.
+   * @throws IllegalArgumentException If the image could not be read.
+   */
+  public static ImageDisplay of(ImageProcessingModelState model, String imageName)
+          throws IllegalArgumentException {
+    return of(model, imageName, null);
+  }
+
+  /**
+   * Creates the display of an image of a model, writing its pixels into a buffer that is no
+   * longer shown (see ImagePanel.takeSpareBuffer) if it has the same size.
+   *
+   * @param model     The model.
+   * @param imageName The name of the image.
+   * @param reuse     The buffer to reuse, or null to create a new one.
+   * @return The display.
+   * @throws IllegalArgumentException If the image could not be read.
+   */
+  public static ImageDisplay of(ImageProcessingModelState model, String imageName,
+                                BufferedImage reuse) throws IllegalArgumentException {
+    return new ImageDisplay(toBufferedImage(model.getImage(imageName), reuse),
+            countHistogram(model, imageName));
+  }
+
+  /**
+   * Gets the image to show.
+   *
+   * @return The image.
+   */
+  public BufferedImage getImage() {
+    return this.image;
+  }
+
+  /**
+   * Gets how often every value occurs in the red, green and blue channels and the intensity of the
+   * image, in that order. Each array is indexed by value.
+   *
+   * @return The four arrays of counts.
+   */
+  public long[][] getHistogram() {
+    return this.histogram;
+  }
+
+  //Copies the pixels of an image into a BufferedImage, which is the given one if it has the same
+  // size (and is not null), or a new one otherwise.
+  static BufferedImage toBufferedImage(ImageHandle image, BufferedImage reuse) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+
+    BufferedImage bi = reuse;
+    if (bi == null || bi.getWidth() != width || bi.getHeight() != height
+            || bi.getType() != BufferedImage.TYPE_INT_ARGB) {
+      bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    //The model writes the packed ARGB pixels straight into the image's backing array.
+    int[] data = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+    image.getPixels(0, 0, width, height, data, 0, width);
+    return bi;
+  }
+
+  //Counts the red, green, blue and intensity values of an image with the histogram service of
+  // the model.
+  static long[][] countHistogram(ImageProcessingModelState model, String imageName) {
+    return new long[][]{model.getHistogram(imageName, PixelProperty.Red),
+        model.getHistogram(imageName, PixelProperty.Green),
+        model.getHistogram(imageName, PixelProperty.Blue),
+        model.getHistogram(imageName, PixelProperty.Intensity)};
+  }
+}
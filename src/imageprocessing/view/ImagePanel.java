@@ -9,9 +9,19 @@ import java.awt.image.BufferedImage;
 public interface ImagePanel {
 
   /**
-   * Sets an image to the ImagePanel.
+   * Sets an image to the ImagePanel. The panel then owns the image, and once another image is
+   * set it may hand it out again as its spare buffer (see takeSpareBuffer).
    *
    * @param bi The BufferedImage to set as this panel's image.
    */
   void setImage(BufferedImage bi);
+
+  /**
+   * Takes the buffer that was shown before the current one, so the pixels of the next image can
+   * be written into it (e.g. on another thread) while the current one is painted. The panel
+   * forgets the buffer until it is set again, so it is never handed out twice.
+   *
+   * @return The spare buffer, or null if there is none.
+   */
+  BufferedImage takeSpareBuffer();
 }
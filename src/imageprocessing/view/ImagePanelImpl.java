@@ -2,22 +2,29 @@ package imageprocessing.view;
 
 import java.awt.GridLayout;
 import java.awt.Color;
-import java.awt.Image;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.BorderLayout;
 import java.awt.image.BufferedImage;
 
+import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JLabel;
-import javax.swing.ImageIcon;
-
 
 /**
  * Represents the image panel of the GUI where the image the user is currently working on is
- * displayed.
+ * displayed. The image is kept in a back buffer that is drawn (and scaled) straight onto the
+ * panel with Graphics2D. Two buffers alternate: the one that was shown before is kept as a spare,
+ * which the pixels of the next image of the same size are written into while the current one is
+ * painted, so showing an image does not create a new one.
  */
 public class ImagePanelImpl extends JPanel implements ImagePanel {
-  private final JLabel imageLabel;
+  private final ImageCanvas canvas;
+
+  //The buffer that was shown before the current one, or null if there is none or it was taken.
+  private BufferedImage spare;
 
   /**
    * Constructor for an ImagePanelImpl. Creates an ImagePanelImpl and sets the background color.
@@ -28,14 +35,11 @@ public class ImagePanelImpl extends JPanel implements ImagePanel {
 
     this.setBackground(Color.WHITE);
     //this.setBorder(BorderFactory.createTitledBorder("Current image"));
-    this.imageLabel = new JLabel();
-
-    //CENTER THE IMAGE
-    this.imageLabel.setVerticalAlignment(JLabel.CENTER);
-    this.imageLabel.setHorizontalAlignment(JLabel.CENTER);
+    this.canvas = new ImageCanvas();
+    this.spare = null;
 
     //MAKE THE IMAGE SCROLLABLE BY ADDING IT TO A scrollPlane
-    JScrollPane scrollPane = new JScrollPane(this.imageLabel);
+    JScrollPane scrollPane = new JScrollPane(this.canvas);
 
     //Add the scrollpane to the panel.
     this.add(scrollPane, BorderLayout.CENTER);
@@ -43,35 +47,93 @@ public class ImagePanelImpl extends JPanel implements ImagePanel {
 
   @Override
   public void setImage(BufferedImage bi) {
+    if (bi != this.canvas.buffer) {
+      this.spare = this.canvas.buffer;
+    }
+    this.canvas.setBuffer(bi);
+  }
 
-    ImageIcon imageIcon = new ImageIcon(bi);
-    imageIcon = this.scale(imageIcon, imageIcon.getIconWidth(), imageIcon.getIconHeight());
-    this.imageLabel.setIcon(imageIcon);
-
+  @Override
+  public BufferedImage takeSpareBuffer() {
+    BufferedImage buffer = this.spare;
+    this.spare = null;
+    return buffer;
   }
 
-  //Scales an image icon so that the width and height are at least some amount.
-  private ImageIcon scale(ImageIcon image, int imageWidth, int imageHeight) {
+  /**
+   * Represents the component that draws the back buffer, centered and scaled up so it is at
+   * least 250 by 220 pixels. Its preferred size is the scaled size, so the scroll pane scrolls
+   * over it.
+   */
+  private static final class ImageCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
 
     //The width and height of every image should be at least this much.
-    int width = 250;
-    int height = 220;
-
-    int newWidth = imageWidth;
-    int newHeight = imageHeight;
-
-    if (image.getIconWidth() < width) {
-      newWidth = width;
-      newHeight = (width / imageWidth) * imageHeight;
+    private static final int MIN_WIDTH = 250;
+    private static final int MIN_HEIGHT = 220;
+
+    //Null until the first image is set.
+    private BufferedImage buffer;
+    private int scaledWidth;
+    private int scaledHeight;
+
+    private ImageCanvas() {
+      this.buffer = null;
+      this.scaledWidth = 0;
+      this.scaledHeight = 0;
     }
 
-    if (image.getIconHeight() < height) {
-      newHeight = height;
-      newWidth = (newHeight / imageHeight) * imageWidth;
+    //Shows a buffer, which may be the one already shown with new pixels. Only a change of size
+    // lays the scroll pane out again.
+    private void setBuffer(BufferedImage bi) {
+      int imageWidth = bi.getWidth();
+      int imageHeight = bi.getHeight();
+      int newWidth = imageWidth;
+      int newHeight = imageHeight;
+
+      if (imageWidth < MIN_WIDTH) {
+        newWidth = MIN_WIDTH;
+        newHeight = (MIN_WIDTH / imageWidth) * imageHeight;
+      }
+
+      if (imageHeight < MIN_HEIGHT) {
+        newHeight = MIN_HEIGHT;
+        newWidth = (newHeight / imageHeight) * imageWidth;
+      }
+
+      this.buffer = bi;
+      if (newWidth != this.scaledWidth || newHeight != this.scaledHeight) {
+        this.scaledWidth = newWidth;
+        this.scaledHeight = newHeight;
+        this.revalidate();
+      }
+      this.repaint();
     }
 
-    return new ImageIcon(image.getImage()
-            .getScaledInstance(newWidth, newHeight, Image.SCALE_DEFAULT));
+    @Override
+    public Dimension getPreferredSize() {
+      return new Dimension(this.scaledWidth, this.scaledHeight);
+    }
 
+    //Pixels are replicated when scaling up, like the default scaling of an Image.
+    @Override
+    protected void paintComponent(Graphics g) {
+      super.paintComponent(g);
+      if (this.buffer == null) {
+        return;
+      }
+
+      Graphics2D g2 = (Graphics2D) g.create();
+      try {
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        int x = Math.max(0, (this.getWidth() - this.scaledWidth) / 2);
+        int y = Math.max(0, (this.getHeight() - this.scaledHeight) / 2);
+        g2.drawImage(this.buffer, x, y, this.scaledWidth, this.scaledHeight, null);
+      } finally {
+        g2.dispose();
+      }
+    }
   }
 }
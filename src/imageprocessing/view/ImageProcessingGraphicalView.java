@@ -8,8 +8,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.JFrame;
 import javax.swing.JButton;
@@ -17,13 +15,13 @@ import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
 import javax.swing.JFileChooser;
 
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import imageprocessing.controller.Features;
 import imageprocessing.model.ImageProcessingModelState;
-import imageprocessing.model.ImageProcessingModelState.PixelProperty;
 
 
 /**
@@ -34,8 +32,16 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
   private final ImagePanel imagePanel;
   private final JComboBox<String> commandOptionsBox;
   private final HistogramPanel histogramPanel;
+  private final JProgressBar progressBar;
+  private final JButton cancelButton;
+  private final JButton[] taskButtons;
   private Features features;
 
+  //The content hashes of the image being shown and of the one the histogram counts, null if
+  // there is none. Showing an image with the same contents again copies and counts nothing.
+  private Long imageHash;
+  private Long histogramHash;
+
   /**
    * Constructor for a gui view. Takes in a model state to get info about the images.
    *
@@ -104,11 +110,25 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
     quitButton.setActionCommand("quit");
     bottomPanel.add(quitButton);
 
+    //Shown while a load, save or operation runs in the background.
+    this.progressBar = new JProgressBar();
+    this.progressBar.setIndeterminate(true);
+    this.progressBar.setStringPainted(true);
+    this.progressBar.setVisible(false);
+    bottomPanel.add(this.progressBar);
+
+    this.cancelButton = new JButton("Cancel");
+    this.cancelButton.setActionCommand("cancel");
+    this.cancelButton.setEnabled(false);
+    bottomPanel.add(this.cancelButton);
+
+    this.taskButtons = new JButton[]{commandButton, loadFileButton, saveFileButton};
 
     commandButton.addActionListener(this);
     loadFileButton.addActionListener(this);
     saveFileButton.addActionListener(this);
     quitButton.addActionListener(this);
+    this.cancelButton.addActionListener(this);
   }
 
 
@@ -124,35 +144,53 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
 
   @Override
   public void setImage(String name) {
+    Long hash = this.model.getStats(name).getContentHash();
+    if (!hash.equals(this.imageHash)) {
+      this.imagePanel.setImage(ImageDisplay.toBufferedImage(this.model.getImage(name),
+              this.imagePanel.takeSpareBuffer()));
+      this.imageHash = hash;
+    }
+  }
 
-    int width = this.model.getWidth(name);
-    int height = this.model.getHeight(name);
-
-    BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        Map<ImageProcessingModelState.PixelProperty, Integer> values =
-                this.model.getPixelInfo(name, i, j);
-
-        int red = values.get(ImageProcessingModelState.PixelProperty.Red);
-        int green = values.get(ImageProcessingModelState.PixelProperty.Green);
-        int blue = values.get(ImageProcessingModelState.PixelProperty.Blue);
-        int alpha = values.get(ImageProcessingModelState.PixelProperty.Alpha);
+  @Override
+  public BufferedImage takeSpareBuffer() {
+    return this.imagePanel.takeSpareBuffer();
+  }
 
-        int rgb = (alpha << 24) | (red << 16) | (green << 8) | blue;
+  @Override
+  public void showDisplay(ImageDisplay display) {
+    this.imagePanel.setImage(display.getImage());
+    this.showHistogram(display.getHistogram());
+    //The display is not hashed, so the next refresh shows the image again.
+    this.imageHash = null;
+    this.histogramHash = null;
+    this.refresh();
+  }
 
-        bi.setRGB(j, i, rgb);
+  @Override
+  public void refresh() {
+    this.repaint();
+  }
 
-      }
+  @Override
+  public void showProgress(String message) {
+    this.progressBar.setString(message);
+    this.progressBar.setVisible(true);
+    this.cancelButton.setEnabled(true);
+    for (JButton button : this.taskButtons) {
+      button.setEnabled(false);
     }
-
-    this.imagePanel.setImage(bi);
+    this.revalidate();
   }
 
   @Override
-  public void refresh() {
-    this.repaint();
+  public void hideProgress() {
+    this.progressBar.setVisible(false);
+    this.cancelButton.setEnabled(false);
+    for (JButton button : this.taskButtons) {
+      button.setEnabled(true);
+    }
+    this.revalidate();
   }
 
   @Override
@@ -165,7 +203,7 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
   public String showFileChooser(ChooserState state) {
     final JFileChooser chooser = new JFileChooser(".");
     FileNameExtensionFilter filter = new FileNameExtensionFilter(
-            "JPG, PPM, PNG & BMP Images", "ppm", "jpg", "jpeg", "png", "bmp");
+            "JPG, PPM, PGM, PNG & BMP Images", "ppm", "pgm", "jpg", "jpeg", "png", "bmp");
     chooser.setFileFilter(filter);
     int outcome;
     if (state.equals(ChooserState.Open)) {
@@ -192,31 +230,17 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
 
   @Override
   public void updateHistogram(String imageName) {
-    this.histogramPanel.reset();
-
-    Map<Integer, Integer> redComponents = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> greenComponents = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> blueComponents = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> intensityComponents = new HashMap<Integer, Integer>();
-
-    int width = model.getWidth(imageName);
-    int height = model.getHeight(imageName);
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        Map<PixelProperty, Integer> values =
-                this.model.getPixelInfo(imageName, i, j);
-
-        //Increment the value in the map by 1 if it exists, otherwise set it to 1.
-        redComponents.merge(values.get(PixelProperty.Red), 1, Integer::sum);
-        greenComponents.merge(values.get(PixelProperty.Green), 1, Integer::sum);
-        blueComponents.merge(values.get(PixelProperty.Blue), 1, Integer::sum);
-        intensityComponents.merge(values.get(PixelProperty.Intensity), 1, Integer::sum);
-      }
+    Long hash = this.model.getStats(imageName).getContentHash();
+    if (!hash.equals(this.histogramHash)) {
+      this.showHistogram(ImageDisplay.countHistogram(this.model, imageName));
+      this.histogramHash = hash;
     }
+  }
 
-    this.histogramPanel.addColorData(redComponents, greenComponents, blueComponents,
-            intensityComponents);
+  //Shows the red, green, blue and intensity counts of an image in the histogram.
+  private void showHistogram(long[][] counts) {
+    this.histogramPanel.reset();
+    this.histogramPanel.addColorData(counts[0], counts[1], counts[2], counts[3]);
   }
 
   @Override
@@ -232,24 +256,14 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
         if (!path.equals("")) {
           String imageName = path.substring(path.lastIndexOf("\\") + 1,
                   path.lastIndexOf("."));
-          try {
-            this.features.loadFileIntoModel(path, imageName);
-            this.features.updateDisplay();
-          } catch (IllegalArgumentException | IllegalStateException ex) {
-            this.showMessageWindow("Loading error",
-                    "The command failed for the following" +
-                            " reason:\n" + ex.getMessage(), JOptionPane.ERROR_MESSAGE);
-          }
+          this.features.loadInBackground(path, imageName);
         }
         break;
       case "save file":
         String savePath = this.showFileChooser(ChooserState.Save);
         if (!savePath.equals("")) {
           try {
-            this.features.saveImage(savePath);
-            this.showMessageWindow("Success!",
-                    "The image was saved successfully!",
-                    JOptionPane.INFORMATION_MESSAGE);
+            this.features.saveInBackground(savePath);
           } catch (IllegalArgumentException ex) {
             this.showMessageWindow("Saving error",
                     "The command failed for the following" +
@@ -265,21 +279,23 @@ public class ImageProcessingGraphicalView extends JFrame implements IGraphicalVi
             if (userInput != null) {
               try {
                 int amount = Integer.parseInt(userInput);
-                this.features.processSelectedOption(this.getOption(), amount);
+                this.features.processInBackground(this.getOption(), amount);
               } catch (NumberFormatException ex) {
                 throw new IllegalArgumentException("A valid integer was not detected");
               }
             }
           } else {
-            this.features.processSelectedOption(this.getOption(), 0);
+            this.features.processInBackground(this.getOption(), 0);
           }
-          this.features.updateDisplay();
-        } catch (IllegalArgumentException | IllegalStateException ex) {
-          this.showMessageWindow("Saving error",
+        } catch (IllegalArgumentException ex) {
+          this.showMessageWindow("Command error",
                   "The command failed for the following" +
                           " reason:\n" + ex.getMessage(), JOptionPane.ERROR_MESSAGE);
         }
         break;
+      case "cancel":
+        this.features.cancelBackgroundTask();
+        break;
       case "quit":
         this.features.exitProgram();
         break;
@@ -0,0 +1,180 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import imageprocessing.controller.commands.SimpleLoadCommand;
+import imageprocessing.model.ConcurrentImageProcessingModel;
+import imageprocessing.model.FlipDirection;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.SimpleImageProcessingModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A JUnit testing class for the ConcurrentImageProcessingModel class. It must give the same
+ * results as the SimpleImageProcessingModel, and many threads that mix operations and reads on
+ * the same images must never see a partly written image.
+ */
+public class ConcurrentImageProcessingModelTest {
+  private ImageProcessingModel concurrent;
+  private ImageProcessingModel simple;
+
+  private final double[][] blur = new double[][]{
+          {0.0625, 0.125, 0.0625},
+          {0.125, 0.25, 0.125},
+          {0.0625, 0.125, 0.0625}
+  };
+
+  private final double[][] sepia = new double[][]{
+          {0.393, 0.769, 0.189},
+          {0.349, 0.686, 0.168},
+          {0.272, 0.534, 0.131},
+  };
+
+  @Before
+  public void init() {
+    this.concurrent = new ConcurrentImageProcessingModel(4);
+    this.simple = new SimpleImageProcessingModel();
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.concurrent, this.simple}) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+    }
+  }
+
+  //Gets every pixel of an image.
+  private static int[] pixels(ImageProcessingModel model, String imageName) {
+    int width = model.getWidth(imageName);
+    int height = model.getHeight(imageName);
+    int[] pixels = new int[width * height];
+    model.getPixels(imageName, 0, 0, width, height, pixels, 0, width);
+    return pixels;
+  }
+
+  @Test
+  public void testMatchesSimple() {
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.concurrent, this.simple}) {
+      model.flip(FlipDirection.Horizontal, "mudkip", "flipped");
+      model.flip(FlipDirection.Vertical, "flipped", "flipped");
+      model.crop(20, 30, 100, 60, "flipped", "cropped");
+      model.brighten(50, "cropped", "bright");
+      model.grayscale(PixelProperty.Luma, "mudkip", "gray");
+      model.applyFilter(this.blur, "gray", "blurred");
+      model.colorTransformation(this.sepia, "mudkip", "MUDKIP");
+    }
+
+    for (String name : new String[]{"flipped", "cropped", "bright", "gray", "blurred",
+        "mudkip"}) {
+      RasterImageProcessingModelTest.assertSameImage(this.simple, name, this.concurrent, name);
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testManyThreadsMixingReadsAndOperations() throws InterruptedException {
+    //Writers keep replacing "shared" with one of two images while readers read it, and each
+    // writer also runs its own chain of operations. A reader must always see one whole image.
+    this.simple.brighten(40, "mudkip", "bright");
+    this.simple.brighten(-40, "mudkip", "dark");
+    this.simple.flip(FlipDirection.Horizontal, "mudkip", "chain");
+    this.simple.grayscale(PixelProperty.Value, "chain", "chain");
+    this.simple.applyFilter(this.blur, "chain", "chain");
+    int[] bright = pixels(this.simple, "bright");
+    int[] dark = pixels(this.simple, "dark");
+    this.concurrent.brighten(40, "mudkip", "shared");
+
+    int writers = 6;
+    int readers = 6;
+    Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[writers + readers];
+
+    for (int t = 0; t < writers; t++) {
+      String own = "chain" + t;
+      threads[t] = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < 30; i++) {
+            this.concurrent.brighten(i % 2 == 0 ? -40 : 40, "mudkip", "shared");
+            this.concurrent.flip(FlipDirection.Horizontal, "mudkip", own);
+            this.concurrent.grayscale(PixelProperty.Value, own, own);
+            this.concurrent.applyFilter(this.blur, own, own);
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      });
+    }
+
+    for (int t = writers; t < writers + readers; t++) {
+      threads[t] = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < 200; i++) {
+            int[] seen = pixels(this.concurrent, "shared");
+            assertTrue(Arrays.equals(bright, seen) || Arrays.equals(dark, seen));
+
+            int red = this.concurrent.getPixelInfo("shared", 10, 10).get(PixelProperty.Red);
+            assertTrue(red == (bright[10 * 320 + 10] >> 16 & 0xFF)
+                    || red == (dark[10 * 320 + 10] >> 16 & 0xFF));
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      });
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    if (!failures.isEmpty()) {
+      throw new AssertionError(failures.peek());
+    }
+    for (int t = 0; t < writers; t++) {
+      RasterImageProcessingModelTest.assertSameImage(this.simple, "chain", this.concurrent,
+              "chain" + t);
+    }
+    assertEquals(320, this.concurrent.getWidth("shared"));
+  }
+
+  @Test
+  public void testErrors() {
+    try {
+      new ConcurrentImageProcessingModel(0);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.concurrent.brighten(10, "doesNotExist", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.concurrent.flip(FlipDirection.Vertical, "mudkip", "");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.concurrent.crop(0, 0, 321, 1, "mudkip", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+}
@@ -1,8 +1,11 @@
 import java.util.Map;
 
 import imageprocessing.model.FlipDirection;
+import imageprocessing.model.ImageHandle;
 import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageStats;
 import imageprocessing.model.Pixel;
+import imageprocessing.model.PixelSource;
 
 /**
  * Class for testing that the model receives the correct inputs.
@@ -22,12 +25,39 @@ public class ConfirmInputsToModel implements ImageProcessingModel {
             imgGrid[0].length, imgGrid.length));
   }
 
+  @Override
+  public void addImageToLibrary(String imageName, int width, int height, int maxValue,
+                                int[] pixels) throws IllegalArgumentException {
+    log.append(String.format("[imageName: %s, width: %d, height, %d]\n", imageName,
+            width, height));
+  }
+
+  @Override
+  public void transferImageToLibrary(String imageName, int width, int height, int maxValue,
+                                     int[] pixels) throws IllegalArgumentException {
+    log.append(String.format("[imageName: %s, width: %d, height, %d]\n", imageName,
+            width, height));
+  }
+
+  @Override
+  public void streamImageToLibrary(String imageName, int width, int height, int maxValue,
+                                   PixelSource source) throws IllegalArgumentException {
+    log.append(String.format("[imageName: %s, width: %d, height, %d]\n", imageName,
+            width, height));
+  }
+
   @Override
   public void flip(FlipDirection f, String imageName, String newName)
           throws IllegalArgumentException {
     //Do nothing, this is a mock.
   }
 
+  @Override
+  public void crop(int row, int col, int width, int height, String imageName, String newName)
+          throws IllegalArgumentException {
+    //Do nothing, this is a mock.
+  }
+
   @Override
   public void brighten(int amount, String imageName, String newName)
           throws IllegalArgumentException {
@@ -67,4 +97,38 @@ public class ConfirmInputsToModel implements ImageProcessingModel {
           throws IllegalArgumentException {
     return null;
   }
+
+  @Override
+  public int getMaxValue(String imageName) throws IllegalArgumentException {
+    return 0;
+  }
+
+  @Override
+  public ImageHandle getImage(String imageName) throws IllegalArgumentException {
+    return null;
+  }
+
+  @Override
+  public void getPixels(String imageName, int row, int col, int width, int height,
+                        int[] dest, int offset, int scanline) throws IllegalArgumentException {
+    //Do nothing, this is a mock.
+  }
+
+  @Override
+  public void getChannel(String imageName, PixelProperty property, int row, int col, int width,
+                         int height, int[] dest, int offset, int scanline)
+          throws IllegalArgumentException {
+    //Do nothing, this is a mock.
+  }
+
+  @Override
+  public long[] getHistogram(String imageName, PixelProperty property)
+          throws IllegalArgumentException {
+    return new long[256];
+  }
+
+  @Override
+  public ImageStats getStats(String imageName) throws IllegalArgumentException {
+    return null;
+  }
 }
@@ -1,16 +1,26 @@
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
 
 import imageprocessing.controller.Features;
 import imageprocessing.controller.GraphicalController;
 import imageprocessing.model.ImageProcessingModelState;
+import imageprocessing.model.RasterImageProcessingModel;
 import imageprocessing.model.SimpleImageProcessingModel;
 import imageprocessing.view.ChooserState;
 import imageprocessing.view.IGraphicalView;
+import imageprocessing.view.ImageDisplay;
 import imageprocessing.view.ImageProcessingGraphicalView;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -23,9 +33,21 @@ public class GraphicalControllerTest {
    */
   private class GraphicalViewMock implements IGraphicalView {
     private StringBuilder out;
+    private final Semaphore tasksDone;
+    private ImageDisplay display;
+
+    //If set, cancels every background task as soon as it is started.
+    private Features cancelling;
+
+    //The buffer handed out by takeSpareBuffer, once.
+    private BufferedImage spare;
 
     public GraphicalViewMock(StringBuilder out) {
       this.out = out;
+      this.tasksDone = new Semaphore(0);
+      this.display = null;
+      this.cancelling = null;
+      this.spare = null;
     }
 
     @Override
@@ -44,11 +66,47 @@ public class GraphicalControllerTest {
       this.out.append("setImage" + name);
     }
 
+    @Override
+    public BufferedImage takeSpareBuffer() {
+      BufferedImage buffer = this.spare;
+      this.spare = null;
+      return buffer;
+    }
+
+    @Override
+    public void showDisplay(ImageDisplay display) {
+      this.out.append("showDisplay" + display.getImage().getWidth() + "x"
+              + display.getImage().getHeight());
+      this.display = display;
+    }
+
     @Override
     public void refresh() {
       this.out.append("refresh");
     }
 
+    @Override
+    public void showProgress(String message) {
+      this.out.append("showProgress" + message);
+      if (this.cancelling != null) {
+        this.cancelling.cancelBackgroundTask();
+      }
+    }
+
+    @Override
+    public void hideProgress() {
+      this.out.append("hideProgress");
+      this.tasksDone.release();
+    }
+
+    //Waits until a background task is done and everything it shows has been shown.
+    private void awaitTask() throws Exception {
+      assertTrue(this.tasksDone.tryAcquire(10, TimeUnit.SECONDS));
+      SwingUtilities.invokeAndWait(() -> {
+        // the task finishes on the event dispatch thread, so it is done once this runs
+      });
+    }
+
     @Override
     public void showMessageWindow(String title, String bodyMessage, int messageType) {
       this.out.append("showMessageWindow" + title + bodyMessage + messageType);
@@ -234,4 +292,79 @@ public class GraphicalControllerTest {
 
     assertEquals("setImagemudkipupdateHistogrammudkiprefresh", out.toString());
   }
+
+  @Test
+  public void testBackgroundTasks() throws Exception {
+    RasterImageProcessingModel model = new RasterImageProcessingModel();
+    StringBuilder out = new StringBuilder();
+    GraphicalViewMock view = new GraphicalViewMock(out);
+    GraphicalController controller = new GraphicalController(model, view);
+
+    controller.loadInBackground("res/mudkip.ppm", "mudkip");
+    view.awaitTask();
+    assertEquals("showProgressLoading mudkiphideProgressshowDisplay320x240", out.toString());
+
+    //The display is built from the image in the model, and has its histogram.
+    int[] expected = new int[320 * 240];
+    int[] actual = new int[320 * 240];
+    model.getPixels("mudkip", 0, 0, 320, 240, expected, 0, 320);
+    view.display.getImage().getRGB(0, 0, 320, 240, actual, 0, 320);
+    assertArrayEquals(expected, actual);
+    long total = 0;
+    for (long count : view.display.getHistogram()[3]) {
+      total += count;
+    }
+    assertEquals(320 * 240, total);
+
+    //The blurred image is written into the spare buffer of the view, which has the same size.
+    out.setLength(0);
+    BufferedImage spare = new BufferedImage(320, 240, BufferedImage.TYPE_INT_ARGB);
+    view.spare = spare;
+    controller.processInBackground("blur", 0);
+    view.awaitTask();
+    assertSame(spare, view.display.getImage());
+    assertEquals("showProgressRunning blurhideProgressshowDisplay320x240", out.toString());
+    model.applyFilter(new double[][]{
+        {0.0625, 0.125, 0.0625},
+        {0.125, 0.25, 0.125},
+        {0.0625, 0.125, 0.0625}}, "mudkip", "expected");
+    model.getPixels("expected", 0, 0, 320, 240, expected, 0, 320);
+    view.display.getImage().getRGB(0, 0, 320, 240, actual, 0, 320);
+    assertArrayEquals(expected, actual);
+
+    //Failures are shown, and change nothing.
+    out.setLength(0);
+    controller.processInBackground("poop", 0);
+    view.awaitTask();
+    assertEquals("showProgressRunning poophideProgressshowMessageWindowCommand errorThe command "
+            + "failed for the following reason:\nUnrecognized command0", out.toString());
+
+    //A cancelled task changes nothing either, so the blurred image is still the current one.
+    out.setLength(0);
+    view.cancelling = controller;
+    controller.processInBackground("sharpen", 0);
+    view.awaitTask();
+    assertEquals("showProgressRunning sharpenhideProgress", out.toString());
+
+    //A cancelled load does not store the image.
+    out.setLength(0);
+    controller.loadInBackground("res/mudkip.ppm", "cancelled");
+    view.awaitTask();
+    assertEquals("showProgressLoading cancelledhideProgress", out.toString());
+    try {
+      model.getWidth("cancelled");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    out.setLength(0);
+    view.cancelling = null;
+    controller.saveInBackground("res/test-graphical-save.png");
+    view.awaitTask();
+    assertEquals("showProgressSavinghideProgressshowMessageWindowSuccess!The image was saved "
+            + "successfully!1", out.toString());
+    controller.loadFileIntoModel("res/test-graphical-save.png", "saved");
+    RasterImageProcessingModelTest.assertSameImage(model, "expected", model, "saved");
+  }
 }
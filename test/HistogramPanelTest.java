@@ -1,9 +1,6 @@
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import imageprocessing.view.HistogramPanel;
 import imageprocessing.view.HistogramPanelImpl;
 
@@ -24,20 +21,21 @@ public class HistogramPanelTest {
 
   @Test
   public void testAddColorDataAndReset() {
-    Map<Integer, Integer> reds = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> greens = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> blues = new HashMap<Integer, Integer>();
-    Map<Integer, Integer> intensities = new HashMap<Integer, Integer>();
+    long[] reds = new long[256];
+    long[] greens = new long[256];
+    long[] blues = new long[256];
+    long[] intensities = new long[300];
     for (int i = 0; i < 10; i++) {
-      reds.put(i, i);
-      greens.put(i, i);
-      blues.put(i, i);
-      intensities.put(i, i);
+      reds[i] = i;
+      greens[i] = i;
+      blues[i] = i;
+      intensities[i] = i;
     }
 
     this.histo.addColorData(reds, greens, blues, intensities);
-    assertEquals(0, (int) reds.get(0));
+    assertEquals(0, reds[0]);
 
     this.histo.reset();
+    this.histo.addColorData(new long[256], new long[256], new long[256], new long[256]);
   }
 }
@@ -0,0 +1,100 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.RasterImageProcessingModel;
+import imageprocessing.view.ImageDisplay;
+import imageprocessing.view.ImagePanelImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the image panel. The panel is painted into an image, so the tests check the pixels
+ * that would be shown without opening a window.
+ */
+public class ImagePanelTest {
+  ImagePanelImpl panel;
+  ImageProcessingModel model;
+
+  @Before
+  public void testConstructor() {
+    this.panel = new ImagePanelImpl();
+    this.panel.setSize(new Dimension(400, 300));
+    this.model = new RasterImageProcessingModel();
+  }
+
+  @Test
+  public void testSetImage() {
+    //A 2x2 image is scaled up to 220x220 (the height decides), and centered.
+    int[] pixels = new int[]{0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF};
+    this.model.addImageToLibrary("square", 2, 2, 255, pixels);
+    BufferedImage first = ImageDisplay.of(this.model, "square").getImage();
+    this.panel.setImage(first);
+    this.assertShown(0xFFFF0000, 0xFFFFFFFF);
+    assertNull(this.panel.takeSpareBuffer());
+
+    BufferedImage second = new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB);
+    second.setRGB(0, 0, 0xFF00FF00);
+    second.setRGB(1, 1, 0xFF0000FF);
+    this.panel.setImage(second);
+    this.assertShown(0xFF00FF00, 0xFF0000FF);
+  }
+
+  @Test
+  public void testBuffersAlternate() {
+    int[] pixels = new int[]{0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFFFF};
+    this.model.addImageToLibrary("square", 2, 2, 255, pixels);
+    this.model.brighten(-255, "square", "dark");
+    BufferedImage first = ImageDisplay.of(this.model, "square").getImage();
+    this.panel.setImage(first);
+    BufferedImage second = ImageDisplay.of(this.model, "dark").getImage();
+    this.panel.setImage(second);
+
+    //The buffer shown before is the spare, and is only handed out once.
+    assertSame(first, this.panel.takeSpareBuffer());
+    assertNull(this.panel.takeSpareBuffer());
+
+    //The next image of the same size is written into it while the other one is still shown.
+    BufferedImage third = ImageDisplay.of(this.model, "square", first).getImage();
+    assertSame(first, third);
+    this.assertShown(0xFF000000, 0xFF000000);
+    this.panel.setImage(third);
+    this.assertShown(0xFFFF0000, 0xFFFFFFFF);
+    assertSame(second, this.panel.takeSpareBuffer());
+
+    //A buffer of another size is not reused.
+    this.model.crop(0, 0, 1, 2, "square", "narrow");
+    assertNotSame(second, ImageDisplay.of(this.model, "narrow", second).getImage());
+  }
+
+  //Paints the panel and checks the colors near its top left and bottom right corners.
+  private void assertShown(int topLeft, int bottomRight) {
+    layout(this.panel);
+    BufferedImage screen = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+    this.panel.paint(screen.getGraphics());
+
+    //The scroll pane has a border, so the image starts a couple of pixels in.
+    int left = (400 - 220) / 2;
+    int top = (300 - 220) / 2;
+    assertEquals(topLeft, screen.getRGB(left + 10, top + 10));
+    assertEquals(bottomRight, screen.getRGB(left + 210, top + 210));
+  }
+
+  //Lays out a component and everything inside it, which validate does not do without a window.
+  private static void layout(Component component) {
+    if (component instanceof Container) {
+      ((Container) component).doLayout();
+      for (Component child : ((Container) component).getComponents()) {
+        layout(child);
+      }
+    }
+  }
+}
@@ -3,7 +3,12 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -13,10 +18,13 @@ import imageprocessing.controller.ImageProcessingControllerImpl;
 import imageprocessing.model.ImageProcessingModel;
 import imageprocessing.model.ImageProcessingModelState.PixelProperty;
 import imageprocessing.model.Pixel;
+import imageprocessing.model.RasterImageProcessingModel;
 import imageprocessing.model.SimpleImageProcessingModel;
 import imageprocessing.view.ImageProcessingViewImpl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -136,6 +144,9 @@ public class ImageProcessingControllerImplTest {
             "save [image-path] [image-name]: Save the image with the given name to the " +
             "specified path which should include the name of the file.\n" +
             "\n" +
+            "save-binary [image-path] [image-name]: Same as save, but .ppm files are saved " +
+            "in the binary (P6) format.\n" +
+            "\n" +
             "red-component [image-name] [dest-image-name]: Create a greyscale image with " +
             "the red-component of the image with the given name,\n" +
             "  and refer to it henceforth in the program by the given destination name." +
@@ -149,6 +160,10 @@ public class ImageProcessingControllerImplTest {
             "vertical-flip [image-name] [dest-image-name]: Flip an image vertically to" +
             " create a new image, referred to henceforth by the given destination name.\n" +
             "\n" +
+            "crop [row] [col] [width] [height] [image-name] [dest-image-name]: Crop an image" +
+            " to the rectangle with the given top left corner and size,\n" +
+            "  referred to henceforth by the given destination name.\n" +
+            "\n" +
             "brighten [increment] [image-name] [dest-image-name]: brighten the image by" +
             " the given increment to create a new image,\n" +
             "  referred to henceforth by the given destination name. The increment may" +
@@ -167,6 +182,9 @@ public class ImageProcessingControllerImplTest {
             "a color transformation on an image using a linear system.\n" +
             "Supported linear systems are luma_grayscale (e.g. color-transform-luma_grayscale)\n" +
             "\n" +
+            "stats [image-name]: Display the size, max value, the min, max and mean of each " +
+            "color channel,\n  and a hash of the contents of the image with the given name\n" +
+            "\n" +
             "\n" +
             "Type your instruction:\n" +
             "Please wait, your image is being saved \n" +
@@ -175,6 +193,32 @@ public class ImageProcessingControllerImplTest {
     assertEquals(expectedTransmission, log.toString());
   }
 
+  @Test
+  public void testStats() {
+    StringBuilder log = new StringBuilder();
+    SimpleImageProcessingModel model1 = new SimpleImageProcessingModel();
+
+    ImageProcessingController controller = new ImageProcessingControllerImpl(
+            model1, new ImageProcessingViewImpl(model1, log),
+            new StringReader("load res/gimp-solid-square.ppm square1 \n" +
+                    "stats square1 \n" +
+                    "stats doesNotExist q"));
+    controller.start();
+
+    String expectedTransmission = "Welcome to the image processing program. " +
+            "Please input your command (type menu for a list of commands): \n" +
+            "Type your instruction:\n" +
+            "Type your instruction:\n" +
+            model1.getStats("square1") + "\n" +
+            "Type your instruction:\n" +
+            "Command failed to execute\n" +
+            "Type your instruction:\n";
+
+    assertEquals(expectedTransmission, log.toString());
+    assertTrue(model1.getStats("square1").toString().startsWith(
+            "width: 8, height: 8, max value: 255, red: min "));
+  }
+
   @Test
   public void testVerticalFlip() {
     SimpleImageProcessingModel model1 = new SimpleImageProcessingModel();
@@ -191,6 +235,30 @@ public class ImageProcessingControllerImplTest {
     assertEquals(240, model1.getHeight("mudkip1"));
   }
 
+  @Test
+  public void testCrop() {
+    SimpleImageProcessingModel model1 = new SimpleImageProcessingModel();
+
+    ImageProcessingController controller = new ImageProcessingControllerImpl(
+            model1, new ImageProcessingViewImpl(model1, new StringBuilder()),
+            new StringReader("load res/mudkip.ppm mudkip1 \n" +
+                    "crop 10 20 30 40 mudkip1 cropped \n" +
+                    "crop 0 0 1000 1 mudkip1 tooWide q"));
+    controller.start();
+
+    assertEquals(30, model1.getWidth("cropped"));
+    assertEquals(40, model1.getHeight("cropped"));
+    assertEquals(model1.getPixelInfo("mudkip1", 49, 49),
+            model1.getPixelInfo("cropped", 39, 29));
+
+    try {
+      model1.getWidth("tooWide");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
   @Test
   public void testHorizontalFlip() {
     SimpleImageProcessingModel model1 = new SimpleImageProcessingModel();
@@ -655,6 +723,37 @@ public class ImageProcessingControllerImplTest {
     }
   }
 
+  @Test
+  public void testDefaultModel() throws IOException {
+    //The program runs on the simple model unless a model is selected, so files with a max value
+    // above 255 load as they always have.
+    List<String> arguments = new ArrayList<String>(Arrays.asList("-text"));
+    ImageProcessingModel model = ImageProcessingProgram.createModel(arguments);
+    assertTrue(model instanceof SimpleImageProcessingModel);
+    assertEquals(Arrays.asList("-text"), arguments);
+
+    File deep = File.createTempFile("deep", ".ppm");
+    deep.deleteOnExit();
+    Files.write(deep.toPath(), "P3\n2 1\n1000\n1000 0 300\n7 999 256\n".getBytes());
+
+    StringBuilder log = new StringBuilder();
+    new ImageProcessingControllerImpl(model, new ImageProcessingViewImpl(model, log),
+            new StringReader("load " + deep.getPath() + " d\nbrighten 10 d b\n q")).start();
+    assertFalse(log.toString().contains("Command failed to execute"));
+    assertEquals(1000, model.getMaxValue("b"));
+    assertEquals(1000, (int) model.getPixelInfo("b", 0, 0).get(PixelProperty.Red));
+    assertEquals(266, (int) model.getPixelInfo("b", 0, 1).get(PixelProperty.Blue));
+
+    //The raster model is only used when it is asked for.
+    for (String[] args : new String[][]{{"-file", "-raster", "script.txt"},
+        {"-lazy", "-file", "script.txt"}, {"-file", "script.txt", "-threads", "2"}}) {
+      arguments = new ArrayList<String>(Arrays.asList(args));
+      assertTrue(ImageProcessingProgram.createModel(arguments)
+              instanceof RasterImageProcessingModel);
+      assertEquals(Arrays.asList("-file", "script.txt"), arguments);
+    }
+  }
+
   /*
    * Loads a 2x2 pixel image and checks that it is correct with hardcode.
    *
@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import imageprocessing.controller.commands.load.LoadConventional;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.RasterImageProcessingModel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for loading .jpg, .png and .bmp files.
+ */
+public class LoadConventionalTest {
+
+  //Checks that the loaded image matches what getRGB returns for every pixel of the file.
+  private static void assertMatchesGetRGB(String path) throws IOException {
+    BufferedImage image = ImageIO.read(new File(path));
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadConventional().loadFile(model, path, "image");
+
+    assertEquals(image.getWidth(), model.getWidth("image"));
+    assertEquals(image.getHeight(), model.getHeight("image"));
+
+    for (int i = 0; i < image.getHeight(); i++) {
+      for (int j = 0; j < image.getWidth(); j++) {
+        Color color = new Color(image.getRGB(j, i));
+        Map<PixelProperty, Integer> values = model.getPixelInfo("image", i, j);
+
+        assertEquals(path, color.getRed(), (int) values.get(PixelProperty.Red));
+        assertEquals(path, color.getGreen(), (int) values.get(PixelProperty.Green));
+        assertEquals(path, color.getBlue(), (int) values.get(PixelProperty.Blue));
+        assertEquals(path, 255, (int) values.get(PixelProperty.Alpha));
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesGetRGB() throws IOException {
+    String[] files = new String[]{"res/hamster.bmp", "res/gimp-2x2.jpg", "res/gimp-2x2.png",
+        "res/gimp-2x2.bmp", "res/test-square.jpg", "res/test-square.png", "res/test-square.bmp",
+        "res/doubleSharpen2x2.png", "res/2x2david.jpg"};
+
+    for (String file : files) {
+      assertMatchesGetRGB(file);
+    }
+  }
+
+  @Test
+  public void testOtherImageTypes() throws IOException {
+    //Gray and indexed images are not read from their data buffers, but still load the same.
+    int[] types = new int[]{BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_INDEXED,
+        BufferedImage.TYPE_INT_ARGB};
+
+    for (int type : types) {
+      BufferedImage image = new BufferedImage(5, 3, type);
+      for (int i = 0; i < 3; i++) {
+        for (int j = 0; j < 5; j++) {
+          image.setRGB(j, i, new Color(40 * i, 50 * j, 10 * i + 20 * j, 100).getRGB());
+        }
+      }
+
+      File file = File.createTempFile("conventional-test", ".png");
+      file.deleteOnExit();
+      ImageIO.write(image, "png", file);
+      assertMatchesGetRGB(file.getPath());
+    }
+  }
+}
@@ -0,0 +1,213 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import imageprocessing.controller.commands.SimpleLoadCommand;
+import imageprocessing.controller.commands.SimpleSaveCommand;
+import imageprocessing.controller.commands.load.LoadImagePPM;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.RasterImageProcessingModel;
+import imageprocessing.model.SimpleImageProcessingModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for loading .ppm files.
+ */
+public class LoadImagePPMTest {
+
+  //Writes the given bytes to a temporary file and returns its path.
+  private static String writeTempFile(byte[] contents, String extension) throws IOException {
+    File file = File.createTempFile("ppm-test", extension);
+    file.deleteOnExit();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(contents);
+    }
+    return file.getPath();
+  }
+
+  @Test
+  public void testCommentsAnywhere() throws IOException {
+    String path = writeTempFile(("P3 # magic\n"
+            + "# a whole comment line\n"
+            + "2#width\n"
+            + "   1 255\r\n"
+            + "10 20 30# end of the first pixel\n"
+            + "\t40\n50\n\n60").getBytes(), ".ppm");
+
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadImagePPM().loadFile(model, path, "image");
+
+    assertEquals(2, model.getWidth("image"));
+    assertEquals(1, model.getHeight("image"));
+
+    Map<PixelProperty, Integer> first = model.getPixelInfo("image", 0, 0);
+    assertEquals(10, (int) first.get(PixelProperty.Red));
+    assertEquals(20, (int) first.get(PixelProperty.Green));
+    assertEquals(30, (int) first.get(PixelProperty.Blue));
+    assertEquals(255, (int) first.get(PixelProperty.Alpha));
+
+    Map<PixelProperty, Integer> second = model.getPixelInfo("image", 0, 1);
+    assertEquals(40, (int) second.get(PixelProperty.Red));
+    assertEquals(50, (int) second.get(PixelProperty.Green));
+    assertEquals(60, (int) second.get(PixelProperty.Blue));
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+    String[] invalid = new String[]{
+        "P1\n1 1\n0\n",
+        "P6\n2 1\n255\n\u0001\u0002\u0003",
+        "P3\n1 1\n255\n0 0\n",
+        "P3\n1 1\n255\n0 x 0\n",
+        "P3\n0 1\n255\n",
+        "P3\n1 1\n65535\n0 0 0\n",
+        ""};
+
+    for (String contents : invalid) {
+      ImageProcessingModel model = new RasterImageProcessingModel();
+      try {
+        new LoadImagePPM().loadFile(model,
+                writeTempFile(contents.getBytes(StandardCharsets.ISO_8859_1), ".ppm"), "image");
+        fail("Exception should have been thrown for " + contents);
+      } catch (IllegalStateException e) {
+        // let the test pass
+      }
+    }
+
+    try {
+      new LoadImagePPM().loadFile(new RasterImageProcessingModel(), "res/doesNotExist.ppm", "x");
+      fail("Exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testSamplesAboveMaxValue() throws IOException {
+    //Like the original loader, samples above the max value of the file are kept as they are.
+    ImageProcessingModel model = new SimpleImageProcessingModel();
+    new LoadImagePPM().loadFile(model,
+            writeTempFile("P3\n2 1\n100\n10 200 30 40 50 60\n".getBytes(), ".ppm"), "text");
+    assertEquals(100, model.getMaxValue("text"));
+    assertEquals(200, (int) model.getPixelInfo("text", 0, 0).get(PixelProperty.Green));
+
+    String gray = writeTempFile("P5\n1 1\n100\n\u00C8".getBytes(StandardCharsets.ISO_8859_1),
+            ".pgm");
+    new LoadImagePPM().loadFile(model, gray, "gray");
+    new SimpleLoadCommand(gray, "mapped").doCommand(model);
+    for (String name : new String[]{"gray", "mapped"}) {
+      assertEquals(200, (int) model.getPixelInfo(name, 0, 0).get(PixelProperty.Red));
+      assertEquals(100, (int) model.getPixelInfo(name, 0, 0).get(PixelProperty.Alpha));
+    }
+
+    //A text sample above 255 does not fit in a packed pixel, so the image is loaded as Pixels,
+    // which the simple model keeps and the raster model rejects.
+    String wide = writeTempFile("P3\n2 1\n255\n1 2 3 4 5 256\n".getBytes(), ".ppm");
+    new LoadImagePPM().loadFile(model, wide, "wide");
+    assertEquals(2, (int) model.getPixelInfo("wide", 0, 0).get(PixelProperty.Green));
+    assertEquals(256, (int) model.getPixelInfo("wide", 0, 1).get(PixelProperty.Blue));
+    try {
+      new LoadImagePPM().loadFile(new RasterImageProcessingModel(), wide, "wide");
+      fail("Exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testBinaryFiles() throws IOException {
+    //The single whitespace after the max value may be a \r, and the binary data may start with
+    // bytes that look like whitespace or a comment.
+    byte[] p6 = new byte[]{'P', '6', ' ', '2', ' ', '1', ' ', '2', '5', '5', '\r',
+        '\n', '#', (byte) 200, 1, 2, 3};
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadImagePPM().loadFile(model, writeTempFile(p6, ".ppm"), "color");
+
+    Map<PixelProperty, Integer> first = model.getPixelInfo("color", 0, 0);
+    assertEquals(10, (int) first.get(PixelProperty.Red));
+    assertEquals(35, (int) first.get(PixelProperty.Green));
+    assertEquals(200, (int) first.get(PixelProperty.Blue));
+    Map<PixelProperty, Integer> second = model.getPixelInfo("color", 0, 1);
+    assertEquals(1, (int) second.get(PixelProperty.Red));
+    assertEquals(2, (int) second.get(PixelProperty.Green));
+    assertEquals(3, (int) second.get(PixelProperty.Blue));
+
+    byte[] p5 = new byte[]{'P', '5', '\n', '3', ' ', '1', '\n', '9', '9', '\n', 0, 42, 99};
+    new LoadImagePPM().loadFile(model, writeTempFile(p5, ".pgm"), "gray");
+
+    assertEquals(99, model.getMaxValue("gray"));
+    for (int j = 0; j < 3; j++) {
+      Map<PixelProperty, Integer> pixel = model.getPixelInfo("gray", 0, j);
+      assertEquals(p5[10 + j], (int) pixel.get(PixelProperty.Red));
+      assertEquals(p5[10 + j], (int) pixel.get(PixelProperty.Green));
+      assertEquals(p5[10 + j], (int) pixel.get(PixelProperty.Blue));
+      assertEquals(99, (int) pixel.get(PixelProperty.Alpha));
+    }
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+
+    String binaryPath = writeTempFile(new byte[0], ".ppm");
+    new SimpleSaveCommand(binaryPath, "mudkip", true).doCommand(model);
+    new SimpleLoadCommand(binaryPath, "binary").doCommand(model);
+    RasterImageProcessingModelTest.assertSameImage(model, "mudkip", model, "binary");
+
+    //A gray image survives a .pgm round trip unchanged.
+    model.grayscale(PixelProperty.Luma, "mudkip", "gray");
+    String grayPath = writeTempFile(new byte[0], ".pgm");
+    new SimpleSaveCommand(grayPath, "gray").doCommand(model);
+    new SimpleLoadCommand(grayPath, "pgm").doCommand(model);
+    RasterImageProcessingModelTest.assertSameImage(model, "gray", model, "pgm");
+
+    //A color image is saved as its luma.
+    new SimpleSaveCommand(grayPath, "mudkip").doCommand(model);
+    new SimpleLoadCommand(grayPath, "lumaPgm").doCommand(model);
+    RasterImageProcessingModelTest.assertSameImage(model, "gray", model, "lumaPgm");
+  }
+
+  @Test
+  public void testWideMaxValue() throws IOException {
+    //Files with a max value above 255 are loaded into models that can store such values, whether
+    // they are text or binary with two bytes per sample, and through the mapped loader too.
+    String text = writeTempFile("P3\n2 1\n1000\n1000 0 300\n7 999 256\n".getBytes(), ".ppm");
+    byte[] binary = new byte[]{'P', '6', '\n', '2', ' ', '1', '\n', '1', '0', '0', '0', '\n',
+        0x03, (byte) 0xE8, 0, 0, 0x01, 0x2C, 0, 7, 0x03, (byte) 0xE7, 0x01, 0x00};
+    String binaryPath = writeTempFile(binary, ".ppm");
+
+    ImageProcessingModel model = new SimpleImageProcessingModel();
+    new LoadImagePPM().loadFile(model, text, "text");
+    new LoadImagePPM().loadFile(model, binaryPath, "binary");
+    new SimpleLoadCommand(binaryPath, "mapped").doCommand(model);
+
+    for (String name : new String[]{"text", "binary", "mapped"}) {
+      assertEquals(1000, model.getMaxValue(name));
+      Map<PixelProperty, Integer> first = model.getPixelInfo(name, 0, 0);
+      assertEquals(1000, (int) first.get(PixelProperty.Red));
+      assertEquals(0, (int) first.get(PixelProperty.Green));
+      assertEquals(300, (int) first.get(PixelProperty.Blue));
+      assertEquals(1000, (int) first.get(PixelProperty.Alpha));
+      Map<PixelProperty, Integer> second = model.getPixelInfo(name, 0, 1);
+      assertEquals(7, (int) second.get(PixelProperty.Red));
+      assertEquals(999, (int) second.get(PixelProperty.Green));
+      assertEquals(256, (int) second.get(PixelProperty.Blue));
+    }
+
+    //Models that keep 8 bits per channel reject them.
+    try {
+      new SimpleLoadCommand(binaryPath, "mapped").doCommand(new RasterImageProcessingModel());
+      fail("Exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // let the test pass
+    }
+  }
+}
@@ -0,0 +1,121 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import imageprocessing.controller.commands.SimpleSaveCommand;
+import imageprocessing.controller.commands.load.LoadConventional;
+import imageprocessing.controller.commands.load.LoadImagePPM;
+import imageprocessing.controller.commands.load.LoadMappedImage;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.RasterImageProcessingModel;
+import imageprocessing.model.TiledImageProcessingModel;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for loading images through memory mapped files.
+ */
+public class LoadMappedImageTest {
+
+  //Creates an empty temporary file with the given extension and returns its path.
+  private static String tempPath(String extension) throws IOException {
+    File file = File.createTempFile("mapped-test", extension);
+    file.deleteOnExit();
+    return file.getPath();
+  }
+
+  @Test
+  public void testBmpMatchesImageIO() {
+    String[] files = new String[]{"res/test-square.bmp", "res/gimp-2x2.bmp",
+        "res/doubleBlur2x2.bmp", "res/hamster.bmp"};
+
+    for (String file : files) {
+      ImageProcessingModel model = new RasterImageProcessingModel();
+      new LoadConventional().loadFile(model, file, "expected");
+      new LoadMappedImage(new LoadConventional()).loadFile(model, file, "actual");
+      RasterImageProcessingModelTest.assertSameImage(model, "expected", model, "actual");
+    }
+  }
+
+  @Test
+  public void testBmpWithPaddedRows() throws IOException {
+    //mudkip is not a multiple of 4 pixels wide, so every row of the .bmp file is padded.
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadImagePPM().loadFile(model, "res/mudkip.ppm", "mudkip");
+    String path = tempPath(".bmp");
+    new SimpleSaveCommand(path, "mudkip").doCommand(model);
+
+    new LoadConventional().loadFile(model, path, "expected");
+    new LoadMappedImage(new LoadConventional()).loadFile(model, path, "actual");
+    RasterImageProcessingModelTest.assertSameImage(model, "expected", model, "actual");
+  }
+
+  @Test
+  public void testPnmMatchesStreamedLoad() throws IOException {
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadImagePPM().loadFile(model, "res/mudkip.ppm", "mudkip");
+    model.grayscale(PixelProperty.Luma, "mudkip", "gray");
+
+    String ppm = tempPath(".ppm");
+    new SimpleSaveCommand(ppm, "mudkip", true).doCommand(model);
+    new LoadImagePPM().loadFile(model, ppm, "expected");
+    new LoadMappedImage(new LoadImagePPM()).loadFile(model, ppm, "actual");
+    RasterImageProcessingModelTest.assertSameImage(model, "expected", model, "actual");
+
+    String pgm = tempPath(".pgm");
+    new SimpleSaveCommand(pgm, "gray").doCommand(model);
+    new LoadImagePPM().loadFile(model, pgm, "expectedGray");
+    new LoadMappedImage(new LoadImagePPM()).loadFile(model, pgm, "actualGray");
+    RasterImageProcessingModelTest.assertSameImage(model, "expectedGray", model, "actualGray");
+
+    //Text files go to the fallback.
+    new LoadMappedImage(new LoadImagePPM()).loadFile(model, "res/mudkip.ppm", "text");
+    RasterImageProcessingModelTest.assertSameImage(model, "mudkip", model, "text");
+  }
+
+  @Test
+  public void testStreamIntoPagedModel() throws IOException {
+    //The paged model reads the file a row of tiles at a time, bottom up rows included.
+    ImageProcessingModel expected = new RasterImageProcessingModel();
+    ImageProcessingModel paged = new TiledImageProcessingModel(1, 32, 4, null);
+    new LoadImagePPM().loadFile(expected, "res/mudkip.ppm", "mudkip");
+
+    String ppm = tempPath(".ppm");
+    String bmp = tempPath(".bmp");
+    new SimpleSaveCommand(ppm, "mudkip", true).doCommand(expected);
+    new SimpleSaveCommand(bmp, "mudkip").doCommand(expected);
+
+    new LoadMappedImage(new LoadImagePPM()).loadFile(paged, ppm, "fromPpm");
+    new LoadMappedImage(new LoadConventional()).loadFile(paged, bmp, "fromBmp");
+    RasterImageProcessingModelTest.assertSameImage(expected, "mudkip", paged, "fromPpm");
+    RasterImageProcessingModelTest.assertSameImage(expected, "mudkip", paged, "fromBmp");
+  }
+
+  @Test
+  public void testTruncatedFile() throws IOException {
+    ImageProcessingModel model = new RasterImageProcessingModel();
+    new LoadImagePPM().loadFile(model, "res/mudkip.ppm", "mudkip");
+    String ppm = tempPath(".ppm");
+    new SimpleSaveCommand(ppm, "mudkip", true).doCommand(model);
+    try (RandomAccessFile file = new RandomAccessFile(ppm, "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    try {
+      new LoadMappedImage(new LoadImagePPM()).loadFile(model, ppm, "truncated");
+      fail("Exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // let the test pass
+    }
+
+    try {
+      new LoadMappedImage(new LoadImagePPM()).loadFile(model, "res/doesNotExist.ppm", "x");
+      fail("Exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // let the test pass
+    }
+  }
+}
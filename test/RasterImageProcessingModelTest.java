@@ -0,0 +1,918 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import imageprocessing.controller.commands.SimpleLoadCommand;
+import imageprocessing.model.ConcurrentImageProcessingModel;
+import imageprocessing.model.EvictionPolicy;
+import imageprocessing.model.FlipDirection;
+import imageprocessing.model.ImageHandle;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.ImageStats;
+import imageprocessing.model.MemoryStats;
+import imageprocessing.model.Pixel;
+import imageprocessing.model.RasterImageProcessingModel;
+import imageprocessing.model.SimpleImageProcessingModel;
+import imageprocessing.model.TiledImageProcessingModel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A JUnit testing class for the RasterImageProcessingModel class. The raster model must produce
+ * exactly the same results as the SimpleImageProcessingModel, so most tests run the same operation
+ * on both models and compare every property of every pixel.
+ */
+public class RasterImageProcessingModelTest {
+  private ImageProcessingModel raster;
+  private ImageProcessingModel simple;
+
+  private final double[][] blur = new double[][]{
+          {0.0625, 0.125, 0.0625},
+          {0.125, 0.25, 0.125},
+          {0.0625, 0.125, 0.0625}
+  };
+
+  private final double[][] sharpen = new double[][]{
+          {-0.125, -0.125, -0.125, -0.125, -0.125},
+          {-0.125, 0.25, 0.25, 0.25, -0.125},
+          {-0.125, 0.25, 1.0, 0.25, -0.125},
+          {-0.125, 0.25, 0.25, 0.25, -0.125},
+          {-0.125, -0.125, -0.125, -0.125, -0.125}
+  };
+
+  private final double[][] sepia = new double[][]{
+          {0.393, 0.769, 0.189},
+          {0.349, 0.686, 0.168},
+          {0.272, 0.534, 0.131},
+  };
+
+  @Before
+  public void init() {
+    this.raster = new RasterImageProcessingModel();
+    this.simple = new SimpleImageProcessingModel();
+
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(this.raster);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(this.simple);
+    new SimpleLoadCommand("res/hamster.bmp", "hamster").doCommand(this.raster);
+    new SimpleLoadCommand("res/hamster.bmp", "hamster").doCommand(this.simple);
+  }
+
+  //Checks that an image has exactly the same pixels in both models.
+  private void assertSameImage(String imageName) {
+    assertSameImage(this.simple, imageName, this.raster, imageName);
+  }
+
+  //Checks that two images have exactly the same pixels.
+  static void assertSameImage(ImageProcessingModelState expected, String expectedName,
+                              ImageProcessingModelState actual, String actualName) {
+    int width = expected.getWidth(expectedName);
+    int height = expected.getHeight(expectedName);
+
+    assertEquals(width, actual.getWidth(actualName));
+    assertEquals(height, actual.getHeight(actualName));
+
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        Map<PixelProperty, Integer> expectedValues = expected.getPixelInfo(expectedName, i, j);
+        Map<PixelProperty, Integer> actualValues = actual.getPixelInfo(actualName, i, j);
+
+        for (PixelProperty p : PixelProperty.values()) {
+          assertEquals("Mismatch at " + i + ", " + j + " for " + p,
+                  expectedValues.get(p), actualValues.get(p));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLoad() {
+    this.assertSameImage("mudkip");
+    this.assertSameImage("hamster");
+  }
+
+  @Test
+  public void testFlip() {
+    for (FlipDirection direction : FlipDirection.values()) {
+      this.raster.flip(direction, "mudkip", "flipped");
+      this.simple.flip(direction, "mudkip", "flipped");
+      this.assertSameImage("flipped");
+    }
+  }
+
+  @Test
+  public void testBrighten() {
+    for (int amount : new int[]{-300, -50, 0, 10, 100, 300}) {
+      this.raster.brighten(amount, "hamster", "bright");
+      this.simple.brighten(amount, "hamster", "bright");
+      this.assertSameImage("bright");
+    }
+  }
+
+  @Test
+  public void testGrayscale() {
+    for (PixelProperty p : PixelProperty.values()) {
+      this.raster.grayscale(p, "mudkip", "gray");
+      this.simple.grayscale(p, "mudkip", "gray");
+      this.assertSameImage("gray");
+    }
+  }
+
+  @Test
+  public void testGrayscaleEveryColor() {
+    //Intensity and luma are computed in fixed point, so check every possible color against the
+    // floating point formulas of the Pixel class, one red value at a time.
+    int[] pixels = new int[256 * 256];
+    int[] intensities = new int[pixels.length];
+    int[] lumas = new int[pixels.length];
+
+    for (int r = 0; r < 256; r++) {
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] = 0xFF000000 | (r << 16) | i;
+      }
+      this.raster.addImageToLibrary("colors", 256, 256, 255, pixels);
+      this.raster.grayscale(PixelProperty.Intensity, "colors", "intensity");
+      this.raster.grayscale(PixelProperty.Luma, "colors", "luma");
+      this.raster.getChannel("intensity", PixelProperty.Red, 0, 0, 256, 256, intensities, 0, 256);
+      this.raster.getChannel("luma", PixelProperty.Red, 0, 0, 256, 256, lumas, 0, 256);
+
+      for (int i = 0; i < pixels.length; i++) {
+        int g = i >> 8;
+        int b = i & 0xFF;
+        assertEquals((int) Math.round((r + g + b) / 3.0), intensities[i]);
+        assertEquals((int) Math.round(0.2126 * r + 0.7152 * g + 0.0722 * b), lumas[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testApplyFilter() {
+    this.raster.applyFilter(this.blur, "hamster", "blurred");
+    this.simple.applyFilter(this.blur, "hamster", "blurred");
+    this.assertSameImage("blurred");
+
+    this.raster.applyFilter(this.sharpen, "mudkip", "sharp");
+    this.simple.applyFilter(this.sharpen, "mudkip", "sharp");
+    this.assertSameImage("sharp");
+
+    try {
+      this.raster.applyFilter(new double[][]{{1, 2}, {3, 4}}, "mudkip", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testSeparableFilter() {
+    //Outer products of vectors that are not exact in binary, so the separable sums differ from
+    // the direct sums in the last bits and ties have to be resolved by the direct sum.
+    double[][] vectors = new double[][]{
+        {0.3, 0.4, 0.3},
+        {0.1, 0.2, 0.3, 0.2, 0.1},
+        {1 / 64.0, 6 / 64.0, 15 / 64.0, 20 / 64.0, 15 / 64.0, 6 / 64.0, 1 / 64.0},
+        {-0.1, 0.7, 1.9, 0.7, -0.1}};
+
+    for (double[] column : vectors) {
+      for (double[] row : vectors) {
+        if (column.length != row.length) {
+          continue;
+        }
+        double[][] kernel = new double[column.length][row.length];
+        for (int i = 0; i < column.length; i++) {
+          for (int j = 0; j < row.length; j++) {
+            kernel[i][j] = column[i] * row[j];
+          }
+        }
+
+        this.raster.applyFilter(kernel, "hamster", "filtered");
+        this.simple.applyFilter(kernel, "hamster", "filtered");
+        this.assertSameImage("filtered");
+      }
+    }
+  }
+
+  @Test
+  public void testColorTransformation() {
+    this.raster.colorTransformation(this.sepia, "mudkip", "sepia");
+    this.simple.colorTransformation(this.sepia, "mudkip", "sepia");
+    this.assertSameImage("sepia");
+
+    try {
+      this.raster.colorTransformation(new double[][]{{1, 2}, {3, 4}}, "mudkip", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testParallelMatchesSerial() {
+    ImageProcessingModel parallel = new RasterImageProcessingModel(4);
+    new SimpleLoadCommand("res/hamster.bmp", "hamster").doCommand(parallel);
+    assertSameImage(this.raster, "hamster", parallel, "hamster");
+
+    this.raster.applyFilter(this.blur, "hamster", "result");
+    parallel.applyFilter(this.blur, "hamster", "result");
+    assertSameImage(this.raster, "result", parallel, "result");
+
+    this.raster.applyFilter(this.sharpen, "result", "result");
+    parallel.applyFilter(this.sharpen, "result", "result");
+    assertSameImage(this.raster, "result", parallel, "result");
+
+    this.raster.colorTransformation(this.sepia, "result", "result");
+    parallel.colorTransformation(this.sepia, "result", "result");
+    this.raster.brighten(-20, "result", "result");
+    parallel.brighten(-20, "result", "result");
+    this.raster.grayscale(PixelProperty.Luma, "result", "result");
+    parallel.grayscale(PixelProperty.Luma, "result", "result");
+    this.raster.flip(FlipDirection.Vertical, "result", "result");
+    parallel.flip(FlipDirection.Vertical, "result", "result");
+    this.raster.flip(FlipDirection.Horizontal, "result", "result");
+    parallel.flip(FlipDirection.Horizontal, "result", "result");
+    assertSameImage(this.raster, "result", parallel, "result");
+
+    try {
+      new RasterImageProcessingModel(0);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testLazyMatchesEager() {
+    //A script of chained operations, including overwriting images that later operations read.
+    ImageProcessingModel lazy = new RasterImageProcessingModel(4, true);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(lazy);
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{lazy, this.simple}) {
+      model.brighten(30, "mudkip", "a");
+      model.colorTransformation(this.sepia, "a", "b");
+      model.flip(FlipDirection.Horizontal, "b", "b");
+      model.brighten(-50, "b", "c");
+      model.brighten(80, "c", "c");
+      model.grayscale(PixelProperty.Luma, "c", "d");
+      model.applyFilter(this.blur, "d", "e");
+      model.flip(FlipDirection.Vertical, "e", "f");
+      model.flip(FlipDirection.Vertical, "f", "f");
+      model.grayscale(PixelProperty.Value, "a", "a");
+    }
+
+    assertEquals(320, lazy.getWidth("f"));
+    for (String name : new String[]{"f", "c", "a", "b", "d", "e", "mudkip"}) {
+      assertSameImage(this.simple, name, lazy, name);
+    }
+  }
+
+  @Test
+  public void testComposedColorOperations() {
+    //Every channel is between 20 and 200, so brightening by up to 55 never clamps and can be
+    // composed with the color transformations after it.
+    Pixel[][] grid = new Pixel[40][50];
+    for (int i = 0; i < grid.length; i++) {
+      for (int j = 0; j < grid[i].length; j++) {
+        grid[i][j] = new Pixel(20 + (i * 7 + j * 3) % 181, 20 + (i * j) % 181,
+                20 + (i * 11 + j * 13) % 181, 255, 255);
+      }
+    }
+    double[][] swap = new double[][]{{0, 0, 1}, {1, 0, 0}, {0, 1, 0}};
+
+    RasterImageProcessingModel lazy = new RasterImageProcessingModel(2, true);
+    lazy.setVerifyComposition(true);
+    for (ImageProcessingModel model : new ImageProcessingModel[]{lazy, this.simple}) {
+      model.addImageToLibrary("grid", grid);
+      model.brighten(55, "grid", "a");
+      model.colorTransformation(this.sepia, "a", "a");
+      model.brighten(-20, "grid", "b");
+      model.colorTransformation(swap, "b", "b");
+      model.brighten(3, "b", "b");
+      model.colorTransformation(this.sepia, "b", "b");
+      model.colorTransformation(new double[][]{{0.2126, 0.7152, 0.0722},
+          {0.2126, 0.7152, 0.0722}, {0.2126, 0.7152, 0.0722}}, "b", "b");
+      model.brighten(100, "grid", "c");
+      model.colorTransformation(this.sepia, "c", "c");
+    }
+
+    for (String name : new String[]{"a", "b", "c"}) {
+      assertSameImage(this.simple, name, lazy, name);
+    }
+  }
+
+  @Test
+  public void testComposedBrightenChain() {
+    //Two brightenings followed by a color transformation are composed into one affine operation,
+    // since the tables of the brightenings are not combined into one that is not affine.
+    Pixel[][] grid = new Pixel[30][40];
+    for (int i = 0; i < grid.length; i++) {
+      for (int j = 0; j < grid[i].length; j++) {
+        grid[i][j] = new Pixel(20 + (i * 7 + j * 3) % 181, 20 + (i * j) % 181,
+                20 + (i * 11 + j * 13) % 181, 255, 255);
+      }
+    }
+
+    RasterImageProcessingModel lazy = new RasterImageProcessingModel(2, true);
+    lazy.setVerifyComposition(true);
+    for (ImageProcessingModel model : new ImageProcessingModel[]{lazy, this.simple}) {
+      model.addImageToLibrary("a", grid);
+      model.brighten(10, "a", "b");
+      model.brighten(20, "b", "c");
+      model.colorTransformation(this.sepia, "c", "d");
+    }
+    assertSameImage(this.simple, "d", lazy, "d");
+    assertEquals(1, lazy.getVerifiedCompositions());
+
+    //Brightenings that clamp cannot be composed, so their tables are combined instead, which is
+    // verified as well.
+    for (ImageProcessingModel model : new ImageProcessingModel[]{lazy, this.simple}) {
+      model.brighten(100, "a", "e");
+      model.brighten(-150, "e", "f");
+      model.brighten(30, "f", "g");
+    }
+    assertSameImage(this.simple, "g", lazy, "g");
+    assertEquals(2, lazy.getVerifiedCompositions());
+  }
+
+  @Test
+  public void testLazyErrors() {
+    ImageProcessingModel lazy = new RasterImageProcessingModel(1, true);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(lazy);
+
+    //Invalid arguments are reported when the operation is called, not when it is run.
+    try {
+      lazy.brighten(10, "missing", "x");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+    try {
+      lazy.applyFilter(new double[][]{{1, 2}}, "mudkip", "x");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+    try {
+      lazy.colorTransformation(new double[][]{{1, 2, 3}}, "mudkip", "x");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+    try {
+      lazy.flip(FlipDirection.Vertical, "mudkip", "");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testSharedImages() {
+    //Overwriting an image with an operation on it writes in place, which must never change an
+    // image that shares its pixels.
+    ImageProcessingModel lazy = new RasterImageProcessingModel(4, true);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(lazy);
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.raster, lazy, this.simple}) {
+      model.flip(FlipDirection.Horizontal, "mudkip", "twice");
+      model.flip(FlipDirection.Horizontal, "twice", "twice");
+      model.brighten(20, "mudkip", "mudkip");
+      model.brighten(-40, "twice", "copy");
+      model.brighten(10, "twice", "twice");
+      model.colorTransformation(this.sepia, "twice", "twice");
+      model.grayscale(PixelProperty.Luma, "copy", "copy");
+      model.applyFilter(this.blur, "copy", "copy");
+      model.brighten(5, "copy", "copy");
+    }
+
+    for (String name : new String[]{"mudkip", "twice", "copy"}) {
+      assertSameImage(this.simple, name, this.raster, name);
+      assertSameImage(this.simple, name, lazy, name);
+    }
+  }
+
+  @Test
+  public void testFlipAndCropViews() {
+    //Flips and crops of images that have their pixels are views, including views of views,
+    // operations that read views, and views whose source is overwritten or changed afterwards.
+    ImageProcessingModel lazy = new RasterImageProcessingModel(4, true);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(lazy);
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.raster, lazy, this.simple}) {
+      model.flip(FlipDirection.Horizontal, "mudkip", "h");
+      model.crop(10, 20, 100, 50, "h", "crop");
+      model.flip(FlipDirection.Vertical, "crop", "cropFlip");
+      model.crop(5, 7, 30, 20, "cropFlip", "small");
+      model.brighten(25, "small", "bright");
+      model.applyFilter(this.blur, "cropFlip", "blurred");
+      model.grayscale(PixelProperty.Luma, "h", "h");
+      model.brighten(-20, "mudkip", "mudkip");
+      model.crop(0, 0, 320, 1, "mudkip", "mudkip");
+    }
+
+    for (String name : new String[]{"h", "crop", "cropFlip", "small", "bright", "blurred",
+        "mudkip"}) {
+      assertSameImage(this.simple, name, this.raster, name);
+      assertSameImage(this.simple, name, lazy, name);
+    }
+
+    assertEquals(30, this.raster.getWidth("small"));
+    assertEquals(20, lazy.getHeight("small"));
+
+    //Read a view whose source is still in the library.
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.raster, this.simple}) {
+      model.flip(FlipDirection.Horizontal, "blurred", "view");
+      model.crop(2, 3, 90, 45, "view", "view");
+    }
+    int[] expected = new int[90 * 45];
+    int[] actual = new int[90 * 45];
+    this.simple.getPixels("view", 0, 0, 90, 45, expected, 0, 90);
+    this.raster.getPixels("view", 0, 0, 90, 45, actual, 0, 90);
+    assertArrayEquals(expected, actual);
+    this.simple.getChannel("view", PixelProperty.Intensity, 3, 4, 80, 40, expected, 0, 90);
+    this.raster.getChannel("view", PixelProperty.Intensity, 3, 4, 80, 40, actual, 0, 90);
+    assertArrayEquals(expected, actual);
+
+    try {
+      this.raster.crop(0, 0, 31, 21, "small", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.crop(-1, 0, 1, 1, "small", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.crop(0, 0, 0, 1, "small", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testMemoryBudget() {
+    //A budget of about one image spills nearly every image, so every operation reads its source
+    // back, including sources of pending nodes and of views.
+    RasterImageProcessingModel eager = new RasterImageProcessingModel();
+    RasterImageProcessingModel lazy = new RasterImageProcessingModel(4, true);
+    eager.setMemoryBudget(400000, null);
+    lazy.setMemoryBudget(400000, null);
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{eager, lazy, this.simple}) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+      model.brighten(30, "mudkip", "bright");
+      model.grayscale(PixelProperty.Luma, "mudkip", "gray");
+      model.applyFilter(this.blur, "gray", "blurred");
+      model.colorTransformation(this.sepia, "bright", "sepia");
+      model.brighten(-10, "mudkip", "mudkip");
+      model.flip(FlipDirection.Vertical, "sepia", "flipped");
+      model.crop(20, 10, 100, 80, "blurred", "crop");
+      model.brighten(5, "sepia", "sepia");
+    }
+
+    String[] names = new String[]{"mudkip", "bright", "gray", "blurred", "sepia", "flipped",
+        "crop"};
+    for (RasterImageProcessingModel model : new RasterImageProcessingModel[]{eager, lazy}) {
+      for (String name : names) {
+        assertSameImage(this.simple, name, model, name);
+      }
+      MemoryStats stats = model.getMemoryStats();
+      assertTrue(stats.getHits() > 0);
+      assertTrue(stats.getSpills() > 0);
+      assertTrue(stats.getReloads() > 0);
+      assertTrue(stats.getResidentBytes() <= 400000);
+      assertTrue(stats.getSpilledBytes() > 0);
+    }
+
+    //Without a budget nothing is spilled.
+    RasterImageProcessingModel unbounded = (RasterImageProcessingModel) this.raster;
+    long before = unbounded.getMemoryStats().getResidentBytes();
+    unbounded.brighten(10, "mudkip", "bright");
+    assertEquals(0, unbounded.getMemoryStats().getSpills());
+    assertEquals(before + 320 * 240 * 4, unbounded.getMemoryStats().getResidentBytes());
+
+    //Every operation reads its source once, and reading only the size or max value is no hit.
+    long hits = unbounded.getMemoryStats().getHits();
+    unbounded.brighten(10, "mudkip", "bright");
+    unbounded.flip(FlipDirection.Vertical, "mudkip", "flipped");
+    unbounded.getWidth("mudkip");
+    unbounded.getMaxValue("mudkip");
+    assertEquals(hits + 2, unbounded.getMemoryStats().getHits());
+    unbounded.getPixelInfo("bright", 0, 0);
+    assertEquals(hits + 3, unbounded.getMemoryStats().getHits());
+
+    try {
+      eager.setMemoryBudget(0, null);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testLineageRecompute() {
+    //Images computed from another image can be dropped and recomputed, also after the image they
+    // were computed from is overwritten or dropped from the library.
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      RasterImageProcessingModel eager = new RasterImageProcessingModel();
+      RasterImageProcessingModel lazy = new RasterImageProcessingModel(4, true);
+      ImageProcessingModel simple = new SimpleImageProcessingModel();
+
+      for (RasterImageProcessingModel model : new RasterImageProcessingModel[]{eager, lazy}) {
+        model.setMemoryBudget(400000, null);
+        model.setEvictionPolicy(policy);
+      }
+
+      for (ImageProcessingModel model : new ImageProcessingModel[]{eager, lazy, simple}) {
+        new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+        model.grayscale(PixelProperty.Value, "mudkip", "gray");
+        model.brighten(30, "gray", "bright");
+        model.applyFilter(this.sharpen, "mudkip", "sharp");
+        model.colorTransformation(this.sepia, "mudkip", "sepia");
+        model.getPixelInfo("bright", 0, 0);
+        model.brighten(-15, "mudkip", "mudkip");
+        model.brighten(10, "gray", "gray");
+        model.crop(1, 2, 50, 40, "sharp", "sharp");
+      }
+
+      for (String name : new String[]{"mudkip", "gray", "bright", "sharp", "sepia"}) {
+        assertSameImage(simple, name, eager, name);
+        assertSameImage(simple, name, lazy, name);
+      }
+
+      for (RasterImageProcessingModel model : new RasterImageProcessingModel[]{eager, lazy}) {
+        MemoryStats stats = model.getMemoryStats();
+        if (policy == EvictionPolicy.Spill) {
+          assertEquals(0, stats.getDrops());
+        } else if (policy == EvictionPolicy.Recompute) {
+          assertTrue(stats.getDrops() > 0);
+          assertTrue(stats.getRecomputes() > 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTransferImageToLibrary() {
+    int[] pixels = new int[]{0xFF010203, 0x80040506, 0x00070809, 0xFF0A0B0C, 0x12345678};
+
+    this.raster.transferImageToLibrary("Small", 2, 2, 255, pixels);
+    this.simple.addImageToLibrary("Small", 2, 2, 255, pixels);
+    this.assertSameImage("small");
+
+    this.raster.brighten(10, "small", "small");
+    this.simple.brighten(10, "small", "small");
+    this.assertSameImage("small");
+
+    try {
+      this.raster.transferImageToLibrary("bad", 3, 2, 255, pixels);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testGetPixelsAndChannels() {
+    int width = this.raster.getWidth("mudkip");
+    int height = this.raster.getHeight("mudkip");
+    assertEquals(255, this.raster.getMaxValue("mudkip"));
+
+    int[] expected = new int[width * height];
+    int[] actual = new int[width * height];
+    this.simple.getPixels("mudkip", 0, 0, width, height, expected, 0, width);
+    this.raster.getPixels("mudkip", 0, 0, width, height, actual, 0, width);
+    assertArrayEquals(expected, actual);
+
+    for (PixelProperty p : PixelProperty.values()) {
+      this.simple.getChannel("mudkip", p, 0, 0, width, height, expected, 0, width);
+      this.raster.getChannel("mudkip", p, 0, 0, width, height, actual, 0, width);
+      assertArrayEquals(expected, actual);
+    }
+
+    //A 2x3 rectangle copied into the middle of a wider destination.
+    int[] region = new int[20];
+    this.raster.getChannel("mudkip", PixelProperty.Red, 5, 7, 3, 2, region, 1, 10);
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 3; j++) {
+        assertEquals(this.raster.getPixelInfo("mudkip", 5 + i, 7 + j).get(PixelProperty.Red),
+                Integer.valueOf(region[1 + i * 10 + j]));
+      }
+    }
+    assertEquals(0, region[0]);
+    assertEquals(0, region[4]);
+
+    try {
+      this.raster.getPixels("mudkip", 0, width - 1, 2, 1, new int[2], 0, 2);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.getPixels("mudkip", 0, 0, 2, 2, new int[3], 0, 2);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testImageHandles() {
+    ImageProcessingModel[] models = new ImageProcessingModel[]{this.raster,
+        new TiledImageProcessingModel(2, 100), new ConcurrentImageProcessingModel()};
+    ImageHandle expected = this.simple.getImage("Mudkip");
+    int width = expected.getWidth();
+    int height = expected.getHeight();
+    int[] expectedPixels = new int[width * height];
+    int[] actualPixels = new int[width * height];
+    expected.getPixels(0, 0, width, height, expectedPixels, 0, width);
+
+    for (ImageProcessingModel model : models) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+      ImageHandle actual = model.getImage("MUDKIP");
+
+      assertEquals(width, actual.getWidth());
+      assertEquals(height, actual.getHeight());
+      assertEquals(expected.getMaxValue(), actual.getMaxValue());
+      assertEquals(expected.getPixelInfo(17, 101), actual.getPixelInfo(17, 101));
+
+      actual.getPixels(0, 0, width, height, actualPixels, 0, width);
+      assertArrayEquals(expectedPixels, actualPixels);
+      actual.getChannel(PixelProperty.Luma, 3, 4, 50, 60, actualPixels, 0, 50);
+      this.simple.getChannel("mudkip", PixelProperty.Luma, 3, 4, 50, 60, expectedPixels, 0, 50);
+      assertArrayEquals(expectedPixels, actualPixels);
+      expected.getPixels(0, 0, width, height, expectedPixels, 0, width);
+
+      try {
+        actual.getPixelInfo(height, 0);
+        fail("Exception should have been thrown");
+      } catch (IllegalArgumentException e) {
+        // let the test pass
+      }
+
+      try {
+        actual.getPixels(0, width - 1, 2, 1, new int[2], 0, 2);
+        fail("Exception should have been thrown");
+      } catch (IllegalArgumentException e) {
+        // let the test pass
+      }
+
+      try {
+        model.getImage("doesNotExist");
+        fail("Exception should have been thrown");
+      } catch (IllegalArgumentException e) {
+        // let the test pass
+      }
+    }
+  }
+
+  @Test
+  public void testHistogram() {
+    ImageProcessingModel[] models = new ImageProcessingModel[]{this.raster,
+        new RasterImageProcessingModel(4), new TiledImageProcessingModel(3, 100),
+        new TiledImageProcessingModel(1, 64, 4, null), new ConcurrentImageProcessingModel()};
+    for (ImageProcessingModel model : models) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+    }
+
+    //Mirrored and cropped views are counted too.
+    for (ImageProcessingModel model : this.withSimple(models)) {
+      model.flip(FlipDirection.Horizontal, "mudkip", "flipped");
+      model.crop(10, 20, 150, 100, "flipped", "cropped");
+    }
+
+    int[] values = new int[320 * 240];
+    for (String name : new String[]{"mudkip", "flipped", "cropped"}) {
+      int width = this.simple.getWidth(name);
+      int height = this.simple.getHeight(name);
+
+      for (PixelProperty p : PixelProperty.values()) {
+        long[] expected = new long[256];
+        this.simple.getChannel(name, p, 0, 0, width, height, values, 0, width);
+        for (int i = 0; i < width * height; i++) {
+          expected[values[i]]++;
+        }
+
+        for (ImageProcessingModel model : this.withSimple(models)) {
+          assertArrayEquals(expected, model.getHistogram(name, p));
+        }
+      }
+    }
+
+    //A max value above 255 gets a count for every value.
+    this.simple.addImageToLibrary("deep", new Pixel[][]{{new Pixel(300, 0, 1, 400, 255)}});
+    assertEquals(401, this.simple.getHistogram("deep", PixelProperty.Red).length);
+    assertEquals(1, this.simple.getHistogram("deep", PixelProperty.Red)[300]);
+
+    try {
+      this.raster.getHistogram("doesNotExist", PixelProperty.Red);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.getHistogram("mudkip", null);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testStats() {
+    ImageProcessingModel[] models = new ImageProcessingModel[]{this.raster,
+        new RasterImageProcessingModel(4), new TiledImageProcessingModel(3, 100),
+        new TiledImageProcessingModel(1, 64, 4, null), new ConcurrentImageProcessingModel()};
+    for (ImageProcessingModel model : models) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+    }
+    for (ImageProcessingModel model : this.withSimple(models)) {
+      model.crop(10, 20, 150, 100, "mudkip", "cropped");
+    }
+
+    //Every model gets the same statistics, including the hash.
+    for (String name : new String[]{"mudkip", "cropped"}) {
+      int width = this.simple.getWidth(name);
+      int height = this.simple.getHeight(name);
+      int[] values = new int[width * height];
+      ImageStats expected = this.simple.getStats(name);
+      assertEquals(width, expected.getWidth());
+      assertEquals(height, expected.getHeight());
+      assertEquals(255, expected.getMaxValue());
+
+      for (PixelProperty p : new PixelProperty[]{PixelProperty.Red, PixelProperty.Green,
+          PixelProperty.Blue}) {
+        this.simple.getChannel(name, p, 0, 0, width, height, values, 0, width);
+        long sum = 0;
+        for (int value : values) {
+          sum += value;
+        }
+        assertEquals(Arrays.stream(values).min().getAsInt(), expected.getMin(p));
+        assertEquals(Arrays.stream(values).max().getAsInt(), expected.getMax(p));
+        assertEquals((double) sum / values.length, expected.getMean(p), 1e-9);
+      }
+
+      for (ImageProcessingModel model : models) {
+        assertEquals(expected.toString(), model.getStats(name).toString());
+      }
+    }
+    assertTrue(this.simple.getStats("mudkip").getContentHash()
+            != this.simple.getStats("cropped").getContentHash());
+
+    for (ImageProcessingModel model : this.withSimple(models)) {
+      //The statistics are computed once, and changing a histogram does not change the cache.
+      ImageStats stats = model.getStats("mudkip");
+      assertSame(stats, model.getStats("mudkip"));
+      model.getHistogram("mudkip", PixelProperty.Red)[0] = -1;
+      assertTrue(model.getHistogram("mudkip", PixelProperty.Red)[0] >= 0);
+
+      //Storing an image under the name replaces them, whether it differs or not.
+      model.brighten(10, "mudkip", "mudkip");
+      assertTrue(stats.getContentHash() != model.getStats("mudkip").getContentHash());
+      model.crop(0, 0, 150, 100, "cropped", "mudkip");
+      assertEquals(model.getStats("cropped").toString(), model.getStats("mudkip").toString());
+    }
+
+    try {
+      this.raster.getStats("doesNotExist");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.simple.getStats("mudkip").getMin(PixelProperty.Luma);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testSpillFileReusesSpace() throws IOException {
+    File directory = Files.createTempDirectory("spill").toFile();
+    RasterImageProcessingModel model = new RasterImageProcessingModel();
+    model.setMemoryBudget(320 * 240 * 2, directory.getPath());
+    model.setEvictionPolicy(EvictionPolicy.Spill);
+    new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+    model.brighten(1, "mudkip", "bright");
+
+    //Two full images and a growing small one are spilled and read back in turn, so the space
+    // freed by the small one only fits a full image once it is merged with its neighbours.
+    for (int i = 0; i < 60; i++) {
+      model.crop(0, 0, 10 + 5 * i, 10 + 3 * i, "mudkip", "small");
+      model.brighten(1, "small", "small");
+      for (String name : new String[]{"mudkip", "bright", "small"}) {
+        model.getPixelInfo(name, 0, 0);
+      }
+    }
+
+    File[] files = directory.listFiles();
+    assertEquals(1, files.length);
+    assertTrue(files[0].length() <= 3L * 320 * 240 * 4);
+    assertTrue(files[0].delete());
+    assertTrue(directory.delete());
+  }
+
+  @Test
+  public void testDerivedHistograms() {
+    ImageProcessingModel[] models = this.withSimple(new ImageProcessingModel[]{this.raster,
+        new RasterImageProcessingModel(4), new TiledImageProcessingModel(3, 100),
+        new TiledImageProcessingModel(1, 64, 4, null), new ConcurrentImageProcessingModel()});
+    PixelProperty[] components = new PixelProperty[]{PixelProperty.Red, PixelProperty.Green,
+        PixelProperty.Blue, PixelProperty.Value, PixelProperty.Intensity, PixelProperty.Luma};
+
+    for (ImageProcessingModel model : models) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+      //The histograms of the source are cached, so the results derive theirs from them.
+      for (PixelProperty p : PixelProperty.values()) {
+        model.getHistogram("mudkip", p);
+      }
+
+      model.flip(FlipDirection.Horizontal, "mudkip", "flipped");
+      model.brighten(100, "mudkip", "bright");
+      model.brighten(-100, "mudkip", "dark");
+      for (PixelProperty component : components) {
+        model.grayscale(component, "mudkip", component.toString());
+      }
+      model.brighten(50, "mudkip", "mudkip");
+
+      //Derived and counted histograms are the same as counting the pixels.
+      int[] values = new int[320 * 240];
+      for (String name : new String[]{"flipped", "bright", "dark", "Red", "Green", "Blue",
+          "Value", "Intensity", "Luma", "mudkip"}) {
+        for (PixelProperty p : PixelProperty.values()) {
+          long[] expected = new long[256];
+          model.getChannel(name, p, 0, 0, 320, 240, values, 0, 320);
+          for (int value : values) {
+            expected[value]++;
+          }
+          assertArrayEquals(expected, model.getHistogram(name, p));
+        }
+      }
+    }
+  }
+
+  //Adds the simple model to an array of models.
+  private ImageProcessingModel[] withSimple(ImageProcessingModel[] models) {
+    ImageProcessingModel[] all = Arrays.copyOf(models, models.length + 1);
+    all[models.length] = this.simple;
+    return all;
+  }
+
+  @Test
+  public void testAddImageToLibrary() {
+    Pixel[][] image = new Pixel[][]{
+            {new Pixel(1, 2, 3, 255, 255), new Pixel(4, 5, 6, 255, 128)},
+            {new Pixel(7, 8, 9, 255, 0), new Pixel(10, 11, 12, 255, 255)}};
+
+    this.raster.addImageToLibrary("Small", image);
+    this.simple.addImageToLibrary("Small", image);
+    this.assertSameImage("small");
+
+    try {
+      this.raster.addImageToLibrary("bad", new Pixel[][]{{new Pixel(256, 0, 0, 255, 255)}});
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.addImageToLibrary("bad", new Pixel[][]{{null}});
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.getPixelInfo("small", 2, 0);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.raster.brighten(10, "doesNotExist", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+}
@@ -0,0 +1,330 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+
+import imageprocessing.controller.commands.SimpleLoadCommand;
+import imageprocessing.controller.commands.SimpleSaveCommand;
+import imageprocessing.model.CancellationToken;
+import imageprocessing.model.ConcurrentImageProcessingModel;
+import imageprocessing.model.FlipDirection;
+import imageprocessing.model.ImageProcessingModel;
+import imageprocessing.model.ImageProcessingModelState.PixelProperty;
+import imageprocessing.model.Pixel;
+import imageprocessing.model.RasterImageProcessingModel;
+import imageprocessing.model.SimpleImageProcessingModel;
+import imageprocessing.model.TiledImageProcessingModel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * A JUnit testing class for the TiledImageProcessingModel class. The tiled model must produce
+ * exactly the same results as the SimpleImageProcessingModel for any tile size, so the tests use
+ * tiles that do not divide the test images and compare every property of every pixel. The paged
+ * model keeps only a few tiles on the heap, so its tiles are constantly written to and read back
+ * from its scratch file.
+ */
+public class TiledImageProcessingModelTest {
+  private ImageProcessingModel tiled;
+  private ImageProcessingModel parallel;
+  private ImageProcessingModel paged;
+  private ImageProcessingModel simple;
+
+  private final double[][] blur = new double[][]{
+          {0.0625, 0.125, 0.0625},
+          {0.125, 0.25, 0.125},
+          {0.0625, 0.125, 0.0625}
+  };
+
+  private final double[][] sharpen = new double[][]{
+          {-0.125, -0.125, -0.125, -0.125, -0.125},
+          {-0.125, 0.25, 0.25, 0.25, -0.125},
+          {-0.125, 0.25, 1.0, 0.25, -0.125},
+          {-0.125, 0.25, 0.25, 0.25, -0.125},
+          {-0.125, -0.125, -0.125, -0.125, -0.125}
+  };
+
+  private final double[][] sepia = new double[][]{
+          {0.393, 0.769, 0.189},
+          {0.349, 0.686, 0.168},
+          {0.272, 0.534, 0.131},
+  };
+
+  @Before
+  public void init() {
+    this.tiled = new TiledImageProcessingModel(1, 64);
+    this.parallel = new TiledImageProcessingModel(4, 100);
+    this.paged = new TiledImageProcessingModel(2, 48, 3, null);
+    this.simple = new SimpleImageProcessingModel();
+
+    for (ImageProcessingModel model : this.models()) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+    }
+  }
+
+  private ImageProcessingModel[] models() {
+    return new ImageProcessingModel[]{this.tiled, this.parallel, this.paged, this.simple};
+  }
+
+  //Checks that an image has exactly the same pixels in every model.
+  private void assertSameImage(String imageName) {
+    RasterImageProcessingModelTest.assertSameImage(this.simple, imageName, this.tiled, imageName);
+    RasterImageProcessingModelTest.assertSameImage(this.simple, imageName, this.parallel,
+            imageName);
+    RasterImageProcessingModelTest.assertSameImage(this.simple, imageName, this.paged, imageName);
+  }
+
+  @Test
+  public void testLoad() {
+    this.assertSameImage("mudkip");
+    assertEquals(320, this.tiled.getWidth("mudkip"));
+    assertEquals(240, this.parallel.getHeight("mudkip"));
+  }
+
+  @Test
+  public void testFlip() {
+    for (FlipDirection direction : FlipDirection.values()) {
+      for (ImageProcessingModel model : this.models()) {
+        model.flip(direction, "mudkip", "flipped");
+      }
+      this.assertSameImage("flipped");
+    }
+  }
+
+  @Test
+  public void testCrop() {
+    for (ImageProcessingModel model : this.models()) {
+      model.crop(30, 50, 200, 150, "mudkip", "cropped");
+      model.crop(0, 0, 320, 1, "mudkip", "row");
+    }
+    this.assertSameImage("cropped");
+    this.assertSameImage("row");
+
+    try {
+      this.tiled.crop(200, 0, 10, 41, "mudkip", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+
+  @Test
+  public void testPointOperations() {
+    for (ImageProcessingModel model : this.models()) {
+      model.brighten(40, "mudkip", "bright");
+      model.brighten(-70, "mudkip", "dark");
+      model.colorTransformation(this.sepia, "mudkip", "sepia");
+    }
+    this.assertSameImage("bright");
+    this.assertSameImage("dark");
+    this.assertSameImage("sepia");
+
+    for (PixelProperty property : new PixelProperty[]{PixelProperty.Red, PixelProperty.Green,
+        PixelProperty.Blue, PixelProperty.Value, PixelProperty.Intensity, PixelProperty.Luma}) {
+      for (ImageProcessingModel model : this.models()) {
+        model.grayscale(property, "mudkip", "gray");
+      }
+      this.assertSameImage("gray");
+    }
+  }
+
+  @Test
+  public void testFilters() {
+    for (ImageProcessingModel model : this.models()) {
+      model.applyFilter(this.blur, "mudkip", "blurred");
+      model.applyFilter(this.sharpen, "mudkip", "sharp");
+      model.applyFilter(this.sharpen, "sharp", "sharp");
+    }
+    this.assertSameImage("blurred");
+    this.assertSameImage("sharp");
+  }
+
+  @Test
+  public void testHalosSpanSeveralTiles() {
+    //With 1x1 and 2x2 tiles, the halo of a 5x5 kernel reaches into tiles that are not neighbors.
+    int[] pixels = new int[30 * 20];
+    this.simple.getPixels("mudkip", 100, 100, 30, 20, pixels, 0, 30);
+    this.simple.addImageToLibrary("small", 30, 20, 255, pixels);
+
+    for (int tileSize : new int[]{1, 2}) {
+      ImageProcessingModel model = new TiledImageProcessingModel(1, tileSize);
+      model.addImageToLibrary("small", 30, 20, 255, pixels);
+      model.applyFilter(this.sharpen, "small", "small");
+      model.flip(FlipDirection.Vertical, "small", "small");
+
+      this.simple.applyFilter(this.sharpen, "small", "expected");
+      this.simple.flip(FlipDirection.Vertical, "expected", "expected");
+      RasterImageProcessingModelTest.assertSameImage(this.simple, "expected", model, "small");
+    }
+  }
+
+  @Test
+  public void testReplacingPagedImages() {
+    //Replaced images give their slots of the scratch file back, so they must not be read again.
+    for (int i = 0; i < 5; i++) {
+      for (ImageProcessingModel model : this.models()) {
+        model.brighten(10, "mudkip", "mudkip");
+        model.flip(FlipDirection.Horizontal, "mudkip", "flipped");
+      }
+    }
+    this.assertSameImage("mudkip");
+    this.assertSameImage("flipped");
+  }
+
+  @Test
+  public void testStreamImageToLibrary() {
+    int[] pixels = new int[320 * 240];
+    this.simple.getPixels("mudkip", 0, 0, 320, 240, pixels, 0, 320);
+    StringBuilder bands = new StringBuilder();
+
+    this.paged.streamImageToLibrary("streamed", 320, 240, 255, (fromRow, toRow, dest) -> {
+      bands.append(fromRow).append("-").append(toRow).append(" ");
+      System.arraycopy(pixels, fromRow * 320, dest, 0, (toRow - fromRow) * 320);
+    });
+    RasterImageProcessingModelTest.assertSameImage(this.simple, "mudkip", this.paged, "streamed");
+    assertEquals("0-48 48-96 96-144 144-192 192-240 ", bands.toString());
+
+    try {
+      this.paged.streamImageToLibrary("bad", 320, 240, 255, (fromRow, toRow, dest) -> {
+        throw new IllegalArgumentException("Invalid pixels");
+      });
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid pixels", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCancellation() {
+    CancellationToken token = new CancellationToken();
+    token.cancel();
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.tiled, this.parallel,
+        this.paged, new RasterImageProcessingModel()}) {
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+      try {
+        token.run(() -> {
+          model.applyFilter(this.blur, "mudkip", "blurred");
+          return model.getPixelInfo("blurred", 0, 0);
+        });
+        fail("Exception should have been thrown");
+      } catch (CancellationException e) {
+        // let the test pass
+      }
+
+      //Work that is not run through the token is not cancelled.
+      model.applyFilter(this.blur, "mudkip", "blurred");
+      this.simple.applyFilter(this.blur, "mudkip", "blurred");
+      RasterImageProcessingModelTest.assertSameImage(this.simple, "blurred", model, "blurred");
+    }
+  }
+
+  @Test
+  public void testCancelledLoadsAndSaves() {
+    CancellationToken token = new CancellationToken();
+    token.cancel();
+    new SimpleSaveCommand("res/test-cancel-binary.ppm", "mudkip", true).doCommand(this.simple);
+
+    for (ImageProcessingModel model : new ImageProcessingModel[]{this.tiled, this.paged,
+        this.simple, new RasterImageProcessingModel(), new ConcurrentImageProcessingModel()}) {
+      //Text, streamed and decoded files are all stopped before the image is stored.
+      for (String path : new String[]{"res/mudkip.ppm", "res/test-cancel-binary.ppm",
+          "res/gimp-2x2.png"}) {
+        try {
+          token.run(() -> {
+            new SimpleLoadCommand(path, "cancelled").doCommand(model);
+            return null;
+          });
+          fail("Exception should have been thrown");
+        } catch (CancellationException e) {
+          // let the test pass
+        }
+        try {
+          model.getWidth("cancelled");
+          fail("Exception should have been thrown");
+        } catch (IllegalArgumentException e) {
+          // let the test pass
+        }
+      }
+
+      //A cancelled save removes the part of the file it wrote.
+      new SimpleLoadCommand("res/mudkip.ppm", "mudkip").doCommand(model);
+      for (String path : new String[]{"res/test-cancel.ppm", "res/test-cancel.pgm",
+          "res/test-cancel.png"}) {
+        try {
+          token.run(() -> {
+            new SimpleSaveCommand(path, "mudkip").doCommand(model);
+            return null;
+          });
+          fail("Exception should have been thrown");
+        } catch (CancellationException e) {
+          // let the test pass
+        }
+        assertFalse(new File(path).exists());
+      }
+    }
+  }
+
+  @Test
+  public void testGetPixelsAndChannels() {
+    int[] expected = new int[150 * 100];
+    int[] actual = new int[150 * 100];
+
+    this.simple.getPixels("mudkip", 60, 50, 150, 100, expected, 0, 150);
+    this.tiled.getPixels("mudkip", 60, 50, 150, 100, actual, 0, 150);
+    assertArrayEquals(expected, actual);
+
+    this.simple.getChannel("mudkip", PixelProperty.Luma, 60, 50, 150, 100, expected, 0, 150);
+    this.parallel.getChannel("mudkip", PixelProperty.Luma, 60, 50, 150, 100, actual, 0, 150);
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test
+  public void testErrors() {
+    try {
+      new TiledImageProcessingModel(1, 0);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      new TiledImageProcessingModel(1, 64, 0, null);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.tiled.addImageToLibrary("bad", new Pixel[][]{{new Pixel(256, 0, 0, 255, 255)}});
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.tiled.brighten(10, "doesNotExist", "bad");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.tiled.brighten(10, "mudkip", "");
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+
+    try {
+      this.tiled.getPixelInfo("mudkip", 240, 0);
+      fail("Exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // let the test pass
+    }
+  }
+}